@@ -1,5 +1,13 @@
 package climatology.nsidc.org;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import helper_classes.*;
 
 
@@ -37,8 +45,8 @@ public class Climate extends GeoObject {
 	static String suffix1 = ""; // Frequency of SSMI data
 	static String suffix2 = ""; // SSMI polarization, h or v
 
-	// For parallel processing
-	static int procs; 
+	// For parallel processing. 0 = one thread per available processor.
+	static int procs = 0; 
 	
 	/*-------------------------------------------------------------------------
 	// MAIN PROGRAM
@@ -65,15 +73,11 @@ public class Climate extends GeoObject {
 		//		  dataType.toString() + "/daily/";
 		
 		// How many processors do we have available?
-	    procs = Runtime.getRuntime().availableProcessors(); 
-	    System.out.println("Available processors = " + procs);
-	    
-	    // Max out at 8 processes. Avoid meltdowns?
-	    procs = 8;
-
-	    // Create an array to hold parallel threads.
-	    ParallelTask[] threads = new ParallelTask[procs]; 
-	    		
+		int available = Runtime.getRuntime().availableProcessors(); 
+		System.out.println("Available processors = " + available);
+		
+		if (procs <= 0) procs = available;
+
 		//************************************************
 		// Generic one-time processing - passed parameters
 		//************************************************
@@ -85,113 +89,139 @@ public class Climate extends GeoObject {
 		//***************************************
 		// Batch Processing
 		//***************************************
-	    
-		// Loop through all possible increment types.
-		for (Timespan.Increment increment : Timespan.Increment.values()) {
-			
-			// Skip over unwanted increments
-			String name = increment.name().toLowerCase();
-			
-			if (name.compareTo("none") == 0  ||
-				name.compareTo("day") == 0  ||
-				name.compareTo("year") == 0  ||
-				name.compareTo("week") == 0
-			) continue;
-
-			// Linux
-			String outputPath = "/home/glgr9602/condense/climatology/" +
-						dataType.toString() + "/";
-			// Windows
-			//String outputPath = "/Users/glgr9602/Desktop/condense/climatology/" +				
-			//		dataType.toString() + "/" + name + "/";
-
-			// This keeps track of how many parallel processes we create.
-			int processID = 0;
-			
-			//***************************************
-			// SSMI
-			//***************************************
-			
-			String[] frequencies = {"19", "22", "37", "85"};
-			String[] polarizations = {"h", "v"};
+
+		// The increments are grouped by season: each season with its three
+		// months. A daily file belongs to exactly one group, so each group can
+		// be a separate task and still read each file only once.
+		Timespan.Increment[][] groups = {
+			{Timespan.Increment.DJF, Timespan.Increment.DEC, Timespan.Increment.JAN, Timespan.Increment.FEB},
+			{Timespan.Increment.MAM, Timespan.Increment.MAR, Timespan.Increment.APR, Timespan.Increment.MAY},
+			{Timespan.Increment.JJA, Timespan.Increment.JUN, Timespan.Increment.JUL, Timespan.Increment.AUG},
+			{Timespan.Increment.SON, Timespan.Increment.SEP, Timespan.Increment.OCT, Timespan.Increment.NOV}
+		};
+
+		// Linux
+		String outputPath = "/home/glgr9602/condense/climatology/" +
+					dataType.toString() + "/";
+		// Windows
+		//String outputPath = "/Users/glgr9602/Desktop/condense/climatology/" +				
+		//		dataType.toString() + "/";
+
+		ArrayList<ClimateTask> tasks = new ArrayList<ClimateTask>();
+		
+		//***************************************
+		// SSMI
+		//***************************************
+		
+		// Highest resolution (most pixels) first, so the longest tasks don't
+		// end up running by themselves at the end of the batch.
+		String[] frequencies = {"85", "37", "22", "19"};
+		String[] polarizations = {"h", "v"};
+		
+		// Loop through all frequencies
+		for ( String freq : frequencies) {
 			
-			// Loop through all frequencies
-			for ( String freq : frequencies) {
-				
-				// Loop through all polarizations
-				for ( String pol : polarizations) {
-					
-					// Create a new thread
-				    threads[processID] = new ParallelTask(
-				    		processID, dataType,
+			// Loop through all polarizations
+			for ( String pol : polarizations) {
+
+				for ( Timespan.Increment[] group : groups) {
+					tasks.add(new ClimateTask(
+							tasks.size(), dataType,
 							startYear, startMonth, startDay,
 							finalYear, finalMonth, finalDay,
-							increment,
+							group,
 							dataPath, outputPath,
-							freq, pol );
-				    
-				    // Start it.
-				    threads[processID].start();
-				    
-				    // Increment the process ID.
-				    processID++;
+							freq, pol ));
 				}
 			}
+		}
 
-			//***************************************
-			// AVHRR
-			//***************************************
-			/*
-			String[] wavelengths = {"ch1", "ch2", "ch3", "ch4", "ch5"};
-
-			// Loop through all wavelengths
-			for ( String wavelength : wavelengths) {
-					
-				// Create a new thread
-			    threads[processID] = new ParallelTask(
-				    		processID, dataType,
-							startYear, startMonth, startDay,
-							finalYear, finalMonth, finalDay,
-							increment,
-							dataPath, outputPath,
-							wavelength, "" );
-					    
-			   // Start it.
-			   threads[processID].start();
-					    
-			   // Increment the process ID.
-			   processID++;
+		//***************************************
+		// AVHRR
+		//***************************************
+		/*
+		String[] wavelengths = {"ch1", "ch2", "ch3", "ch4", "ch5"};
+
+		// Loop through all wavelengths
+		for ( String wavelength : wavelengths) {
+			for ( Timespan.Increment[] group : groups) {
+				tasks.add(new ClimateTask(
+						tasks.size(), dataType,
+						startYear, startMonth, startDay,
+						finalYear, finalMonth, finalDay,
+						group,
+						dataPath, outputPath,
+						wavelength, "" ));
+			}
+		}
+		*/
+		//*****************************************
+		// FINISHED WITH SENSOR-SPECIFIC PROCESSING
+		//*****************************************
+
+		// Run everything on a fixed pool of threads. Tasks are all queued up
+		// front, so a thread picks up the next one as soon as it's free.
+		Tools.statusMessage("Running " + tasks.size() + " climatology tasks on " + procs + " threads");
+
+		long[] times = runTasks(tasks, procs);
+
+		// Report the timing.
+		for (int i = 0; i < tasks.size(); i++) {
+			if (times[i] < 0) {
+				Tools.warningMessage("Task " + i + ": " + tasks.get(i).description() + " failed");
+			}
+			else {
+				Tools.statusMessage("Task " + i + ": " + tasks.get(i).description() +
+						"  time = " + (times[i] / 1000) + " seconds");
 			}
-			*/
-			//*****************************************
-			// FINISHED WITH SENSOR-SPECIFIC PROCESSING
-			//*****************************************
-			
-			// Combine the output
-		    for (int i = 0; i < procs; i++) { 
-		    	try { 
-		    		// Re-unites all threads; waits until each thread is done.
-		    		threads[i].join(); 
-		    	}
-		    	catch (InterruptedException e) {
-		    	} 
-		    } 
 		}
-		
 		
 		firstTime = (System.currentTimeMillis() - firstTime) / 1000;
 		Tools.statusMessage("Total time to process = " + firstTime + " seconds");
 	}
 
 
-	/* ParallelTask
+	/* runTasks
+	 * 
+	 * Run the tasks on a fixed pool of threads and wait for them all. Returns
+	 * what each task returned (its time in milliseconds), or -1 for a task
+	 * that failed; a failure doesn't stop the others.
+	 */
+	public static long[] runTasks(List<? extends Callable<Long>> tasks, int threads) {
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<Long>> results = new ArrayList<Future<Long>>();
+
+		for (Callable<Long> task : tasks) {
+			results.add(executor.submit(task));
+		}
+		executor.shutdown();
+
+		long[] times = new long[tasks.size()];
+
+		for (int i = 0; i < times.length; i++) {
+			try {
+				times[i] = results.get(i).get();
+			}
+			catch (Exception e) {
+				Tools.warningMessage("Task " + i + " failed: " + e);
+				times[i] = -1;
+			}
+		}
+
+		return times;
+	}
+
+
+	/* ClimateTask
 	 * 
-	 * Class for a parallel thread.
+	 * One climatology job: a group of increments for one data channel.
+	 * Returns the time it took, in milliseconds, or -1 if it couldn't be
+	 * done (no dataset to open, or nothing to generate).
 	 */
-	static class ParallelTask extends Thread { 
+	public static class ClimateTask implements Callable<Long> { 
 
-		// Variables to be retrieved by the master thread must be static 
-		int threadNumber; 
+		int taskNumber; 
 		
 		Dataset.DataType dataT;
 		
@@ -203,7 +233,7 @@ public class Climate extends GeoObject {
 		int finalM;
 		int finalD;
 		
-		Timespan.Increment inc;
+		Timespan.Increment[] incs;
 		
 		String dataP;
 		String outputP;
@@ -211,14 +241,14 @@ public class Climate extends GeoObject {
 		String suff2;
 		
 		// constructor
-		public ParallelTask(int id, Dataset.DataType datatype,
+		public ClimateTask(int id, Dataset.DataType datatype,
 				int startYear, int startMonth, int startDay,
 				int finalYear, int finalMonth, int finalDay,
-				Timespan.Increment increment,
+				Timespan.Increment[] increments,
 				String dataPath, String outputPath,
 				String suffix1, String suffix2) {
 			
-			this.threadNumber = id;
+			this.taskNumber = id;
 			this.dataT = datatype;
 			
 			this.startY = startYear;
@@ -229,23 +259,24 @@ public class Climate extends GeoObject {
 			this.finalM = finalMonth;
 			this.finalD = finalDay;
 			
-			this.inc = increment;
+			this.incs = increments;
 			this.dataP = dataPath;
 			this.outputP = outputPath;
 			this.suff1 = suffix1;
 			this.suff2 = suffix2;
 		}
 
-		/* run
+		public String description() {
+			return dataT.toString() + " " + suff1 + suff2 + " " + Arrays.toString(incs);
+		}
+
+		/* call
 		 * 
 		 * This is where the work gets done.
 		 */
-		public void run() {
+		public Long call() {
 
-			Tools.statusMessage("Thread: " + threadNumber +
-					"  Process " + dataT.toString() + " data, " +
-					"suffix1 = " + suff1 + "  suffix2 = " + suff2 +
-					"  increment = " + inc.toString());
+			Tools.statusMessage("Task: " + taskNumber + "  Process " + description());
 			
 			Tools.statusMessage(
 					+ startY + "." + startM + "." + startD + " to "
@@ -253,18 +284,15 @@ public class Climate extends GeoObject {
 
 			long startTime = System.currentTimeMillis();
 
-			Climatology climate = new Climatology( dataT,
+			ClimatologyScheduler climate = new ClimatologyScheduler( dataT,
 					startY, startM, startD,
-					finalY, finalM, finalD, inc,
+					finalY, finalM, finalD, incs,
 					dataP, outputP,
 					suff1, suff2);
 
-			climate.run();
+			if (!climate.run()) return -1L;
 			
-			long endTime = System.currentTimeMillis();
-			endTime = (endTime - startTime) / 1000;
-			Tools.statusMessage("Time to process = " + endTime + " seconds");
-			Tools.statusMessage("");
+			return System.currentTimeMillis() - startTime;
 		}
 	} 
 }
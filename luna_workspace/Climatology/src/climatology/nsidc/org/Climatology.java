@@ -60,12 +60,9 @@ public class Climatology extends GeoObject {
 	// TODO temporary hard-code
 	static String locationsPath = "/Users/glgr9602/Desktop/condense/data/ssmi/";	// Where the lat/lon files are located
 
-	// The image data across the specified time increment [day][row][col]
-	GriddedVector data[][][];
-	
-	// The accumulated data across all time increments. [row][col]
-	double accumulator[][] = null;
-	int population[][] = null;
+	// The running statistics across all time increments, accumulated as
+	// each day's data is read.
+	StatsAccumulator stats = null;
 
 	boolean haveMetadata = false;
 	Metadata metadata;
@@ -75,6 +72,7 @@ public class Climatology extends GeoObject {
 
 	// Gridded pixel locations.
 	GriddedLocation locations[][];
+	LocationTable locationTable;
 
 	// The mean provides a reference for deciding whether to condense the
 	// newest pixels; i.e., are the pixels varying greater than n*sd from
@@ -133,6 +131,49 @@ public class Climatology extends GeoObject {
 	 */
 	public boolean run() {
 		
+		if (!begin()) return false;
+
+		// One pass: each day's data goes into a running mean and standard
+		// deviation as it is read.
+			
+		// What is our first date to process? Note that, depending on the
+		// choice of increment, the first processing day may not be on the 
+		// first day specified (date != startDate). Ask the timespan for the
+		// logical first date to process.
+		date = totalTimespan.startTimestamp();
+		
+		// Read the data files. Iterate by year.
+		for (int y = startDate.year(); y <= finalDate.year(); y++) {
+			
+			Timespan timespan = new Timespan(date, finalDate, increment);
+
+			// Timespan may have adjusted itself to comply with the increment.
+			// If it exceeded the end date, break.
+			if (timespan.startTimestamp().days() > finalDate.days()) break;
+			
+			Tools.message("    Increment time span: " +
+					timespan.startTimestamp().dateString() + " to " +
+					timespan.endTimestamp().dateString() + "  days = " +
+					timespan.days());
+			
+			readData( timespan );
+
+			// Advance the date to next year.
+			date = new Timestamp(timespan.startTimestamp().year()+1, 1, 1);
+		}
+
+		finish();
+		
+		return true;
+	}
+
+	/* begin
+	 * 
+	 * Set up the time span, open the dataset (unless it has been shared from
+	 * another Climatology) and start the statistics accumulator.
+	 */
+	protected boolean begin() {
+		
 		// What's the total time span we're going to process?
 		Timestamp.dateSeparator(".");
 		startDate = new Timestamp(startYear, startMonth, startDay);
@@ -140,66 +181,58 @@ public class Climatology extends GeoObject {
 		totalTimespan = new Timespan(startDate, finalDate, Timespan.Increment.NONE);
 
 		// Have we opened the dataset?
-		if (data == null) {
+		if (!haveMetadata) {
 			// If it fails to open, return false.
-			if (!openDataset(increment.maxDays())) return false;		
+			if (!openDataset()) return false;		
 		}
-		// Two passes. First to calculate the mean, the second to
-		// find the standard deviation (which requires the mean).
-		for (int pass = 1; pass < 3; pass++) {
 
-			Tools.message("  PASS " + pass);
-			
-			// What is our first date to process? Note that, depending on the
-			// choice of increment, the first processing day may not be on the 
-			// first day specified (date != startDate). Ask the timespan for the
-			// logical first date to process.
-			date = totalTimespan.startTimestamp();
-			
-			// Read the data files. Iterate by year.
-			for (int y = startDate.year(); y <= finalDate.year(); y++) {
-				
-				Timespan timespan = new Timespan(date, finalDate, increment);
+		if (stats == null) stats = new StatsAccumulator(rows, cols);
 
-				// Timespan may have adjusted itself to comply with the increment.
-				// If it exceeded the end date, break.
-				if (timespan.startTimestamp().days() > finalDate.days()) break;
-				
-				Tools.message("    Increment time span: " +
-						timespan.startTimestamp().dateString() + " to " +
-						timespan.endTimestamp().dateString() + "  days = " +
-						timespan.days());
-				
-				readData( timespan );
-				
-				// Store the data for later statistical calculations.
-				accumulateData( data, (pass == 2) );
+		return true;
+	}
 
-				// Advance the date to next year.
-				date = new Timestamp(timespan.startTimestamp().year()+1, 1, 1);
-			}
+	/* shareDataset
+	 * 
+	 * Use a dataset that another Climatology has already opened, rather than
+	 * opening (and reading the metadata and locations of) our own.
+	 */
+	protected void shareDataset(Climatology other) {
+		dataset = other.dataset;
+		metadata = other.metadata;
+		rows = other.rows;
+		cols = other.cols;
+		locations = other.locations;
+		locationTable = other.locationTable;
+		haveMetadata = other.haveMetadata;
+	}
 
-			// Calculated the statistics. First time through, the mean; second
-			// time through, standard deviation.
-			Tools.message("  CALCULATING STATS");
-			
-			if (pass == 1) {
-				mean = Stats.meanNoBadData2d(accumulator, population, NODATA);
-				
-				// Zero-out the data accumulator
-				accumulator = null;
-			}
-			
-			if (pass == 2) sd = Stats.standardDeviationNoBadData2d(accumulator, population, NODATA, 1);
-		}
+	/* accumulate
+	 * 
+	 * Add one day's data to the running statistics. A null frame (no data
+	 * that day) still counts towards the total days processed.
+	 */
+	protected void accumulate(GridFrame frame) {
+		if (frame != null) stats.add(frame);
+		totalDays++;
+	}
+
+	/* finish
+	 * 
+	 * Calculate the statistics and write them out.
+	 */
+	protected void finish() {
+
+		// Calculate the statistics.
+		Tools.message("  CALCULATING STATS");
+		
+		mean = stats.mean2d();
+		sd = stats.standardDeviation2d(1);
 		
 		// Write out the stats to files
 		makeStatsFiles(totalTimespan);
 		
 		// Warm fuzzy feedback.
 		Tools.statusMessage("  Total data files processed = " + fileCount);
-		
-		return true;
 	}
 
 	/*
@@ -207,101 +240,108 @@ public class Climatology extends GeoObject {
 	 * 
 	 * Read the dataset files.
 	 * 
-	 * This method reads data files for the entire specified timespan.
+	 * This method reads data files for the entire specified timespan, adding
+	 * each day's data to the running statistics.
 	 * 
 	 * Doesn't care if a file is missing. Assumes the data isn't available and
 	 * plows ahead.
 	 */
 	protected void readData(Timespan timespan) {
 
-		// Have we opened the dataset?
-		if (data == null) {
+		// Have we started?
+		if (stats == null) {
 			Tools.errorMessage("Climatology", "readData", "dataset not open",
 					null);
 		}
 
-		String filename = "";
-
 		// The number of days we're going to process in this increment.
 		int days = timespan.days();
 		
-		// Keep track of how many days, in total, we've processed.
-		totalDays += days;
-		
 		// Starting date for processing
 		date = timespan.startTimestamp();
 
 		// Loop through the days, reading the data file for each day.
 		for (int d = 0; d < days; d++) {
 
-			data[d] = null;
-			
 			if (date == null) {
 				Tools.warningMessage("Unexpected NULL date in Climatology::readData");
 				return;
 			}
 			
-			// If a file doesn't exist, ignore it and move on.
-			try {
-				switch (dataType) {
-				case SEA_ICE:
-					filename = DatasetSeaIce.getFileName(dataPath, date.year(),
-							date.month(), date.dayOfMonth(),
-							addYearToInputDirectory);
-
-					data[d] = (GriddedVector[][]) ((DatasetSeaIce) dataset)
-							.readData(filename, locations, date.id());
-
-					// Success
-					fileCount++;
-
-					break;
-
-				case SSMI:
-					filename = DatasetSSMI.getFileName(dataPath, date.year(),
-							date.month(), date.dayOfMonth(),
-							addYearToInputDirectory, frequency, polarization);
-
-					// Read the data
-					data[d] = (GriddedVector[][]) ((DatasetSSMI) dataset)
-							.readData(filename, locations, date.id());
-
-					// Get rid of any unrealistic data points. For SSMI data
-					// (brightness temperatures in degrees K) anything less than
-					// 10 or greater than 400 is clearly bogus.
-					if (filterBadData) {						
-						data[d] = GriddedVector.filterBadData(data[d], minValue, maxValue, NODATA);
-					}
-					
-					// Success
-					fileCount++;
-
-					break;
-
-				case AVHRR:
-					// TODO
-					break;
-				}
-			} catch (Exception e) {
-				// No file. Do nothing.
-			}
-
-			Tools.message("    " + date.yearString() + "." + date.monthString() + "."
-						+ date.dayOfMonthString() + "  File name: " + filename);
+			accumulate(readDay(date));
 
 			// Next day.
 			date = timespan.nextDay(date);
 		}
 	}
+
+	/*
+	 * readDay
+	 * 
+	 * Read the dataset file for one day. Returns null if the file is missing.
+	 */
+	protected GridFrame readDay(Timestamp day) {
+
+		String filename = "";
+		GridFrame frame = null;
+			
+		// If a file doesn't exist, ignore it and move on.
+		try {
+			switch (dataType) {
+			case SEA_ICE:
+				filename = DatasetSeaIce.getFileName(dataPath, day.year(),
+						day.month(), day.dayOfMonth(),
+						addYearToInputDirectory);
+
+				frame = new GridFrame((GriddedVector[][]) ((DatasetSeaIce) dataset)
+						.readData(filename, locations, day.id()), locationTable, day.id());
+
+				// Success
+				fileCount++;
+
+				break;
+
+			case SSMI:
+				filename = DatasetSSMI.getFileName(dataPath, day.year(),
+						day.month(), day.dayOfMonth(),
+						addYearToInputDirectory, frequency, polarization);
+
+				// Read the data
+				frame = dataset.readFrame(filename, locationTable, day.id());
+
+				// Get rid of any unrealistic data points. For SSMI data
+				// (brightness temperatures in degrees K) anything less than
+				// 10 or greater than 400 is clearly bogus.
+				if (filterBadData) {						
+					frame.filterBadData(minValue, maxValue);
+				}
+				
+				// Success
+				fileCount++;
+
+				break;
+
+			case AVHRR:
+				// TODO
+				break;
+			}
+		} catch (Exception e) {
+			// No file. Do nothing.
+			frame = null;
+		}
+
+		Tools.message("    " + day.yearString() + "." + day.monthString() + "."
+					+ day.dayOfMonthString() + "  File name: " + filename);
+
+		return frame;
+	}
 		
 	/*
 	 * openDataset
 	 * 
-	 * Open a Dataset object, based on the selection of "datatype". The amount
-	 * of space allocated for the data is determined by the maximum days value,
-	 * which is the time increment used for reading sequential files.
+	 * Open a Dataset object, based on the selection of "datatype".
 	 */
-	protected boolean openDataset(int maximumDays) {
+	protected boolean openDataset() {
 
 		String filename = "";
 
@@ -337,10 +377,7 @@ public class Climatology extends GeoObject {
 		
 		// Get the locations
 		locations = dataset.getLocations();
-
-		// Make the data array. Add 1 for possible leap year when
-		// processing multiple years.
-		data = new GriddedVector[maximumDays+1][rows][cols];
+		locationTable = (locations != null) ? new LocationTable(locations) : new LocationTable(rows, cols);
 		
 		return true;
 	}
@@ -367,71 +404,6 @@ public class Climatology extends GeoObject {
 		return true;
 	}
 	
-	/* accumulateData
-	 * 
-	 * Store the data. sdFlag says just accumulate the sums of the data (false)
-	 * or squares of the difference of the data compared to the mean (true).
-	 */
-	protected void accumulateData( GriddedVector[][][] input, boolean sdFlag) {
-		
-		// Number of days in the data array
-		int days = input.length;
-		
-		// First time through? Initialize things.
-		if (accumulator == null) {
-
-			accumulator = new double[rows][cols];
-			population = new int[rows][cols];
-
-			// Zero-out the array.
-			
-			for (int r = 0; r < rows; r++) {
-				for (int c = 0; c < cols; c++) {
-					accumulator[r][c] = 0;
-					population[r][c] = 0;
-				}
-			}
-		}
-
-		// Cycle through all days at each location.
-		for (int d = 0; d < days; d++) {
-
-			// Missing data for a day? Skip it.
-			if (input[d] == null)
-				continue;
-
-			for (int r = 0; r < rows; r++) {
-				for (int c = 0; c < cols; c++) {
-
-					// Data at this location/date?
-					if (input[d][r][c] != null) {
-						if (input[d][r][c].data() != NODATA) {
-							
-							// For accumulating data sums:
-							if (!sdFlag) {
-								accumulator[r][c] += input[d][r][c].data();
-								population[r][c]++;
-							}
-
-							// For accumulating data differences squared (useful for standard
-							// deviation calculation):
-							if (sdFlag) {
-								accumulator[r][c] += Math.pow(input[d][r][c].data() - mean[r][c], 2);
-								population[r][c]++;
-
-								/*if (r == 12 && c == 15) {
-									Tools.message("      d = " + d + "  r,c = " + r + "," + c + "  population = " +
-										population[r][c] + "  data = " + input[d][r][c].data() +
-										"  mean = " + mean[r][c] + "  sd = " + Math.sqrt(accumulator[r][c]/(population[r][c] - 1.0)));
-								}*/
-							}
-						}
-					}
-				}
-			}
-		}
-	}
-	
 	/*
 	 * makeStatsFiles
 	 * 
@@ -491,7 +463,7 @@ public class Climatology extends GeoObject {
 		int r = 50;
 		int c = 50;
 		Tools.message("Rows,cols = " + rows + "," + cols); 
-		Tools.message("Population at " + r + "," + c + " = " + population[r][c]); 
+		Tools.message("Population at " + r + "," + c + " = " + stats.count(r, c)); 
 		Tools.message("Mean at " + r + "," + c + " = " + mean[r][c]); 
 		Tools.message("Standard deviation at " + r + "," + c + " = " + sd[r][c]); 
 	}
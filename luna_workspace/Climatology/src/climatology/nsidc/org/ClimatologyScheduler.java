@@ -0,0 +1,207 @@
+package climatology.nsidc.org;
+
+import java.util.ArrayList;
+
+import helper_classes.*;
+
+/* ClimatologyScheduler
+ *
+ * Generate the climatologies for several time increments (months, seasons)
+ * of one data channel in a single walk through the daily files.
+ *
+ * A daily file belongs to exactly one month and one season, so rather than
+ * having a Climatology per increment each read the whole date range, the
+ * scheduler reads every file once and hands the grid to each increment's
+ * accumulator that wants it. The output files are the same as running a
+ * Climatology for each increment.
+ */
+
+public class ClimatologyScheduler extends GeoObject {
+
+	Dataset.DataType dataType;
+
+	int startYear;
+	int startMonth;
+	int startDay;
+
+	int finalYear;
+	int finalMonth;
+	int finalDay;
+
+	String dataPath;
+	String outputPath;
+	String suffix1;
+	String suffix2;
+
+	// One climatology per increment, indexed by Increment.ordinal(). Null
+	// for the increments we aren't generating.
+	Climatology[] climatologies = new Climatology[Timespan.Increment.values().length];
+	ArrayList<Climatology> all = new ArrayList<Climatology>();
+
+	// Daily files read
+	int fileCount = 0;
+
+	// The month increments, by month (1-12).
+	static final Timespan.Increment[] monthIncrements = {null,
+		Timespan.Increment.JAN, Timespan.Increment.FEB, Timespan.Increment.MAR,
+		Timespan.Increment.APR, Timespan.Increment.MAY, Timespan.Increment.JUN,
+		Timespan.Increment.JUL, Timespan.Increment.AUG, Timespan.Increment.SEP,
+		Timespan.Increment.OCT, Timespan.Increment.NOV, Timespan.Increment.DEC};
+
+	public ClimatologyScheduler(
+			Dataset.DataType type,
+			int startY, int startM, int startD,
+			int finalY, int finalM, int finalD,
+			Timespan.Increment[] increments,
+			String dataP, String outputP,
+			String s1, String s2) {
+
+		dataType = type;
+
+		startYear = startY;
+		startMonth = startM;
+		startDay = startD;
+
+		finalYear = finalY;
+		finalMonth = finalM;
+		finalDay = finalD;
+
+		dataPath = dataP;
+		outputPath = outputP;
+		suffix1 = s1;
+		suffix2 = s2;
+
+		for (Timespan.Increment inc : increments) {
+			switch (inc) {
+				case NONE:
+				case DAY:
+				case WEEK:
+					Tools.warningMessage("ClimatologyScheduler: increment " + inc +
+							" is not supported, skipping it");
+					continue;
+				default:
+					break;
+			}
+
+			Climatology c = new Climatology(dataType,
+					startYear, startMonth, startDay,
+					finalYear, finalMonth, finalDay, inc,
+					dataPath, outputPath, suffix1, suffix2);
+
+			climatologies[inc.ordinal()] = c;
+			all.add(c);
+		}
+	}
+
+	// Daily files read by run
+	public int fileCount() { return fileCount; }
+
+	/* run
+	 *
+	 * Walk the dates once, then write out every increment's statistics.
+	 */
+	public boolean run() {
+
+		if (all.isEmpty()) return false;
+
+		// The first climatology opens the dataset; the rest share it.
+		Climatology first = all.get(0);
+		if (!first.begin()) return false;
+
+		for (Climatology c : all) {
+			if (c != first) {
+				c.shareDataset(first);
+				c.begin();
+			}
+		}
+
+		Timestamp finalDate = new Timestamp(finalYear, finalMonth, finalDay);
+
+		// Walk from the start of the first year, through the end of the last
+		// increment (a DJF season runs into the following year).
+		Timestamp walkStart = new Timestamp(startYear, 1, 1);
+		Timestamp walkEnd = new Timestamp(finalYear + 1, 2, Timestamp.daysInMonth(2, finalYear + 1));
+		Timespan walk = new Timespan(walkStart, walkEnd);
+
+		Climatology[] targets = new Climatology[3];
+
+		for (Timestamp date = walkStart; date != null; date = walk.nextDay(date)) {
+
+			// Who wants this day?
+			int n = 0;
+			n = addTarget(targets, n, monthIncrements[date.month()], date, finalDate);
+			n = addTarget(targets, n, season(date.month()), date, finalDate);
+			n = addTarget(targets, n, Timespan.Increment.YEAR, date, finalDate);
+
+			if (n == 0) continue;
+
+			// Read it once...
+			GridFrame frame = first.readDay(date);
+			if (frame != null) fileCount++;
+
+			// ...and feed it to all of them.
+			for (int i = 0; i < n; i++) {
+				targets[i].accumulate(frame);
+			}
+		}
+
+		for (Climatology c : all) {
+			c.finish();
+		}
+
+		Tools.statusMessage("  Climatology scheduler: daily files read = " + fileCount +
+				" for " + all.size() + " increments");
+
+		return true;
+	}
+
+	/* addTarget
+	 *
+	 * If we're generating the increment, and the date falls in one of its
+	 * time spans that Climatology.run would have processed, add it to the
+	 * list of targets.
+	 */
+	protected int addTarget(Climatology[] targets, int n, Timespan.Increment inc,
+			Timestamp date, Timestamp finalDate) {
+
+		Climatology c = climatologies[inc.ordinal()];
+		if (c == null) return n;
+
+		if (!inSpan(inc, date, startYear, finalDate)) return n;
+
+		targets[n] = c;
+		return n + 1;
+	}
+
+	/* inSpan
+	 *
+	 * Climatology.run steps a year at a time, from the start year to the final
+	 * year, processing the whole increment beginning in that year -- as long as
+	 * it doesn't begin after the final date. (So the December-February season
+	 * for a year is Dec of that year and Jan-Feb of the next.)
+	 */
+	static boolean inSpan(Timespan.Increment inc, Timestamp date, int startYear, Timestamp finalDate) {
+
+		int year = date.year();
+
+		// Jan and Feb belong to the previous year's DJF season.
+		if (inc == Timespan.Increment.DJF && date.month() < 3) year--;
+
+		if (year < startYear || year > finalDate.year()) return false;
+
+		Timespan span = new Timespan(new Timestamp(year, 1, 1), finalDate, inc);
+
+		return span.startTimestamp().days() <= finalDate.days();
+	}
+
+	/* season
+	 *
+	 * The seasonal increment a month (1-12) falls in.
+	 */
+	static Timespan.Increment season(int month) {
+		if (month > 2 && month < 6) return Timespan.Increment.MAM;
+		if (month > 5 && month < 9) return Timespan.Increment.JJA;
+		if (month > 8 && month < 12) return Timespan.Increment.SON;
+		return Timespan.Increment.DJF;
+	}
+}
@@ -0,0 +1,125 @@
+package test.climatology.nsidc.org;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import climatology.nsidc.org.*;
+import helper_classes.*;
+
+/**
+ * Climate Tester.
+ */
+public class ClimateTest {
+
+    // Tasks running right now, and the most there have been at once.
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger most = new AtomicInteger();
+
+    // A task that returns its number, after holding its thread a moment.
+    private Callable<Long> task(final long n) {
+        return new Callable<Long>() {
+            public Long call() throws Exception {
+                int now = running.incrementAndGet();
+                synchronized (most) {
+                    if (now > most.get()) most.set(now);
+                }
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Method: runTasks(List<? extends Callable<Long>> tasks, int threads)
+     */
+    @Test
+    public void testRunTasks() throws Exception {
+        ArrayList<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+        for (int i = 0; i < 12; i++) tasks.add(task(i));
+
+        long[] results = Climate.runTasks(tasks, 3);
+
+        // Every task's result, in the order they were queued.
+        Assert.assertEquals(12, results.length);
+        for (int i = 0; i < 12; i++) Assert.assertEquals(i, results[i]);
+
+        // Never more tasks at once than threads.
+        Assert.assertTrue(most.get() <= 3);
+        Assert.assertEquals(0, running.get());
+    }
+
+    /**
+     * Method: runTasks(List<? extends Callable<Long>> tasks, int threads)
+     */
+    @Test
+    public void testAllThreadsUsed() throws Exception {
+        // Each task waits for the other two, so this only finishes if the
+        // pool runs three at once.
+        final CyclicBarrier barrier = new CyclicBarrier(3);
+
+        ArrayList<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+        for (int i = 0; i < 6; i++) {
+            tasks.add(new Callable<Long>() {
+                public Long call() throws Exception {
+                    barrier.await(10, TimeUnit.SECONDS);
+                    return 1L;
+                }
+            });
+        }
+
+        for (long r : Climate.runTasks(tasks, 3)) Assert.assertEquals(1, r);
+    }
+
+    /**
+     * Method: runTasks(List<? extends Callable<Long>> tasks, int threads)
+     */
+    @Test
+    public void testFailedTask() throws Exception {
+        ArrayList<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+        tasks.add(task(5));
+        tasks.add(new Callable<Long>() {
+            public Long call() throws Exception {
+                throw new Exception("no data");
+            }
+        });
+        tasks.add(task(7));
+
+        // The failure is marked, and the others still run.
+        long[] results = Climate.runTasks(tasks, 2);
+        Assert.assertEquals(5, results[0]);
+        Assert.assertEquals(-1, results[1]);
+        Assert.assertEquals(7, results[2]);
+    }
+
+    /**
+     * Method: ClimateTask.call()
+     */
+    @Test
+    public void testTaskWithoutData() throws Exception {
+        File dir = Files.createTempDirectory("ClimateTest").toFile();
+
+        try {
+            // No daily files to open: the task runs, but is a failure.
+            ArrayList<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+            tasks.add(new Climate.ClimateTask(0, Dataset.DataType.SSMI,
+                    2000, 1, 1, 2000, 12, 31,
+                    new Timespan.Increment[] {Timespan.Increment.JAN},
+                    dir.getPath() + "/data/", dir.getPath() + "/", "19", "h"));
+
+            Assert.assertEquals(-1, Climate.runTasks(tasks, 1)[0]);
+            Assert.assertEquals(0, dir.list().length);
+        } finally {
+            DatasetFileIndex.invalidateAll();
+            dir.delete();
+        }
+    }
+}
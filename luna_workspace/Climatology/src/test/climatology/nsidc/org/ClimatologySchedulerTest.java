@@ -0,0 +1,157 @@
+package test.climatology.nsidc.org;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import climatology.nsidc.org.*;
+import helper_classes.*;
+
+/**
+ * ClimatologyScheduler Tester.
+ */
+public class ClimatologySchedulerTest {
+
+    // A southern hemisphere SSMI grid, 19 GHz.
+    static final int ROWS = 332;
+    static final int COLS = 316;
+
+    static final Timespan.Increment[] increments = {
+        Timespan.Increment.JAN, Timespan.Increment.FEB, Timespan.Increment.MAR,
+        Timespan.Increment.DEC, Timespan.Increment.DJF, Timespan.Increment.MAM,
+        Timespan.Increment.YEAR};
+
+    File dir;
+    String dataPath;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("ClimatologySchedulerTest").toFile();
+        dataPath = dir.getPath() + "/data/";
+
+        // A few days, including one in the following January that only the
+        // December-February season reads.
+        writeDay(2000, 1, 1);
+        writeDay(2000, 1, 2);
+        writeDay(2000, 1, 15);
+        writeDay(2000, 2, 10);
+        writeDay(2000, 3, 5);
+        writeDay(2000, 12, 20);
+        writeDay(2001, 1, 5);
+    }
+
+    @After
+    public void after() throws Exception {
+        DatasetFileIndex.invalidateAll();
+        delete(dir);
+    }
+
+    private void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) for (File c : children) delete(c);
+        f.delete();
+    }
+
+    // A daily file of 2-byte little-endian values that vary by day and cell.
+    private void writeDay(int year, int month, int day) throws Exception {
+        File yearDir = new File(dataPath + year);
+        yearDir.mkdirs();
+
+        ByteBuffer b = ByteBuffer.allocate(ROWS * COLS * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < ROWS * COLS; i++) {
+            b.putShort((short) (1000 + month * 100 + day * 10 + i % 7));
+        }
+
+        FileOutputStream out = new FileOutputStream(new File(yearDir,
+                "tb_f13_" + DatasetFileIndex.dateString(year, month, day) + "_v4_s19h.bin"));
+        out.write(b.array());
+        out.close();
+    }
+
+    private File outputDir(String name) {
+        File out = new File(dir, name);
+        out.mkdirs();
+        return out;
+    }
+
+    /**
+     * Method: run()
+     */
+    @Test
+    public void testRun() throws Exception {
+        File separate = outputDir("separate");
+        File scheduled = outputDir("scheduled");
+
+        // One climatology per increment, each reading its own files...
+        for (Timespan.Increment inc : increments) {
+            Climatology c = new Climatology(Dataset.DataType.SSMI,
+                    2000, 1, 1, 2000, 12, 31, inc,
+                    dataPath, separate.getPath() + "/", "19", "h");
+            Assert.assertTrue(c.run());
+        }
+
+        // ...and all of them in one walk.
+        ClimatologyScheduler scheduler = new ClimatologyScheduler(Dataset.DataType.SSMI,
+                2000, 1, 1, 2000, 12, 31, increments,
+                dataPath, scheduled.getPath() + "/", "19", "h");
+        Assert.assertTrue(scheduler.run());
+
+        // Each file is read once.
+        Assert.assertEquals(7, scheduler.fileCount());
+
+        // The same files, with the same statistics.
+        String[] names = separate.list();
+        Arrays.sort(names);
+        Assert.assertEquals(2 * increments.length, names.length);
+
+        String[] scheduledNames = scheduled.list();
+        Arrays.sort(scheduledNames);
+        Assert.assertArrayEquals(names, scheduledNames);
+
+        for (String name : names) {
+            Assert.assertArrayEquals(name,
+                    Files.readAllBytes(new File(separate, name).toPath()),
+                    Files.readAllBytes(new File(scheduled, name).toPath()));
+        }
+    }
+
+    /**
+     * Method: ClimatologyScheduler(...), run()
+     */
+    @Test
+    public void testUnsupportedIncrements() throws Exception {
+        File out = outputDir("unsupported");
+
+        // Nothing to generate.
+        ClimatologyScheduler scheduler = new ClimatologyScheduler(Dataset.DataType.SSMI,
+                2000, 1, 1, 2000, 12, 31,
+                new Timespan.Increment[] {Timespan.Increment.DAY, Timespan.Increment.WEEK},
+                dataPath, out.getPath() + "/", "19", "h");
+        Assert.assertFalse(scheduler.run());
+        Assert.assertEquals(0, scheduler.fileCount());
+        Assert.assertEquals(0, out.list().length);
+    }
+
+    /**
+     * Method: run()
+     */
+    @Test
+    public void testMissingStartFile() throws Exception {
+        File out = outputDir("missing");
+
+        // No file on the start date to read the metadata from.
+        ClimatologyScheduler scheduler = new ClimatologyScheduler(Dataset.DataType.SSMI,
+                1999, 1, 1, 1999, 12, 31, increments,
+                dataPath, out.getPath() + "/", "19", "h");
+        Assert.assertFalse(scheduler.run());
+        Assert.assertEquals(0, out.list().length);
+    }
+}
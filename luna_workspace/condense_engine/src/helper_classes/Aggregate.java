@@ -0,0 +1,207 @@
+package helper_classes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/* Aggregate
+ *
+ * Count, sum (for the mean), minimum and maximum of the vector values in a
+ * query, grouped by time or by block of the grid. See Database.aggregate.
+ *
+ * The results are primitive arrays, one entry per group, in order of the
+ * group's key:
+ *
+ *   TIMESTAMP  the timestamp ID
+ *   MONTH      year * 100 + month (1-12), e.g. 200401
+ *   SEASON     year * 10 + season: 1 DJF, 2 MAM, 3 JJA, 4 SON. December
+ *              goes with the next year's DJF, so a winter is one group.
+ *   BLOCK      blockRow * blockCols + blockCol, for square blocks of
+ *              'blockSize' cells: see blockRow and blockCol.
+ *
+ * Groups without any values aren't included.
+ */
+
+public class Aggregate extends GeoObject {
+
+	public enum Group { TIMESTAMP, MONTH, SEASON, BLOCK }
+
+	protected final Group group;
+	protected final int blockSize;
+	protected final int blockCols;
+	protected final ArrayList<Timestamp> timestamps;
+
+	protected int size = 0;
+	protected int[] keys = new int[16];
+	protected long[] counts = new long[16];
+	protected double[] sums = new double[16];
+	protected int[] mins = new int[16];
+	protected int[] maxes = new int[16];
+
+	// Where each key's entry is, while accumulating.
+	protected HashMap<Integer, Integer> slots = new HashMap<Integer, Integer>();
+
+	/*
+	 * Aggregate
+	 *
+	 * An empty aggregate. The block size and grid columns are only used by
+	 * BLOCK, the timestamps (the database's, indexed by ID - 1) by MONTH and
+	 * SEASON.
+	 */
+	public Aggregate(Group group, int blockSize, int cols, ArrayList<Timestamp> timestamps) {
+		this.group = group;
+		this.blockSize = Math.max(blockSize, 1);
+		this.blockCols = (cols + this.blockSize - 1) / this.blockSize;
+		this.timestamps = timestamps;
+	}
+
+	public Group group() { return group; }
+	public int blockSize() { return blockSize; }
+	public int size() { return size; }
+
+	public int[] keys() { return keys; }
+	public long[] counts() { return counts; }
+	public double[] sums() { return sums; }
+	public int[] mins() { return mins; }
+	public int[] maxes() { return maxes; }
+
+	public int key(int i) { return keys[i]; }
+	public long count(int i) { return counts[i]; }
+	public int min(int i) { return mins[i]; }
+	public int max(int i) { return maxes[i]; }
+	public double mean(int i) { return sums[i] / counts[i]; }
+
+	public double[] means() {
+		double[] m = new double[size];
+		for (int i = 0; i < size; i++) m[i] = mean(i);
+		return m;
+	}
+
+	/*
+	 * indexOf
+	 *
+	 * The entry for a key, or -1 if there isn't one.
+	 */
+	public int indexOf(int key) {
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		return (i < 0) ? -1 : i;
+	}
+
+	public int blockRow(int key) { return key / blockCols; }
+	public int blockCol(int key) { return key % blockCols; }
+
+	/*
+	 * key
+	 *
+	 * The group a vector at this timestamp ID and cell falls in.
+	 */
+	public int key(int timestampID, int row, int col) {
+
+		switch (group) {
+			case BLOCK:
+				return (row / blockSize) * blockCols + col / blockSize;
+			case MONTH: {
+				Timestamp t = timestamps.get(timestampID - 1);
+				return t.year() * 100 + t.month();
+			}
+			case SEASON: {
+				Timestamp t = timestamps.get(timestampID - 1);
+				int m = t.month();
+				if (m == 12) return (t.year() + 1) * 10 + 1;
+				return t.year() * 10 + (m < 3 ? 1 : m / 3 + 1);
+			}
+			default:
+				return timestampID;
+		}
+	}
+
+	/*
+	 * add
+	 *
+	 * Add a value to a group.
+	 */
+	public void add(int key, int value) {
+		add(key, 1, value, value, value);
+	}
+
+	/*
+	 * add
+	 *
+	 * Add a group's partial results: from a database that has done some of
+	 * the work itself.
+	 */
+	public void add(int key, long count, double sum, int min, int max) {
+
+		if (count == 0) return;
+
+		Integer slot = slots.get(key);
+		int i;
+
+		if (slot == null) {
+			if (size == keys.length) grow();
+			i = size++;
+			slots.put(key, i);
+
+			keys[i] = key;
+			counts[i] = 0;
+			sums[i] = 0;
+			mins[i] = min;
+			maxes[i] = max;
+		} else {
+			i = slot;
+		}
+
+		counts[i] += count;
+		sums[i] += sum;
+		if (min < mins[i]) mins[i] = min;
+		if (max > maxes[i]) maxes[i] = max;
+	}
+
+	protected void grow() {
+		int n = Math.max(16, keys.length * 2);
+		keys = Arrays.copyOf(keys, n);
+		counts = Arrays.copyOf(counts, n);
+		sums = Arrays.copyOf(sums, n);
+		mins = Arrays.copyOf(mins, n);
+		maxes = Arrays.copyOf(maxes, n);
+	}
+
+	/*
+	 * finish
+	 *
+	 * Put the entries in key order and trim the arrays to the number of
+	 * groups. Done by the database before it returns the aggregate.
+	 */
+	public Aggregate finish() {
+
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) order[i] = i;
+
+		final int[] k = keys;
+		Arrays.sort(order, (a, b) -> Integer.compare(k[a], k[b]));
+
+		int[] newKeys = new int[size];
+		long[] newCounts = new long[size];
+		double[] newSums = new double[size];
+		int[] newMins = new int[size];
+		int[] newMaxes = new int[size];
+
+		for (int i = 0; i < size; i++) {
+			int j = order[i];
+			newKeys[i] = keys[j];
+			newCounts[i] = counts[j];
+			newSums[i] = sums[j];
+			newMins[i] = mins[j];
+			newMaxes[i] = maxes[j];
+			slots.put(keys[j], i);
+		}
+
+		keys = newKeys;
+		counts = newCounts;
+		sums = newSums;
+		mins = newMins;
+		maxes = newMaxes;
+
+		return this;
+	}
+}
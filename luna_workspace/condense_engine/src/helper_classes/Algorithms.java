@@ -1,5 +1,8 @@
 package helper_classes;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /* Algorithms
  * 
  * Static condensation algorithms
@@ -14,6 +17,12 @@ public class Algorithms extends GeoObject {
 	// may eliminate confusion later.
 	static boolean printCriteria = true;
 
+	// Number of adjacent anomalous pixels algorithm1 needs to keep a pixel.
+	static final int minAdjacentAnomalies = 2;
+
+	// Rows per task when running algorithm1 in parallel.
+	static final int bandRows = 32;
+
 	/*
 	 * algorithm1
 	 * 
@@ -42,10 +51,6 @@ public class Algorithms extends GeoObject {
 		int rows = data.length;
 		int cols = data[0].length;
 
-		// Number of adjacent anomalous pixels necessary for deciding whether
-		// any one pixel is a keeper?
-		final int minAnomalies = 2;
-		
 		// A place to store the anomalous pixels
 		GriddedVector[][] condensedData = new GriddedVector[ rows ][ cols ];
 
@@ -105,7 +110,7 @@ public class Algorithms extends GeoObject {
 					}
 
 					// Did we find enough adjacent anomalous pixels?
-					if (adjacentAnomalies >= minAnomalies) {
+					if (adjacentAnomalies >= minAdjacentAnomalies) {
 						// Yup.
 						anomalies[r][c] = condensedData[r][c];
 						
@@ -121,7 +126,7 @@ public class Algorithms extends GeoObject {
 			Tools.message("    Min value allowable: " + minValue);
 			Tools.message("    Max value allowable: " + maxValue);
 			Tools.message("    SD threshold: " + sdThreshold);
-			Tools.message("    Adjacent anomalies requires: " + minAnomalies);
+			Tools.message("    Adjacent anomalies requires: " + minAdjacentAnomalies);
 			
 			// Turn off the printing.
 			printCriteria = false;
@@ -129,4 +134,182 @@ public class Algorithms extends GeoObject {
 		
 		return anomalies;
 	}
+
+	/*
+	 * algorithm1
+	 * 
+	 * The same algorithm, on a GridFrame. The climatology mean and standard
+	 * deviation are flat arrays in the same row-major cell order as the frame.
+	 * Returns a new frame, sharing the input's locations and timestamp, with
+	 * the pixels that weren't kept set to NODATA.
+	 */
+	public static GridFrame algorithm1(
+			GridFrame data,
+			double[] mean,
+			double[] sd,
+			double sdThreshold,
+			double minValue,
+			double maxValue ) {
+
+		int[] kept = new int[data.size()];
+
+		// The whole grid as one band.
+		new Algorithm1Band(data.values(), mean, sd, data.rows(), data.cols(),
+				sdThreshold, minValue, maxValue, kept, 0, data.rows()).computeDirectly();
+
+		printCriteria1(sdThreshold, minValue, maxValue);
+
+		return new GridFrame(kept, data.locations(), data.timestampID());
+	}
+
+	/*
+	 * algorithm1
+	 * 
+	 * Parallel version: the grid is split into bands of rows, and each band is
+	 * condensed as a task on the fork/join pool. The results are identical to
+	 * the single-threaded version.
+	 */
+	public static GridFrame algorithm1(
+			GridFrame data,
+			double[] mean,
+			double[] sd,
+			double sdThreshold,
+			double minValue,
+			double maxValue,
+			ForkJoinPool pool ) {
+
+		int[] kept = new int[data.size()];
+
+		pool.invoke(new Algorithm1Band(data.values(), mean, sd, data.rows(), data.cols(),
+				sdThreshold, minValue, maxValue, kept, 0, data.rows()));
+
+		printCriteria1(sdThreshold, minValue, maxValue);
+
+		return new GridFrame(kept, data.locations(), data.timestampID());
+	}
+
+	/*
+	 * printCriteria1
+	 * 
+	 * The first time through, print the algorithm1 criteria.
+	 */
+	protected static void printCriteria1(double sdThreshold, double minValue, double maxValue) {
+		if (printCriteria) {
+			Tools.message("Algorithm1:");
+			Tools.message("    Min value allowable: " + minValue);
+			Tools.message("    Max value allowable: " + maxValue);
+			Tools.message("    SD threshold: " + sdThreshold);
+			Tools.message("    Adjacent anomalies requires: " + minAdjacentAnomalies);
+
+			printCriteria = false;
+		}
+	}
+
+	/*
+	 * Algorithm1Band
+	 * 
+	 * Runs both passes of algorithm1 over a band of rows. A band flags the
+	 * anomalous pixels in its own rows plus one halo row above and below, so it
+	 * can count the neighbors of its edge pixels without waiting on the bands
+	 * next to it. Each band writes only its own rows of the output.
+	 * 
+	 * Bands larger than bandRows split themselves in two.
+	 */
+	static class Algorithm1Band extends RecursiveAction {
+
+		protected static final long serialVersionUID = 1;
+
+		final int[] values;
+		final double[] mean;
+		final double[] sd;
+		final int rows;
+		final int cols;
+		final double sdThreshold;
+		final double minValue;
+		final double maxValue;
+		final int[] kept;
+		final int startRow;
+		final int numRows;
+
+		Algorithm1Band(int[] values, double[] mean, double[] sd, int rows, int cols,
+				double sdThreshold, double minValue, double maxValue,
+				int[] kept, int startRow, int numRows) {
+			this.values = values;
+			this.mean = mean;
+			this.sd = sd;
+			this.rows = rows;
+			this.cols = cols;
+			this.sdThreshold = sdThreshold;
+			this.minValue = minValue;
+			this.maxValue = maxValue;
+			this.kept = kept;
+			this.startRow = startRow;
+			this.numRows = numRows;
+		}
+
+		protected void compute() {
+			if (numRows <= bandRows) {
+				computeDirectly();
+				return;
+			}
+
+			int split = numRows / 2;
+
+			invokeAll(new Algorithm1Band(values, mean, sd, rows, cols, sdThreshold,
+						minValue, maxValue, kept, startRow, split),
+					new Algorithm1Band(values, mean, sd, rows, cols, sdThreshold,
+						minValue, maxValue, kept, startRow + split, numRows - split));
+		}
+
+		protected void computeDirectly() {
+
+			// The band, plus its halo rows.
+			int first = Math.max(startRow - 1, 0);
+			int last = Math.min(startRow + numRows, rows - 1);
+
+			// PART 1...
+			// Flag the pixels that exceed the threshold value (# of standard deviations)
+			boolean[] anomalous = new boolean[(last - first + 1) * cols];
+
+			for (int i = first * cols, a = 0; a < anomalous.length; i++, a++) {
+				int v = values[i];
+
+				// Don't keep data that is clearly bad.
+				if (v < minValue || v > maxValue) continue;
+
+				double low = mean[i] - sdThreshold * sd[i];
+				double high = mean[i] + sdThreshold * sd[i];
+
+				anomalous[a] = v < low || v > high;
+			}
+
+			// PART 2...
+			// Keep only the anomalous pixels with enough anomalous neighbors.
+			for (int r = startRow; r < startRow + numRows; r++) {
+				int r0 = Math.max(r - 1, 0) - first;
+				int r1 = Math.min(r + 1, rows - 1) - first;
+
+				for (int c = 0; c < cols; c++) {
+					int i = r * cols + c;
+
+					kept[i] = NODATA;
+					if (!anomalous[(r - first) * cols + c]) continue;
+
+					int c0 = Math.max(c - 1, 0);
+					int c1 = Math.min(c + 1, cols - 1);
+
+					// Count the neighborhood, less the pixel itself.
+					int adjacentAnomalies = -1;
+					for (int rr = r0; rr <= r1; rr++) {
+						int row = rr * cols;
+						for (int cc = c0; cc <= c1; cc++) {
+							if (anomalous[row + cc]) adjacentAnomalies++;
+						}
+					}
+
+					if (adjacentAnomalies >= minAdjacentAnomalies) kept[i] = values[i];
+				}
+			}
+		}
+	}
 }
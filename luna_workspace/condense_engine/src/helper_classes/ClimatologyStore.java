@@ -0,0 +1,170 @@
+package helper_classes;
+
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* ClimatologyStore
+ *
+ * The climatology mean and standard deviation grids used for condensing,
+ * keyed by time increment name ("jan", "feb", ..., "djf", "mam", ...).
+ * Each increment's files are found and read the first time they're asked
+ * for, then kept: up to 'capacity' increments, dropping the least recently
+ * used when there are more. Safe to use from several threads at once.
+ */
+
+public class ClimatologyStore extends GeoObject {
+
+	/* Grids
+	 *
+	 * The mean and standard deviation for one increment, flat arrays in
+	 * row-major order.
+	 */
+	public static class Grids {
+		public final double[] mean;
+		public final double[] sd;
+		public final String meanFilename;
+		public final String sdFilename;
+
+		private int[] meanValues = null;
+
+		Grids(double[] mean, double[] sd, String meanFilename, String sdFilename) {
+			this.mean = mean;
+			this.sd = sd;
+			this.meanFilename = meanFilename;
+			this.sdFilename = sdFilename;
+		}
+
+		/*
+		 * meanValues
+		 *
+		 * The mean rounded to data values, NODATA where the mean isn't a
+		 * number (or is NODATA). Worked out the first time it's asked for.
+		 */
+		public synchronized int[] meanValues() {
+			if (meanValues == null) {
+				meanValues = new int[mean.length];
+				for (int i = 0; i < mean.length; i++) {
+					double m = mean[i];
+					meanValues[i] = (Double.isNaN(m) || Double.isInfinite(m) || m == NODATA) ?
+							NODATA : (int) Math.round(m);
+				}
+			}
+			return meanValues;
+		}
+	}
+
+	// Increments kept, by default: a year of months.
+	public static final int DEFAULT_CAPACITY = 12;
+
+	protected final String path;
+	protected final String channel;
+	protected final int rows;
+	protected final int cols;
+
+	protected final int capacity;
+
+	// In order of use, least recent first.
+	protected final LinkedHashMap<String, Grids> grids;
+
+	/*
+	 * ClimatologyStore
+	 *
+	 * Path is the directory holding the climatology files; channel is the
+	 * part of the file name identifying the data (e.g. "19h" for SSMI).
+	 */
+	public ClimatologyStore(String path, String channel, int rows, int cols) {
+		this(path, channel, rows, cols, DEFAULT_CAPACITY);
+	}
+
+	public ClimatologyStore(String path, String channel, int rows, int cols, int capacity) {
+		this.path = path;
+		this.channel = channel;
+		this.rows = rows;
+		this.cols = cols;
+		this.capacity = Math.max(capacity, 1);
+
+		grids = new LinkedHashMap<String, Grids>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Grids> eldest) {
+				return size() > ClimatologyStore.this.capacity;
+			}
+		};
+	}
+
+	public int rows() { return rows; }
+	public int cols() { return cols; }
+	public int capacity() { return capacity; }
+
+	/*
+	 * cached
+	 *
+	 * The increments held, least recently used first.
+	 */
+	public synchronized String[] cached() {
+		return grids.keySet().toArray(new String[0]);
+	}
+
+	/*
+	 * get
+	 *
+	 * The climatology for a time increment, reading it if necessary.
+	 */
+	public synchronized Grids get(String increment) {
+
+		Grids g = grids.get(increment);
+		if (g != null) return g;
+
+		// Look for the climatology files
+		String meanFilename = Tools.findFile(path + "/", channel + "-mean-" + increment);
+		String sdFilename = Tools.findFile(path + "/", channel + "-sd-" + increment);
+
+		// Did we not find them?
+		if (meanFilename == null || sdFilename == null) {
+			Tools.errorMessage("ClimatologyStore", "get",
+					"Could not find stats files: " + meanFilename +
+					" or " + sdFilename, new Exception());
+		}
+
+		Tools.message("  Reading climatology files: \n    " + meanFilename +
+				"\n    " + sdFilename);
+
+		try {
+			DataFile file = new DataFile(meanFilename);
+			double[] mean = file.readDoubles(rows * cols, ByteOrder.BIG_ENDIAN);
+			file.close();
+
+			file = new DataFile(sdFilename);
+			double[] sd = file.readDoubles(rows * cols, ByteOrder.BIG_ENDIAN);
+			file.close();
+
+			g = new Grids(mean, sd, meanFilename, sdFilename);
+		}
+		catch(Exception e) {
+			Tools.errorMessage("ClimatologyStore", "get", "Could not read stats files", e);
+		}
+
+		grids.put(increment, g);
+
+		return g;
+	}
+
+	/*
+	 * incrementName
+	 *
+	 * The name of the month or season increment a day falls in.
+	 */
+	public static String incrementName(Timestamp day, boolean seasonal) {
+
+		String[] months = {"jan", "feb", "mar", "apr", "may",
+				"jun", "jul", "aug", "sep", "oct", "nov", "dec"};
+
+		if (!seasonal) return months[day.month()-1];
+
+		if (day.month() > 2 && day.month() < 6) return "mam";
+		if (day.month() > 5 && day.month() < 9) return "jja";
+		if (day.month() > 8 && day.month() < 12) return "son";
+		return "djf";
+	}
+}
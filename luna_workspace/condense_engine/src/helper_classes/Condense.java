@@ -3,8 +3,11 @@ package helper_classes;
 /* Main program to experiment with algorithms for condensed data sets.
  */
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 
 public class Condense extends GeoObject {
 
@@ -37,7 +40,7 @@ public class Condense extends GeoObject {
 	}
 
 	public enum DatabaseType {
-		RAM, FILE, H2
+		RAM, OFFHEAP, FILE, TILE, PERST, H2
 	}
 
 	/*-------------------------------------------------------------------------
@@ -69,6 +72,20 @@ public class Condense extends GeoObject {
 
 	// What level of anomaly threshold do we want for condensing the data?
 	static double threshold = 2.0; // Standard deviations
+
+	// Run the condensation algorithm in parallel? Threads = 0 uses all the processors.
+	static boolean parallel = false;
+	static int threads = 0;
+
+	// Overlap reading, condensing and storing the days? ReadAhead is the most
+	// days in flight at once. (SSMI only.)
+	static boolean pipeline = false;
+	static int readAhead = 8;
+
+	// After the run, write a pixel-major copy of the database for time series
+	// queries (see TimeSeriesStore)? Memory is the most to use doing it, in MB.
+	static boolean timeSeries = false;
+	static int timeSeriesMemory = 256;
 	
 	static boolean filterBadData = true; 	// Filter out bad data points
 	static double minValue = 50;		// Minimum acceptable data value
@@ -81,15 +98,30 @@ public class Condense extends GeoObject {
 	static String statsPath = "";	// Location of the climatology files
 	static String databaseName;
 	static String databasePath = "jdbc:h2:tcp://localhost/~/";
+	static String databaseUser = "";
+	static String databasePassword = "";
+	static boolean bulkIngest = true;	// Batch the database inserts (H2)
+	static int commitInterval = 1;		// Days of data between commits (H2 bulk ingest)
+	static boolean append = false;		// Add to the database instead of starting it again
+	static DatabaseH2.Partitioning partitioning = DatabaseH2.Partitioning.NONE;	// Vector tables (H2)
+	static boolean embedded = false;	// Open the database in this process (H2)
+	static boolean csvLoad = false;		// Load the vectors from staged CSV files (H2)
+	static int servePort = 0;			// Serve the database over TCP afterwards (H2)
+	static boolean serveRemote = false;	// ...to other machines, not just this one
+	static int cacheMegabytes = 0;		// Cache what's read back from the database
 	static String surfaceFile = "";
 	static String surfaceLats = "";
 	static String surfaceLons = "";
 
-	// Stats for algorithmic processing
-	double[][] mean = null;	// Mean: [row][col]
-	double[][] sd = null; 	// Standard deviation: [row][col]
-	String meanFilename = "none";
-	String sdFilename = "none";
+	// Stats for algorithmic processing: the mean and standard deviation
+	// climatology files.
+	ClimatologyStore climatologies = null;
+
+	// The same, for each channel, by channel name.
+	HashMap<String, ClimatologyStore> channelClimatologies = new HashMap<String, ClimatologyStore>();
+
+	// The database IDs of the channels, in the order of 'channels'.
+	int[] channelIDs = new int[0];
 	
 	// Flags
 	static boolean createDatabase = true;
@@ -109,6 +141,10 @@ public class Condense extends GeoObject {
 	static String suffix1 = ""; 	// Frequency of SSMI data
 	static String suffix2 = ""; 	// SSMI Polarizataion: (h) or (v)
 
+	// SSMI channels (frequency + polarization, e.g. "19h") to store together
+	// in one database, or none for the single frequency and polarization.
+	static ArrayList<String> channels = new ArrayList<String>();
+
 	/*-------------------------------------------------------------------------
 	// INTERNAL GLOBAL DATA, NOT FOR USER TWEAKING
 	//-----------------------------------------------------------------------*/
@@ -116,8 +152,14 @@ public class Condense extends GeoObject {
 	// The image data across the specified time span [day][row][col]
 	GriddedVector data[][];
 
+	// The same, for datasets that read their data as flat frames.
+	GridFrame frame;
+
 	boolean haveMetadata = false;
 
+	// Appending to a database that already has data in it?
+	boolean resumed = false;
+
 	Metadata metadata;
 
 	// Surface type information.
@@ -130,6 +172,9 @@ public class Condense extends GeoObject {
 	// Our 'database' of objects (in lieu of an actual database app).
 	Database database;
 
+	// Worker threads for the parallel algorithm.
+	ForkJoinPool pool;
+
 	// Default size of the image files
 	int rows = 316;
 	int cols = 332;
@@ -139,6 +184,7 @@ public class Condense extends GeoObject {
 
 	// Gridded image pixel locations.
 	GriddedLocation locations[][];
+	LocationTable locationTable;
 
 	/*-------------------------------------------------------------------------
 	// MAIN PROGRAM
@@ -201,11 +247,40 @@ public class Condense extends GeoObject {
 			case RAM:
 				database = new DatabaseRamSchema("", dataType.toString());
 				break;
+			case OFFHEAP:
+				database = new DatabaseOffHeapSchema("", dataType.toString());
+				break;
 			case FILE:
 				database = new DatabaseFileSchema(outputPath, dataType.toString());
 				break;
+			case TILE:
+				database = new DatabaseTileSchema(outputPath, dataType.toString());
+				break;
+			case PERST:
+				database = new DatabasePerst(outputPath, dataType.toString());
+				break;
 			case H2:
-				database = new DatabaseH2(databasePath, databaseName);
+				// Only a database opened in this process is ours to serve; one
+				// opened through a server is already served by it.
+				if (servePort > 0 && !embedded) {
+					Tools.errorMessage("Condense", "Condense",
+							"serve needs embedded = true", new Exception());
+				}
+				if (servePort > 0 && (databaseUser.isEmpty() || databasePassword.isEmpty())) {
+					Tools.errorMessage("Condense", "Condense",
+							"serve needs a database user and database password", new Exception());
+				}
+
+				DatabaseH2 h2 = new DatabaseH2(embedded ?
+						DatabaseH2.embeddedPath(databasePath) : databasePath, databaseName);
+				h2.setCredentials(databaseUser, databasePassword);
+				h2.setBulkIngest(bulkIngest);
+				h2.setCommitInterval(commitInterval);
+				h2.setPartitioning(partitioning);
+				if (csvLoad) {
+					h2.setCsvLoad(outputPath.isEmpty() ? System.getProperty("java.io.tmpdir") : outputPath);
+				}
+				database = h2;
 				break;
 		}
 
@@ -217,8 +292,15 @@ public class Condense extends GeoObject {
 								"Giving up."));
 			}
 
-			// For development, clean out any tables and data first.
-			if (addDataToDatabase) database.clean();
+			// Add to the data already there, or clean out any tables and
+			// data first.
+			if (append && addDataToDatabase) {
+				resumed = database.resume() > 0;
+			}
+			else if (addDataToDatabase) database.clean();
+
+			// Add the channels, or find them if they're already there.
+			if (!channels.isEmpty() && addDataToDatabase) storeChannels();
 
 			// Read surface types and coast lines.
 			if (readSurface) readSurface();
@@ -227,23 +309,66 @@ public class Condense extends GeoObject {
 			Timestamp startDate = new Timestamp(startYear, startMonth, startDay);
 			Timestamp finalDate = new Timestamp(finalYear, finalMonth, finalDay);
 
+			// Appending: carry on from the day after the last one stored.
+			boolean upToDate = false;
+			if (resumed) {
+				Timestamp last = database.lastTimestamp();
+				Tools.statusMessage("==> Appending to the database after " + last.dateString());
+
+				if (last.days() >= startDate.days()) {
+					startDate = new Timestamp(last);
+					startDate.incrementDay();
+				}
+
+				if (startDate.days() > finalDate.days()) {
+					Tools.statusMessage("The database is already up to date.");
+					upToDate = true;
+				}
+			}
+
 			// Timespan is the total time we will process.
-			Timespan timespan = new Timespan(startDate, finalDate, Timespan.Increment.NONE);
+			Timespan timespan = upToDate ? null : new Timespan(startDate, finalDate, Timespan.Increment.NONE);
+
+			// Nothing to read if there are no days to process; the database
+			// is still closed, and the images made, below.
+			Timestamp date = null;
+			if (timespan != null && timespan.days() > 0) {
+				Tools.message("Total days to process: " + timespan.days());
+				date = startDate;
+			}
 
-			Tools.message("Total days to process: " + timespan.days());
-			
-			// Quit if there are no days to process.
-			if (timespan.days() == 0)
-				return;
-			Timestamp date = startDate;
+			if (pipeline && !channels.isEmpty()) {
+				Tools.warningMessage("Condense: pipeline isn't used with more than one channel");
+			}
+
+			if (pipeline && date != null && dataType == DataType.SSMI && channels.isEmpty()) {
+
+				// The reader needs the locations before it starts.
+				if (!haveMetadata) {
+					openDataset();
+					Tools.message("==> Adding pixel data to the database");
+				}
+
+				try {
+					fileCount = new CondensePipeline(this, readAhead, threads).run(startDate, timespan);
+				} catch (RuntimeException e) {
+					Tools.errorMessage("Condense", "condense", e.getMessage(), e);
+				}
+				date = null;
+			}
 
 			// Read the data files. Stop when we run out of dates.
 			while (date != null) {
 
-				readData(date);
+				if (!channels.isEmpty()) {
+					condenseChannels(date);
+				}
+				else {
+					readData(date);
 
-				// If we found data, condense it and add it to the database.
-				if (data != null) condenseData( date );
+					// If we found data, condense it and add it to the database.
+					if (data != null || frame != null) condenseData( date );
+				}
 
 				// Increment the date.
 				date = timespan.nextDay(date);
@@ -252,9 +377,18 @@ public class Condense extends GeoObject {
 			// Database info for debugging purposes.
 			database.status();
 
+			if (timeSeries) writeTimeSeries();
+
 			// All done. Close the database.
 			database.disconnect();
 
+			// Let others read it, now it's loaded.
+			if (servePort > 0 && database instanceof DatabaseH2) {
+				((DatabaseH2) database).serve(servePort, serveRemote);
+			}
+
+			if (pool != null) pool.shutdown();
+
 			// Warm fuzzy feedback.
 			Tools.statusMessage("Total data files processed = " + fileCount);
 		}
@@ -303,6 +437,7 @@ public class Condense extends GeoObject {
 		try {
 
 			data = null;
+			frame = null;
 			switch (dataType) {
 				case NONE:
 					break;
@@ -323,15 +458,12 @@ public class Condense extends GeoObject {
 					break;
 
 				case SSMI:
-					filename = DatasetSSMI.getFileName(dataPath, date.year(),
-							date.month(), date.dayOfMonth(),
-							addYearToInputDirectory, suffix1, suffix2);
+					filename = dataFileName(date);
 
 					if (filename == null) break;
 				
 					// Read the data
-					data = (GriddedVector[][]) ((DatasetSSMI) dataset).readData(
-							filename, locations, date.id);
+					frame = dataset.readFrame(filename, locationTable, date.id);
 
 					// Success
 					fileCount++;
@@ -350,14 +482,16 @@ public class Condense extends GeoObject {
 		// NODATA);
 
 		// Found data. Add the timestamp to the database.
-		if (data != null && addDataToDatabase) {
+		if ((data != null || frame != null) && addDataToDatabase) {
 			date.id = database.storeTimestamp(date);
 
 			Tools.statusMessage(date.yearString() + "." + date.monthString() + "."
 					+ date.dayOfMonthString() + "  File name: " + filename);
 
 			// Update the vector data with the timestamp ID
-			for (int r = 0; r < rows; r++) {
+			if (frame != null) frame.timestampID(date.id);
+
+			for (int r = 0; data != null && r < rows; r++) {
 				for (int c = 0; c < cols; c++) {
 					data[r][c].timestampID = date.id;
 				}
@@ -369,6 +503,142 @@ public class Condense extends GeoObject {
 		
 	}
 
+	/*
+	 * writeTimeSeries
+	 * 
+	 * Transpose the database into a time series file in the output directory,
+	 * one for each channel when there are several.
+	 */
+	protected void writeTimeSeries() {
+
+		if (channels.isEmpty()) {
+			writeTimeSeries(outputPath + dataType + "_timeseries.dat");
+			return;
+		}
+
+		for (int i = 0; i < channels.size(); i++) {
+			database.useChannel(channelIDs[i]);
+			writeTimeSeries(outputPath + dataType + "_" + channels.get(i) + "_timeseries.dat");
+		}
+	}
+
+	protected void writeTimeSeries(String filename) {
+		try {
+			TimeSeriesStore store = TimeSeriesStore.transpose(database, filename,
+					(long) timeSeriesMemory << 20);
+			store.close();
+		} catch (IOException e) {
+			Tools.errorMessage("Condense", "writeTimeSeries", "could not write " + filename, e);
+		}
+	}
+
+	/*
+	 * storeChannels
+	 * 
+	 * Add the channels to the database (or find them, when appending).
+	 */
+	protected void storeChannels() {
+		channelIDs = new int[channels.size()];
+		for (int i = 0; i < channels.size(); i++) {
+			channelIDs[i] = database.storeChannel(channels.get(i));
+		}
+	}
+
+	/*
+	 * condenseChannels
+	 * 
+	 * Read, condense and store a day of every channel. The timestamp is
+	 * stored once, for all of them; each channel's frame is condensed against
+	 * its own climatology. Days without any of the files are skipped.
+	 */
+	protected void condenseChannels(Timestamp date) {
+
+		// Get metadata and locations
+		if (!haveMetadata) {
+			openDataset();
+			Tools.message("==> Adding pixel data to the database");
+		}
+
+		GridFrame[] frames = new GridFrame[channels.size()];
+		int found = 0;
+
+		for (int i = 0; i < channels.size(); i++) {
+			String filename = dataFileName(date, channels.get(i));
+			if (filename == null) continue;
+
+			try {
+				frames[i] = dataset.readFrame(filename, locationTable, 0);
+				found++;
+				fileCount++;
+			} catch (Exception e) {
+				Tools.warningMessage("Condense::condenseChannels: skipping " + filename + ": " + e);
+			}
+		}
+
+		if (found == 0 || !addDataToDatabase) {
+			Tools.statusMessage(date.yearString() + "." + date.monthString() + "."
+					+ date.dayOfMonthString() + "  No file");
+			return;
+		}
+
+		date.id = database.storeTimestamp(date);
+
+		Tools.statusMessage(date.yearString() + "." + date.monthString() + "."
+				+ date.dayOfMonthString() + "  Channels: " + found + " of " + channels.size());
+
+		// Every channel is flushed, with or without data, so the day ends in
+		// one batch (see DatabaseH2.flush).
+		for (int i = 0; i < channels.size(); i++) {
+			database.useChannel(channelIDs[i]);
+
+			if (frames[i] == null) {
+				database.flush();
+				continue;
+			}
+
+			frames[i].timestampID(date.id);
+			database.storeFrame(condenseFrame(frames[i], date, climatologies(channels.get(i))));
+		}
+	}
+
+	/*
+	 * dataFileName
+	 * 
+	 * The name of the SSMI data file for a day, or null if there isn't one.
+	 */
+	protected String dataFileName(Timestamp date) {
+		return DatasetSSMI.getFileName(dataPath, date.year(),
+				date.month(), date.dayOfMonth(),
+				addYearToInputDirectory, suffix1, suffix2);
+	}
+
+	/*
+	 * dataFileName
+	 * 
+	 * The name of a channel's SSMI data file for a day, or null.
+	 */
+	protected String dataFileName(Timestamp date, String channel) {
+		return DatasetSSMI.getFileName(dataPath, date.year(),
+				date.month(), date.dayOfMonth(),
+				addYearToInputDirectory, frequency(channel), polarization(channel));
+	}
+
+	/*
+	 * frequency, polarization
+	 * 
+	 * The two halves of a channel name: "37v" is frequency "37",
+	 * polarization "v".
+	 */
+	static String frequency(String channel) {
+		int i = 0;
+		while (i < channel.length() && Character.isDigit(channel.charAt(i))) i++;
+		return channel.substring(0, i);
+	}
+
+	static String polarization(String channel) {
+		return channel.substring(frequency(channel).length());
+	}
+
 	/*
 	 * openDataset
 	 * 
@@ -432,9 +702,20 @@ public class Condense extends GeoObject {
 		rows = dataset.rows();
 		cols = dataset.cols();
 
-		// We need to store the metadata in the database.
-		Tools.statusMessage("==> Adding metadata to the database.");
-		if (addDataToDatabase) database.storeMetadata(metadata);
+		// We need to store the metadata in the database, unless it's already
+		// there -- and then it has to be the same grid.
+		if (resumed) {
+			Metadata stored = database.getMetadata();
+			if (stored.rows != metadata.rows || stored.cols != metadata.cols) {
+				Tools.errorMessage("Condense", "getMetadata", "Can't append " +
+						metadata.rows + "x" + metadata.cols + " data to a " +
+						stored.rows + "x" + stored.cols + " database", new Exception());
+			}
+		}
+		else {
+			Tools.statusMessage("==> Adding metadata to the database.");
+			if (addDataToDatabase) database.storeMetadata(metadata);
+		}
 
 		haveMetadata = true;
 
@@ -469,12 +750,34 @@ public class Condense extends GeoObject {
 			break;
 		}
 
-		Tools.statusMessage("==> Adding locations to the database.");
-		if (addDataToDatabase) database.storeLocationArray(locations);
+		if (resumed) {
+			useStoredLocations();
+		}
+		else {
+			Tools.statusMessage("==> Adding locations to the database.");
+			if (addDataToDatabase) database.storeLocationArray(locations);
+		}
+
+		// The frames all share one table of the (now stored) locations.
+		locationTable = new LocationTable(locations);
 
 		return;
 	}
 
+	/*
+	 * useStoredLocations
+	 * 
+	 * When appending, the locations are already in the database: give ours
+	 * the IDs they were stored with.
+	 */
+	protected void useStoredLocations() {
+		for (GriddedLocation loc : database.getLocations()) {
+			int r = loc.row(), c = loc.col();
+			if (r < 0 || r >= locations.length || c < 0 || c >= locations[r].length) continue;
+			if (locations[r][c] != null) locations[r][c].id = loc.id();
+		}
+	}
+
 	/*
 	 * condenseData
 	 * 
@@ -482,6 +785,14 @@ public class Condense extends GeoObject {
 	 */
 	protected void condenseData( Timestamp day ) {
 
+		if (!addDataToDatabase) return;
+
+		// Gridded frames
+		if (frame != null) {
+			database.storeFrame(condenseFrame(frame, day));
+			return;
+		}
+
 		switch (algorithm) {
 
 		case NO_CONDENSATION:
@@ -490,71 +801,14 @@ public class Condense extends GeoObject {
 
 		case ALGORITHM1:
 
-			if (data != null && addDataToDatabase) {
+			if (data != null) {
 
-				// Read the mean and standard deviation climatology files, if
-				// we haven't already. Find the file names...
-				
-				String increment = null;
-				String[] months = {"jan", "feb", "mar", "apr", "may",
-						"jun", "jul", "aug", "sep", "oct", "nov", "dec"};
-				
-				// Process by season
-				if (seasonalFlag) {
-					if (day.month() > 2 && day.month() < 6) {		// MAM
-						increment = "mam";
-					}
-					else if (day.month() > 5 && day.month() < 9) {	// JJA
-						increment = "jja";
-					}
-					else if (day.month() > 8 && day.month() < 12) {	// SON
-						increment = "son";
-					}
-					else {											// DJF
-						increment = "djf";
-					}
-						
-				}
-				// Process by month
-				else {
-					increment = months[day.month()-1];
-				}
-				
-				// Look for the climatology files
-				String newMeanFilename = Tools.findFile(statsPath+"/", suffix1+suffix2+"-mean-"+increment);
-				String newSdFilename = Tools.findFile(statsPath+"/", suffix1+suffix2+"-sd-"+increment);
-
-				// Did we not find them?
-				if (newMeanFilename == null || newSdFilename == null) {
-					Tools.errorMessage("Condense", "CondenseData",
-							"Could not find stats files: " + newMeanFilename+
-							" or " + newSdFilename, new Exception());
-				}
+				// The mean and standard deviation climatology for this day.
+				ClimatologyStore.Grids stats = climatologies().get(
+						ClimatologyStore.incrementName(day, seasonalFlag));
 
-				// Read in the statistical data from these files -- if we haven't already done it.
-				if (meanFilename.equals(newMeanFilename) != true) {
-					meanFilename = newMeanFilename;
-					sdFilename = newSdFilename;
-
-					Tools.message("  Reading climatology files: \n    " + meanFilename +
-							"\n    " + sdFilename);
-					
-					try {
-						DataFile file = new DataFile(meanFilename);
-						mean = file.readDoubles2D( metadata.rows, metadata.cols);
-						file.close();
-						
-						file = new DataFile(sdFilename);
-						sd = file.readDoubles2D( metadata.rows, metadata.cols);
-						file.close();						
-					}
-					catch(Exception e) {
-						Tools.errorMessage("Condense", "condenseData", "Could not read stats files", e);
-					}
-				}
-				
 				GriddedVector[][] condensedData = Algorithms.algorithm1(
-					data, mean, sd, threshold, minValue, maxValue);
+					data, to2D(stats.mean), to2D(stats.sd), threshold, minValue, maxValue);
 
 				// Store the data in a database.
 				database.storeVectorArray(condensedData, locations);
@@ -563,6 +817,75 @@ public class Condense extends GeoObject {
 		}
 	}
 
+	/*
+	 * condenseFrame
+	 * 
+	 * Condense one day's frame of data with the selected algorithm. Called
+	 * from the pipeline's worker threads as well as the sequential loop.
+	 */
+	protected GridFrame condenseFrame( GridFrame input, Timestamp day ) {
+		return condenseFrame(input, day, climatologies());
+	}
+
+	/*
+	 * condenseFrame
+	 * 
+	 * The same, against a given set of climatologies (a channel's).
+	 */
+	protected GridFrame condenseFrame( GridFrame input, Timestamp day, ClimatologyStore climatologies ) {
+
+		switch (algorithm) {
+
+		case ALGORITHM1:
+
+			// The mean and standard deviation climatology for this day. The
+			// files are read the first time they're needed.
+			ClimatologyStore.Grids stats = climatologies.get(
+					ClimatologyStore.incrementName(day, seasonalFlag));
+
+			if (parallel) {
+				return Algorithms.algorithm1(
+					input, stats.mean, stats.sd, threshold, minValue, maxValue, pool());
+			}
+
+			return Algorithms.algorithm1(
+				input, stats.mean, stats.sd, threshold, minValue, maxValue);
+
+		case NO_CONDENSATION:
+		default:
+			return input;
+		}
+	}
+
+	/*
+	 * climatologies
+	 * 
+	 * The climatology files, created when first needed.
+	 */
+	protected synchronized ClimatologyStore climatologies() {
+		if (climatologies == null) {
+			climatologies = new ClimatologyStore(statsPath, suffix1 + suffix2,
+					metadata.rows, metadata.cols);
+		}
+		return climatologies;
+	}
+
+	/*
+	 * climatologies
+	 * 
+	 * A channel's climatology files. Each channel keeps only two increments
+	 * in memory, since days are condensed in order and there may be many
+	 * channels.
+	 */
+	protected synchronized ClimatologyStore climatologies(String channel) {
+		ClimatologyStore store = channelClimatologies.get(channel);
+		if (store == null) {
+			store = new ClimatologyStore(statsPath, channel, metadata.rows, metadata.cols, 2);
+			channelClimatologies.put(channel, store);
+		}
+		return store;
+	}
+
 	/*
 	 * noCondensation
 	 * 
@@ -572,6 +895,32 @@ public class Condense extends GeoObject {
 		if (data != null && addDataToDatabase) database.storeVectorArray(data, locations);
 	}
 
+	/*
+	 * pool
+	 * 
+	 * The fork/join pool for the parallel algorithm, created when first needed.
+	 */
+	protected synchronized ForkJoinPool pool() {
+		if (pool == null) {
+			pool = (threads > 0) ? new ForkJoinPool(threads) : new ForkJoinPool();
+			Tools.statusMessage("Parallel condensation threads: " + pool.getParallelism());
+		}
+		return pool;
+	}
+
+	/*
+	 * to2D
+	 * 
+	 * Reshape a flat [row * cols + col] array of climatology values to [row][col].
+	 */
+	protected double[][] to2D(double[] flat) {
+		double[][] array = new double[metadata.rows][metadata.cols];
+		for (int r = 0; r < metadata.rows; r++) {
+			System.arraycopy(flat, r * metadata.cols, array[r], 0, metadata.cols);
+		}
+		return array;
+	}
+
 	/*
 	 * generateTestImages
 	 * 
@@ -582,6 +931,9 @@ public class Condense extends GeoObject {
 
 		Tools.statusMessage("\nGENERATE TEST IMAGES");
 
+		// Keep what's read back in memory.
+		if (cacheMegabytes > 0) database = new DatabaseCache(database, (long) cacheMegabytes << 20);
+
 		database.connectReadOnly();
 
 		// Get the metadata
@@ -873,6 +1225,78 @@ public class Condense extends GeoObject {
 					databasePath = textValue;
 					Tools.statusMessage("Database Path = " + databasePath);
 					break;
+				case "databaseuser":
+					databaseUser = textValue;
+					Tools.statusMessage("Database User = " + databaseUser);
+					break;
+				case "databasepassword":
+					databasePassword = textValue;
+					break;
+				case "bulkingest":
+					bulkIngest = Boolean.valueOf(value);
+					Tools.statusMessage("Bulk database ingest = " + bulkIngest);
+					break;
+				case "parallel":
+					parallel = Boolean.valueOf(value);
+					Tools.statusMessage("Parallel condensation = " + parallel);
+					break;
+				case "threads":
+					threads = Integer.valueOf(value);
+					Tools.statusMessage("Threads = " + threads);
+					break;
+				case "pipeline":
+					pipeline = Boolean.valueOf(value);
+					Tools.statusMessage("Pipeline = " + pipeline);
+					break;
+				case "readahead":
+					readAhead = Integer.valueOf(value);
+					Tools.statusMessage("Read ahead = " + readAhead);
+					break;
+				case "timeseries":
+					timeSeries = Boolean.valueOf(value);
+					Tools.statusMessage("Time series file = " + timeSeries);
+					break;
+				case "timeseriesmemory":
+					timeSeriesMemory = Integer.valueOf(value);
+					Tools.statusMessage("Time series memory (MB) = " + timeSeriesMemory);
+					break;
+				case "partition":
+					if (value.equals("none"))
+						partitioning = DatabaseH2.Partitioning.NONE;
+					if (value.equals("year"))
+						partitioning = DatabaseH2.Partitioning.YEAR;
+					if (value.equals("month"))
+						partitioning = DatabaseH2.Partitioning.MONTH;
+					Tools.statusMessage("Partition the vectors by = " + partitioning);
+					break;
+				case "append":
+					append = Boolean.valueOf(value);
+					Tools.statusMessage("Append to the database = " + append);
+					break;
+				case "embedded":
+					embedded = Boolean.valueOf(value);
+					Tools.statusMessage("Embedded database = " + embedded);
+					break;
+				case "csvload":
+					csvLoad = Boolean.valueOf(value);
+					Tools.statusMessage("CSV load = " + csvLoad);
+					break;
+				case "serve":
+					servePort = Integer.valueOf(value);
+					Tools.statusMessage("Serve the database on port = " + servePort);
+					break;
+				case "serveremote":
+					serveRemote = Boolean.valueOf(value);
+					Tools.statusMessage("Serve to other machines = " + serveRemote);
+					break;
+				case "cache":
+					cacheMegabytes = Integer.valueOf(value);
+					Tools.statusMessage("Cache (MB) = " + cacheMegabytes);
+					break;
+				case "commitinterval":
+					commitInterval = Integer.valueOf(value);
+					Tools.statusMessage("Commit interval (days) = " + commitInterval);
+					break;
 				case "locationspath":
 					locationsPath = textValue;
 					Tools.statusMessage("Locations Path = " + locationsPath);
@@ -903,6 +1327,27 @@ public class Condense extends GeoObject {
 					suffix1 = value;
 					Tools.statusMessage("Frequency = " + suffix1);
 					break;
+				case "channels":	// SSMI channels to store together: 19h, 19v, 37v...
+					channels.clear();
+					for (String c : value.split(",")) {
+						if (c.length() > 0 && !channels.contains(c)) channels.add(c);
+					}
+					if (!channels.isEmpty()) {
+						// The first channel's files give the grid, so the
+						// rest have to be on it too.
+						suffix1 = frequency(channels.get(0));
+						suffix2 = polarization(channels.get(0));
+
+						for (String c : channels) {
+							if (!DatasetSSMI.sameGrid(channels.get(0), c)) {
+								Tools.errorMessage("Condense", "readConfigFile", "channels " +
+										channels.get(0) + " and " + c + " are on different grids;" +
+										" store them in separate databases", new Exception(input));
+							}
+						}
+					}
+					Tools.statusMessage("Channels = " + channels);
+					break;
 				case "channel":		// AVHRR channel: chn1, chn2, etc. The file name suffix.
 					suffix2 = value;
 					Tools.statusMessage("Channel = " + suffix2);
@@ -940,8 +1385,14 @@ public class Condense extends GeoObject {
 				case "databasetype":
 					if (value.equals("ram"))
 						databaseType = DatabaseType.RAM;
+					if (value.equals("offheap"))
+						databaseType = DatabaseType.OFFHEAP;
 					if (value.equals("file"))
 						databaseType = DatabaseType.FILE;
+					if (value.equals("tile"))
+						databaseType = DatabaseType.TILE;
+					if (value.equals("perst"))
+						databaseType = DatabaseType.PERST;
 					if (value.equals("h2"))
 						databaseType = DatabaseType.H2;
 					Tools.statusMessage("Database type: " + databaseType);
@@ -0,0 +1,273 @@
+package helper_classes;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/* CondensePipeline
+ *
+ * The Condense daily loop, run as three overlapping stages instead of one
+ * day after another:
+ *
+ *   reader    -- a thread that walks the dates, reading each day's file
+ *                ahead of the rest of the pipeline;
+ *   condense  -- a pool of workers running the condensation algorithm on
+ *                the days that have been read;
+ *   writer    -- the calling thread, storing the condensed days in the
+ *                database.
+ *
+ * The stages are joined by a bounded queue of pending days, so the reader
+ * can't get more than readAhead days in front of the writer (and memory
+ * stays bounded). The writer takes the days off the queue in date order,
+ * whichever order the workers finish them in, and it is the only stage
+ * that touches the database -- so the timestamp IDs are assigned in date
+ * order, exactly as the sequential loop assigns them.
+ */
+
+public class CondensePipeline extends GeoObject {
+
+	protected final Condense condense;
+	protected final Database database;
+	protected final int readAhead;
+	protected final int workers;
+
+	// Pending days, in date order. Each is a Future of the condensed day.
+	protected final BlockingQueue<Future<Day>> queue;
+
+	// Set if the reader fails, so run can hand it on.
+	protected volatile Exception readerError = null;
+
+	/* Day
+	 *
+	 * One day moving through the pipeline. The frame is null if there was no
+	 * file for the date; a null date marks the end of the run.
+	 */
+	protected static class Day {
+		final Timestamp date;
+		final GridFrame frame;
+		final String filename;
+
+		Day(Timestamp date, GridFrame frame, String filename) {
+			this.date = date;
+			this.frame = frame;
+			this.filename = filename;
+		}
+	}
+
+	/*
+	 * CondensePipeline
+	 *
+	 * ReadAhead is the most days read but not yet written; workers is the
+	 * number of condensation threads (0 to use all the processors).
+	 */
+	public CondensePipeline(Condense condense, int readAhead, int workers) {
+		this(condense, condense.database, readAhead, workers);
+	}
+
+	/*
+	 * CondensePipeline
+	 *
+	 * A pipeline storing into a database, for a subclass that reads and
+	 * condenses the days itself (see fileName, readFrame and condenseFrame).
+	 */
+	protected CondensePipeline(Database database, int readAhead, int workers) {
+		this(null, database, readAhead, workers);
+	}
+
+	private CondensePipeline(Condense condense, Database database, int readAhead, int workers) {
+		this.condense = condense;
+		this.database = database;
+		this.readAhead = Math.max(1, readAhead);
+		this.workers = (workers > 0) ? workers : Runtime.getRuntime().availableProcessors();
+
+		queue = new ArrayBlockingQueue<Future<Day>>(this.readAhead);
+	}
+
+	/*
+	 * run
+	 *
+	 * Process every day of the time span. Returns the number of data files
+	 * read. If the reader or a condensation worker fails, the days before it
+	 * are stored and the failure is thrown, wrapped in a RuntimeException.
+	 */
+	public int run(final Timestamp startDate, final Timespan timespan) {
+
+		final ExecutorService pool = Executors.newFixedThreadPool(workers);
+
+		Tools.statusMessage("Condense pipeline: read ahead = " + readAhead +
+				" days, condensation threads = " + workers);
+
+		Thread reader = new Thread("condense-reader") {
+			public void run() {
+				try {
+					for (Timestamp date = startDate; date != null; date = timespan.nextDay(date)) {
+						queue.put(submit(pool, date, read(date)));
+					}
+				} catch (Exception e) {
+					readerError = e;
+				} finally {
+					// The end marker. Always put it, so the writer never waits forever.
+					try {
+						queue.put(done(new Day(null, null, null)));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		};
+
+		reader.setDaemon(true);
+		reader.start();
+
+		int stored = 0;
+
+		try {
+			stored = write();
+		} finally {
+			// If the writer stopped early, don't leave the reader waiting on the queue.
+			reader.interrupt();
+			pool.shutdown();
+		}
+
+		if (readerError != null) {
+			throw new RuntimeException("CondensePipeline: reading the data failed: " + readerError, readerError);
+		}
+
+		return stored;
+	}
+
+	/*
+	 * read
+	 *
+	 * Read one day's file. Doesn't care if a file is missing or can't be
+	 * read: the day goes through the pipeline without a frame (and is
+	 * skipped), as long as its filename is kept to say which file it was.
+	 */
+	protected Day read(Timestamp date) {
+
+		String filename = fileName(date);
+		if (filename == null) return new Day(date, null, null);
+
+		GridFrame frame = null;
+		try {
+			frame = readFrame(filename);
+		} catch (Exception e) {
+			Tools.warningMessage("CondensePipeline::read: skipping " + filename + ": " + e);
+		}
+
+		return new Day(date, frame, filename);
+	}
+
+	/*
+	 * fileName
+	 *
+	 * The data file for a date, or null if there isn't one.
+	 */
+	protected String fileName(Timestamp date) {
+		return condense.dataFileName(date);
+	}
+
+	/*
+	 * readFrame
+	 *
+	 * Read a data file.
+	 */
+	protected GridFrame readFrame(String filename) throws Exception {
+		return condense.dataset.readFrame(filename, condense.locationTable, 0);
+	}
+
+	/*
+	 * condenseFrame
+	 *
+	 * Condense a day's frame. Called on the worker threads.
+	 */
+	protected GridFrame condenseFrame(GridFrame frame, Timestamp date) {
+		return condense.condenseFrame(frame, date);
+	}
+
+	/*
+	 * submit
+	 *
+	 * Hand a day to the condensation workers. Days without data don't need
+	 * any work; they're queued already done.
+	 */
+	protected Future<Day> submit(ExecutorService pool, final Timestamp date, final Day day) {
+
+		if (day.frame == null || !Condense.addDataToDatabase) return done(day);
+
+		return pool.submit(new Callable<Day>() {
+			public Day call() {
+				return new Day(date, condenseFrame(day.frame, date), day.filename);
+			}
+		});
+	}
+
+	/*
+	 * done
+	 *
+	 * A future that already holds its day.
+	 */
+	protected static Future<Day> done(Day day) {
+		FutureTask<Day> f = new FutureTask<Day>(new Runnable() { public void run() {} }, day);
+		f.run();
+		return f;
+	}
+
+	/*
+	 * write
+	 *
+	 * The writer stage: store the days in date order until the end marker.
+	 * A failed condensation stops it.
+	 */
+	protected int write() {
+
+		int stored = 0;
+
+		while (true) {
+
+			Day day = null;
+			try {
+				day = queue.take().get();
+			} catch (ExecutionException e) {
+				throw new RuntimeException("CondensePipeline: condensation failed: " + e.getCause(), e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("CondensePipeline: interrupted", e);
+			}
+
+			if (day.date == null) break;
+
+			Timestamp date = day.date;
+
+			if (day.frame != null) {
+				stored++;
+			}
+
+			if (day.frame != null && Condense.addDataToDatabase) {
+
+				// Timestamps are stored here, in date order, so the IDs are the
+				// same as a sequential run.
+				date.id = database.storeTimestamp(date);
+				day.frame.timestampID(date.id);
+
+				Tools.statusMessage(date.yearString() + "." + date.monthString() + "."
+						+ date.dayOfMonthString() + "  File name: " + day.filename);
+
+				database.storeFrame(day.frame);
+			} else if (day.frame == null && day.filename != null) {
+				Tools.statusMessage(date.yearString() + "." + date.monthString() + "."
+						+ date.dayOfMonthString() + "  Skipping unreadable file: " + day.filename);
+			} else {
+				Tools.statusMessage(date.yearString() + "." + date.monthString() + "."
+						+ date.dayOfMonthString() + "  No file");
+			}
+		}
+
+		return stored;
+	}
+}
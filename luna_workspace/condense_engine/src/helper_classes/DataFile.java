@@ -2,6 +2,9 @@ package helper_classes;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 /* DataFile
  * 
@@ -12,6 +15,7 @@ public class DataFile extends GeoObject {
 
 	private String filename;
 	private File file;
+	private FileInputStream fileInputStream = null;
 	private DataInputStream dataInputStream = null;
 	private DataOutputStream dataOutputStream = null;
 
@@ -41,10 +45,14 @@ public class DataFile extends GeoObject {
 		fileIsReadable = false;
 		fileIsWritable = false;
 
+		// Don't leak the stream if the file is already open.
+		if (dataInputStream != null) close();
+
 		// Open the file.
 		try {
 			file = new File(filename);
-			dataInputStream = new DataInputStream(new FileInputStream(file));
+			fileInputStream = new FileInputStream(file);
+			dataInputStream = new DataInputStream(fileInputStream);
 
 		} catch (FileNotFoundException noFile) {
 			throw (noFile);
@@ -93,10 +101,121 @@ public class DataFile extends GeoObject {
 		} catch (Throwable t) {
 		}
 
+		dataInputStream = null;
+		fileInputStream = null;
 		fileIsReadable = false;
 		fileIsWritable = false;
 	}
 
+	/*
+	 * readBlock
+	 * 
+	 * Read the next 'bytes' bytes of the file, starting at the current read
+	 * position, into a buffer with the given byte order, through the file's
+	 * channel in one call. The read position is advanced past them, so block
+	 * reads and the single-value stream reads can be mixed. (The input stream
+	 * is unbuffered, so the channel position is always the stream position.)
+	 * 
+	 * The buffer is on the heap rather than a mapping of the file: a mapping
+	 * isn't released until it's garbage collected, and on Windows the file
+	 * stays locked until then, long after close().
+	 */
+	protected ByteBuffer readBlock(long bytes, ByteOrder order, String methodName) throws Exception {
+
+		if (!fileIsReadable) {
+			Tools.warningMessage("DataFile::" + methodName + ": " + filename
+					+ " is not open for reading.");
+			throw (new Exception("Cannot read file, not open for reading"));
+		}
+
+		FileChannel channel = fileInputStream.getChannel();
+		long position = channel.position();
+
+		if (position + bytes > channel.size()) {
+			Tools.warningMessage("DataFile::" + methodName + ": reading " + bytes
+					+ " bytes at " + position + " would go past the end of " + filename);
+			throw (new EOFException("Read past the end of " + filename));
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) bytes);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw (new EOFException("Read past the end of " + filename));
+			}
+		}
+
+		buffer.flip();
+		buffer.order(order);
+
+		return buffer;
+	}
+
+	/*
+	 * readShorts
+	 * 
+	 * Read 'count' short integers in the given byte order, from the current
+	 * read position.
+	 */
+	public short[] readShorts(int count, ByteOrder order) throws Exception {
+		short[] shorts = new short[count];
+		readBlock(2L * count, order, "readShorts").asShortBuffer().get(shorts);
+		return shorts;
+	}
+
+	/*
+	 * read2ByteInts
+	 * 
+	 * Read 'count' unsigned 2-byte little-endian integers, from the current
+	 * read position.
+	 */
+	public int[] read2ByteInts(int count) throws Exception {
+		short[] shorts = readShorts(count, ByteOrder.LITTLE_ENDIAN);
+
+		int[] ints = new int[count];
+		for (int i = 0; i < count; i++) {
+			ints[i] = shorts[i] & 0xffff;
+		}
+
+		return ints;
+	}
+
+	/*
+	 * readInts
+	 * 
+	 * Read 'count' integers in the given byte order, from the current read
+	 * position.
+	 */
+	public int[] readInts(int count, ByteOrder order) throws Exception {
+		int[] ints = new int[count];
+		readBlock(4L * count, order, "readInts").asIntBuffer().get(ints);
+		return ints;
+	}
+
+	/*
+	 * readFloats
+	 * 
+	 * Read 'count' floats in the given byte order, from the current read
+	 * position.
+	 */
+	public float[] readFloats(int count, ByteOrder order) throws Exception {
+		float[] floats = new float[count];
+		readBlock(4L * count, order, "readFloats").asFloatBuffer().get(floats);
+		return floats;
+	}
+
+	/*
+	 * readDoubles
+	 * 
+	 * Read 'count' doubles in the given byte order, from the current read
+	 * position.
+	 */
+	public double[] readDoubles(int count, ByteOrder order) throws Exception {
+		double[] doubles = new double[count];
+		readBlock(8L * count, order, "readDoubles").asDoubleBuffer().get(doubles);
+		return doubles;
+	}
+
 	/*
 	 * readStrings
 	 * 
@@ -443,11 +562,10 @@ public class DataFile extends GeoObject {
 		double[][] doubles = new double[rows][cols];
 
 		try {
-			// Read in the data
+			// Read in the data, big-endian, in one read.
+			double[] flat = readDoubles(rows * cols, ByteOrder.BIG_ENDIAN);
 			for (int r = 0; r < rows; r++) {
-				for (int c = 0; c < cols; c++) {
-					doubles[r][c] = dataInputStream.readDouble();
-				}
+				System.arraycopy(flat, r * cols, doubles[r], 0, cols);
 			}
 		} catch (Exception e) {
 			Tools.warningMessage(" DataFile::readDoubles2D: error on read - "
@@ -709,18 +827,12 @@ public class DataFile extends GeoObject {
 
 		// Create the byte array to hold the data. Integer = 4 bytes.
 		int[][] ints = new int[rows][cols];
-		int r = 0;
-		int c = 0;
 
 		try {
-			// Read in the data
-			for (int i = 0; i < length / 4; i++) {
-				ints[r][c] = dataInputStream.readInt();
-				c++;
-				if (c == cols) {
-					r++;
-					c = 0;
-				}
+			// Read in the data, big-endian, in one read.
+			int[] flat = readInts((int) (length / 4), ByteOrder.BIG_ENDIAN);
+			for (int r = 0; r * cols < flat.length; r++) {
+				System.arraycopy(flat, r * cols, ints[r], 0, Math.min(cols, flat.length - r * cols));
 			}
 		} catch (Exception up) {
 			Tools.warningMessage(" DataFile::readInt2D: error on read - " + up);
@@ -762,18 +874,12 @@ public class DataFile extends GeoObject {
 
 		// Create the byte array to hold the data. Short integer = 2 bytes.
 		short[][] shorts = new short[rows][cols];
-		int r = 0;
-		int c = 0;
 
 		try {
-			// Read in the data
-			for (int i = 0; i < length / 2; i++) {
-				shorts[r][c] = dataInputStream.readShort();
-				c++;
-				if (c == cols) {
-					r++;
-					c = 0;
-				}
+			// Read in the data, big-endian, in one read.
+			short[] flat = readShorts((int) (length / 2), ByteOrder.BIG_ENDIAN);
+			for (int r = 0; r * cols < flat.length; r++) {
+				System.arraycopy(flat, r * cols, shorts[r], 0, Math.min(cols, flat.length - r * cols));
 			}
 		} catch (Exception up) {
 			Tools.warningMessage(" DataFile::readShort2D: error on read - " + up);
@@ -862,25 +968,17 @@ public class DataFile extends GeoObject {
 					"Error in FataFile::read2ByteInts2D: rows and cols mismatch with file"));
 		}
 
-		// Create the byte array to hold the data. Integer = 4 bytes.
-		byte[][][] bytes = new byte[rows][cols][2];
-		int r = 0;
-		int c = 0;
-
-		// And where the final integers will go...
+		// Where the final integers will go...
 		int[][] ints = new int[rows][cols];
 
 		try {
-			// Read in the data
-			for (int i = 0; i < length; i++) {
-				// Little-endian byte order
-				bytes[r][c][0] = dataInputStream.readByte();
-				bytes[r][c][1] = dataInputStream.readByte();
-				ints[r][c] = Tools.byteArrayToInt(bytes[r][c]);
-				c++;
-				if (c == cols) {
-					r++;
-					c = 0;
+			// Read in the whole grid, little-endian byte order, in one read.
+			short[] flat = readShorts(rows * cols, ByteOrder.LITTLE_ENDIAN);
+			int i = 0;
+			for (int r = 0; r < rows; r++) {
+				int[] row = ints[r];
+				for (int c = 0; c < cols; c++) {
+					row[c] = flat[i++] & 0xffff;
 				}
 			}
 		} catch (Exception e) {
@@ -926,18 +1024,12 @@ public class DataFile extends GeoObject {
 
 		// Create the byte array to hold the data. Integer = 4 bytes.
 		float[][] floats = new float[rows][cols];
-		int r = 0;
-		int c = 0;
 
 		try {
-			// Read in the data
-			for (int i = 0; i < length / 4; i++) {
-				floats[r][c] = dataInputStream.readFloat();
-				c++;
-				if (c == cols) {
-					r++;
-					c = 0;
-				}
+			// Read in the data, big-endian, in one read.
+			float[] flat = readFloats((int) (length / 4), ByteOrder.BIG_ENDIAN);
+			for (int r = 0; r * cols < flat.length; r++) {
+				System.arraycopy(flat, r * cols, floats[r], 0, Math.min(cols, flat.length - r * cols));
 			}
 		} catch (Exception up) {
 			Tools.warningMessage(" DataFile::readFloat2D: error on read - "
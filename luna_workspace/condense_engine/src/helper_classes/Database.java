@@ -1,6 +1,8 @@
 package helper_classes;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 
 /*
  * Database
@@ -40,6 +42,14 @@ public abstract class Database extends GeoObject {
 	
 	// If the database or tables do not exist, create them?
 	protected Boolean createIfDoesNotExist = true;
+
+	// Pixel-major copies of the vectors, for time series, by channel ID.
+	protected HashMap<Integer, TimeSeriesStore> timeSeries = new HashMap<Integer, TimeSeriesStore>();
+
+	// The channels (e.g. SSMI "19h", "37v") held, in ID order from 1, and the
+	// one being stored and queried. Channel 0 is a database without any.
+	protected ArrayList<String> channels = new ArrayList<String>();
+	protected int channel = 0;
 	
 	public Database(String path, String name) {
 		dbPath = path;
@@ -62,9 +72,87 @@ public abstract class Database extends GeoObject {
 	public abstract int storeLocation(GriddedLocation loc);
 	public abstract void storeVector(GriddedVector v);
 
+	/*
+	 * resume
+	 * 
+	 * Open the existing data for adding to, rather than starting again: later
+	 * timestamps, locations and vectors get the IDs that follow on from those
+	 * stored. Returns the number of timestamps already stored. Only databases
+	 * that persist can do this; the rest warn and start empty.
+	 */
+	public int resume() {
+		Tools.warningMessage(getClass().getSimpleName() + " can't be added to, starting a new database");
+		clean();
+		return 0;
+	}
+
+	/*
+	 * storeChannel
+	 * 
+	 * Add a channel of data, or find it if it's already there, and return
+	 * its ID (from 1). The channels share the locations and timestamps; each
+	 * vector belongs to the channel in use (see useChannel) when it's stored.
+	 * Databases that can't tell channels apart take one channel only.
+	 */
+	public int storeChannel(String name) {
+
+		int id = channelID(name);
+		if (id > 0) return id;
+
+		if (!getChannels().isEmpty()) {
+			Tools.errorMessage(getClass().getSimpleName(), "storeChannel",
+					"can't hold more than one channel, adding " + name, new Exception());
+		}
+
+		channels.add(name);
+		return channels.size();
+	}
+
+	/*
+	 * useChannel
+	 * 
+	 * Store and query the vectors of this channel ID from now on.
+	 */
+	public void useChannel(int id) {
+		channel = id;
+	}
+
+	public int channel() { return channel; }
+
+	public ArrayList<String> getChannels() { return channels; }
+
+	/*
+	 * channelID
+	 * 
+	 * The ID of a channel by name, or 0 if it isn't in the database.
+	 */
+	public int channelID(String name) {
+		return getChannels().indexOf(name) + 1;
+	}
+
+	/*
+	 * flush
+	 * 
+	 * Push any buffered or batched writes through to the database. Backends
+	 * that batch their inserts override this; by default there's nothing to do.
+	 */
+	public void flush() {}
+
 	// RETRIEVAL METHODS
 
 	public abstract Timestamp getTimestamp(int id);
+
+	/*
+	 * lastTimestamp
+	 * 
+	 * The most recent timestamp stored (the one with the highest ID), or null
+	 * if there aren't any.
+	 */
+	public Timestamp lastTimestamp() {
+		int n = numberOfTimestamps();
+		return (n > 0) ? getTimestamp(n) : null;
+	}
+
 	public abstract Metadata getMetadata();
 	public abstract int numberOfTimestamps();
 	public abstract int numberOfVectors();
@@ -74,6 +162,215 @@ public abstract class Database extends GeoObject {
 	public abstract ArrayList<GriddedVector> getVectors(int startTimestampID, int endTimestampID);
 	public abstract ArrayList<GriddedVector> getVectorsAtTime(int startTimestampID);
 
+	/*
+	 * getVectors
+	 * 
+	 * Return the vectors in a box of time, space and value: timestamp IDs, rows
+	 * and columns of the grid, and data values, all ranges inclusive. A null
+	 * range doesn't restrict anything (same as Range.ALL).
+	 * 
+	 * The whole result is held in memory; for long time ranges, use cursor.
+	 */
+	public ArrayList<GriddedVector> getVectors(Range time, Range rows, Range cols, Range values) {
+		return cursor(time, rows, cols, values).toList();
+	}
+
+	/*
+	 * cursor
+	 * 
+	 * Stream the vectors in a box of time, space and value (see getVectors),
+	 * without collecting them all first. The cursor must be closed, or read
+	 * to the end.
+	 * 
+	 * This version reads one timestamp at a time, so only a day's vectors are
+	 * in memory at once. Backends that can stream a single query override it.
+	 */
+	public VectorCursor cursor(Range time, Range rows, Range cols, Range values) {
+
+		time = Range.orAll(time);
+		final Range r = Range.orAll(rows);
+		final Range c = Range.orAll(cols);
+		final Range v = Range.orAll(values);
+
+		// Timestamp IDs run from 1 to the number of timestamps.
+		final int first = Math.max(time.min(), 1);
+		final int last = Math.min(time.max(), numberOfTimestamps());
+
+		return new VectorCursor() {
+			int id = first - 1;
+			Iterator<GriddedVector> day = null;
+
+			protected GriddedVector advance() {
+				while (day == null || !day.hasNext()) {
+					if (id >= last) return null;
+					id++;
+					day = getVectorsAtTime(id, r, c, v).iterator();
+				}
+				return day.next();
+			}
+		};
+	}
+
+	/*
+	 * getVectorsAtTime
+	 * 
+	 * The vectors at a timestamp ID inside the row, column and value ranges.
+	 * Backends that can skip the rest without reading it override this.
+	 */
+	protected ArrayList<GriddedVector> getVectorsAtTime(int timestampID, Range rows, Range cols, Range values) {
+
+		ArrayList<GriddedVector> vectors = getVectorsAtTime(timestampID);
+		if (rows.isAll() && cols.isAll() && values.isAll()) return vectors;
+
+		ArrayList<GriddedVector> subset = new ArrayList<GriddedVector>();
+		for (GriddedVector vec : vectors) {
+			if (inBox(vec, rows, cols, values)) subset.add(vec);
+		}
+
+		return subset;
+	}
+
+	/*
+	 * inBox
+	 * 
+	 * Is the vector inside the row, column and value ranges?
+	 */
+	protected static boolean inBox(GriddedVector v, Range rows, Range cols, Range values) {
+		return values.contains(v.data()) &&
+				(rows.isAll() || rows.contains(v.row())) &&
+				(cols.isAll() || cols.contains(v.col()));
+	}
+
+	/*
+	 * aggregate
+	 * 
+	 * Count, sum, minimum and maximum of the values in a box of time, space
+	 * and value (see getVectors), by group: timestamp, month, season or block
+	 * of the grid (see Aggregate). Only the results come back, not the
+	 * vectors.
+	 * 
+	 * This version adds up the vectors from one pass of a cursor. Backends
+	 * that can do the grouping themselves override it.
+	 */
+	public Aggregate aggregate(Aggregate.Group group, int blockSize,
+			Range time, Range rows, Range cols, Range values) {
+
+		Aggregate a = newAggregate(group, blockSize);
+
+		VectorCursor cursor = cursor(time, rows, cols, values);
+		try {
+			while (cursor.hasNext()) {
+				GriddedVector v = cursor.next();
+				a.add(a.key(v.timestampID(), v.row(), v.col()), v.data());
+			}
+		} finally {
+			cursor.close();
+		}
+
+		return a.finish();
+	}
+
+	protected Aggregate newAggregate(Aggregate.Group group, int blockSize) {
+		ArrayList<Timestamp> timestamps = null;
+		if (group == Aggregate.Group.MONTH || group == Aggregate.Group.SEASON) {
+			timestamps = getTimestamps();
+		}
+
+		// The metadata we have is the latest while writing; only read it if
+		// there isn't any.
+		Metadata m = (metadata == null) ? getMetadata() : metadata;
+
+		return new Aggregate(group, blockSize, m.cols, timestamps);
+	}
+
+	/*
+	 * getChannelValues
+	 * 
+	 * The value of every channel at a grid cell and timestamp ID, [id - 1],
+	 * NODATA where a channel has no data there. This version is for the
+	 * databases that hold one channel at most, so every vector is that
+	 * channel's; it doesn't change the channel in use.
+	 */
+	public int[] getChannelValues(int timestampID, int row, int col) {
+
+		int[] values = new int[getChannels().size()];
+		java.util.Arrays.fill(values, NODATA);
+
+		if (values.length == 0) return values;
+
+		VectorCursor cursor = cursor(new Range(timestampID), new Range(row), new Range(col), null);
+		if (cursor.hasNext()) values[0] = cursor.next().data();
+		cursor.close();
+
+		return values;
+	}
+
+	/*
+	 * useTimeSeriesStore
+	 * 
+	 * Answer getTimeSeries from a pixel-major store (see TimeSeriesStore)
+	 * made from this database, while its channel is in use. Null goes back
+	 * to querying the database for the channel in use.
+	 */
+	public void useTimeSeriesStore(TimeSeriesStore store) {
+		if (store == null) timeSeries.remove(channel);
+		else timeSeries.put(store.channelID(), store);
+	}
+
+	/*
+	 * timeSeriesStore
+	 * 
+	 * The time series store for the channel in use, or null.
+	 */
+	public TimeSeriesStore timeSeriesStore() {
+		return timeSeries.get(channel);
+	}
+
+	/*
+	 * getTimeSeries
+	 * 
+	 * The values at a grid cell from timestamp ID t0 to t1, inclusive. With a
+	 * time series store this is one read for the timestamps it holds; any
+	 * after those (stored since it was made), or all of them without one,
+	 * come from a cursor over the cell.
+	 */
+	public TimeSeries getTimeSeries(int row, int col, int t0, int t1) {
+
+		TimeSeries series = new TimeSeries(row, col, new int[0], new int[0]);
+		int next = t0;
+
+		TimeSeriesStore store = timeSeriesStore();
+		if (store != null) {
+			series = store.get(row, col, t0, t1);
+			next = Math.max(t0, store.timestamps() + 1);
+		}
+
+		if (next > t1) return series;
+
+		int[] ids = new int[16];
+		int[] values = new int[16];
+		int n = 0;
+
+		VectorCursor cursor = cursor(new Range(next, t1), new Range(row), new Range(col), null);
+		try {
+			while (cursor.hasNext()) {
+				GriddedVector v = cursor.next();
+				if (n == ids.length) {
+					ids = java.util.Arrays.copyOf(ids, n * 2);
+					values = java.util.Arrays.copyOf(values, n * 2);
+				}
+				ids[n] = v.timestampID();
+				values[n] = v.data();
+				n++;
+			}
+		} finally {
+			cursor.close();
+		}
+
+		return series.append(new TimeSeries(row, col,
+				java.util.Arrays.copyOf(ids, n), java.util.Arrays.copyOf(values, n)));
+	}
+
 	/*
 	 *  storeLocationArray
 	 *  
@@ -85,6 +382,9 @@ public abstract class Database extends GeoObject {
 				locs[r][c].id = storeLocation(locs[r][c]);
 			}
 		}
+		
+		// Send the whole grid of locations off as one batch.
+		flush();
 	}
 
 	/*
@@ -92,7 +392,7 @@ public abstract class Database extends GeoObject {
 	 * 
 	 * Store an array of gridded vectors in the database.
  	 * Assumes the locations and timestamp IDs have already been added to the database
- 	 * and vector fields.
+ 	 * and vector fields. The array is handed to the database as a single batch.
 	 * 
 	 */
 	public void storeVectorArray(GriddedVector[][] v, GriddedLocation[][] locations) {
@@ -114,6 +414,29 @@ public abstract class Database extends GeoObject {
 				storeVector(v[r][c]);					
 			}
 		}
+		
+		// The whole grid goes to the database as one batch.
+		flush();
+	}
+
+	/*
+	 * storeFrame
+	 * 
+	 * Store a frame of gridded data in the database. Cells holding NODATA
+	 * didn't get through condensation and aren't stored. Assumes the locations
+	 * and timestamp ID have already been added to the database. The frame is
+	 * handed to the database as a single batch.
+	 */
+	public void storeFrame(GridFrame frame) {
+
+		int[] values = frame.values();
+
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == NODATA) continue;
+			storeVector(frame.vector(i));
+		}
+
+		flush();
 	}
 
 	/*
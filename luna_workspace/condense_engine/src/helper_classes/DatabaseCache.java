@@ -0,0 +1,367 @@
+package helper_classes;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/* DatabaseCache
+ *
+ * A database that keeps the answers from another one in memory: the
+ * vectors at each timestamp asked for (getVectorsAtTime), and the
+ * timestamps, locations and metadata. Asking again for something cached
+ * doesn't go back to the database. Everything else is passed straight
+ * through, including cursors and aggregates, so long scans don't push the
+ * recent days out.
+ *
+ * The cache holds up to a number of bytes (estimated from the number of
+ * objects held) and drops the least recently used entries to stay under
+ * it. Storing anything drops what it could change: new vectors their day,
+ * new timestamps or locations the lists and the metadata. Connecting,
+ * cleaning or changing channel empties it.
+ *
+ * The lists returned are shared with the cache, and must not be changed.
+ */
+
+public class DatabaseCache extends Database {
+
+	// Estimated bytes held per cached object (with its share of the list).
+	static final int VECTOR_BYTES = 48;
+	static final int TIMESTAMP_BYTES = 512;	// Mostly its Calendar
+	static final int LOCATION_BYTES = 96;
+	static final int ENTRY_BYTES = 64;
+
+	// The keys for the entries that aren't days of vectors, which are keyed
+	// by timestamp ID.
+	static final String TIMESTAMPS = "timestamps";
+	static final String LOCATIONS = "locations";
+	static final String METADATA = "metadata";
+
+	protected final Database database;
+	protected final long capacity;
+
+	// The entries, least recently used first, and their sizes.
+	protected LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+	protected long bytes = 0;
+
+	protected long hits = 0;
+	protected long misses = 0;
+	protected long evictions = 0;
+
+	// Timestamp IDs with vectors stored since the last flush: the database
+	// may not show them all until then.
+	protected HashSet<Integer> unflushed = new HashSet<Integer>();
+
+	static class Entry {
+		final Object value;
+		final long bytes;
+
+		Entry(Object value, long bytes) {
+			this.value = value;
+			this.bytes = bytes;
+		}
+	}
+
+	/*
+	 * DatabaseCache
+	 *
+	 * Cache a database's answers in at most 'capacity' bytes.
+	 */
+	public DatabaseCache(Database database, long capacity) {
+		super(database.dbPath, database.dbName);
+		this.database = database;
+		this.capacity = capacity;
+	}
+
+	public Database database() { return database; }
+	public long capacity() { return capacity; }
+	public synchronized long bytes() { return bytes; }
+	public synchronized int size() { return entries.size(); }
+	public synchronized long hits() { return hits; }
+	public synchronized long misses() { return misses; }
+	public synchronized long evictions() { return evictions; }
+
+	/*
+	 * get
+	 *
+	 * A cached value, or null (counted as a miss).
+	 */
+	protected synchronized Object get(Object key) {
+		Entry e = entries.get(key);
+		if (e == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return e.value;
+	}
+
+	/*
+	 * put
+	 *
+	 * Cache a value, then drop the least recently used entries until the
+	 * cache fits. Something bigger than the whole cache isn't kept.
+	 */
+	protected synchronized void put(Object key, Object value, long size) {
+
+		if (size > capacity) return;
+
+		Entry old = entries.put(key, new Entry(value, size));
+		if (old != null) bytes -= old.bytes;
+		bytes += size;
+
+		Iterator<Entry> i = entries.values().iterator();
+		while (bytes > capacity && i.hasNext()) {
+			bytes -= i.next().bytes;
+			i.remove();
+			evictions++;
+		}
+	}
+
+	protected synchronized void invalidate(Object key) {
+		Entry e = entries.remove(key);
+		if (e != null) bytes -= e.bytes;
+	}
+
+	/*
+	 * invalidate
+	 *
+	 * Empty the cache. The counters carry on.
+	 */
+	public synchronized void invalidate() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	//
+	// CONNECTION
+	//
+
+	public boolean connect() {
+		invalidate();
+		return database.connect();
+	}
+
+	public boolean connectReadOnly() {
+		invalidate();
+		return database.connectReadOnly();
+	}
+
+	public void disconnect() {
+		database.disconnect();
+		invalidate();
+	}
+
+	public void clean() {
+		database.clean();
+		invalidate();
+	}
+
+	public int resume() {
+		invalidate();
+		return database.resume();
+	}
+
+	//
+	// STORAGE METHODS
+	//
+
+	public void storeMetadata(Metadata m) {
+		database.storeMetadata(m);
+		invalidate(METADATA);
+	}
+
+	public int storeTimestamp(Timestamp t) {
+		int id = database.storeTimestamp(t);
+		invalidate(TIMESTAMPS);
+		invalidate(METADATA);
+		return id;
+	}
+
+	public int storeLocation(GriddedLocation loc) {
+		int id = database.storeLocation(loc);
+		invalidate(LOCATIONS);
+		invalidate(METADATA);
+		return id;
+	}
+
+	public void storeVector(GriddedVector v) {
+		database.storeVector(v);
+		if (v != null) stored(v.timestampID);
+	}
+
+	public void storeLocationArray(GriddedLocation[][] locs) {
+		database.storeLocationArray(locs);
+		invalidate(LOCATIONS);
+		invalidate(METADATA);
+	}
+
+	public void storeVectorArray(GriddedVector[][] v, GriddedLocation[][] locations) {
+		for (GriddedVector[] row : v) {
+			for (GriddedVector vec : row) {
+				if (vec != null) stored(vec.timestampID);
+			}
+		}
+		database.storeVectorArray(v, locations);
+		flushed();
+	}
+
+	public void storeFrame(GridFrame frame) {
+		stored(frame.timestampID());
+		database.storeFrame(frame);
+		flushed();
+	}
+
+	public void flush() {
+		database.flush();
+		flushed();
+	}
+
+	/*
+	 * stored
+	 *
+	 * Vectors have been stored at a timestamp ID.
+	 */
+	protected synchronized void stored(int timestampID) {
+		unflushed.add(timestampID);
+		invalidate(timestampID);
+		invalidate(METADATA);
+	}
+
+	/*
+	 * flushed
+	 *
+	 * The database has been flushed: anything read from it since vectors
+	 * were stored may have been missing some.
+	 */
+	protected synchronized void flushed() {
+		for (Integer id : unflushed) invalidate(id);
+		unflushed.clear();
+		invalidate(METADATA);
+	}
+
+	//
+	// CHANNELS
+	//
+
+	public int storeChannel(String name) { return database.storeChannel(name); }
+
+	public void useChannel(int id) {
+		if (id != database.channel()) invalidate();
+		database.useChannel(id);
+	}
+
+	public int channel() { return database.channel(); }
+	public ArrayList<String> getChannels() { return database.getChannels(); }
+	public int channelID(String name) { return database.channelID(name); }
+
+	public int[] getChannelValues(int timestampID, int row, int col) {
+		return database.getChannelValues(timestampID, row, col);
+	}
+
+	//
+	// RETRIEVAL METHODS
+	//
+
+	public Metadata getMetadata() {
+		Metadata m = (Metadata) get(METADATA);
+		if (m == null) {
+			m = database.getMetadata();
+			put(METADATA, m, ENTRY_BYTES);
+		}
+		return m;
+	}
+
+	@SuppressWarnings("unchecked")
+	public ArrayList<Timestamp> getTimestamps() {
+		ArrayList<Timestamp> list = (ArrayList<Timestamp>) get(TIMESTAMPS);
+		if (list == null) {
+			list = database.getTimestamps();
+			put(TIMESTAMPS, list, ENTRY_BYTES + (long) list.size() * TIMESTAMP_BYTES);
+		}
+		return list;
+	}
+
+	@SuppressWarnings("unchecked")
+	public ArrayList<GriddedLocation> getLocations() {
+		ArrayList<GriddedLocation> list = (ArrayList<GriddedLocation>) get(LOCATIONS);
+		if (list == null) {
+			list = database.getLocations();
+			put(LOCATIONS, list, ENTRY_BYTES + (long) list.size() * LOCATION_BYTES);
+		}
+		return list;
+	}
+
+	/*
+	 * getTimestamp
+	 *
+	 * From the cached list of timestamps.
+	 */
+	public Timestamp getTimestamp(int id) {
+		ArrayList<Timestamp> list = getTimestamps();
+		return (id < 1 || id > list.size()) ? null : list.get(id - 1);
+	}
+
+	public int numberOfTimestamps() { return database.numberOfTimestamps(); }
+	public int numberOfVectors() { return database.numberOfVectors(); }
+
+	/*
+	 * getVectorsAtTime
+	 *
+	 * The vectors at a timestamp ID, from the cache if they're there.
+	 */
+	@SuppressWarnings("unchecked")
+	public ArrayList<GriddedVector> getVectorsAtTime(int timestampID) {
+		ArrayList<GriddedVector> list = (ArrayList<GriddedVector>) get(timestampID);
+		if (list == null) {
+			list = database.getVectorsAtTime(timestampID);
+			put(timestampID, list, ENTRY_BYTES + (long) list.size() * VECTOR_BYTES);
+		}
+		return list;
+	}
+
+	/*
+	 * getVectors
+	 *
+	 * The vectors in a range of timestamp IDs, a day at a time through the
+	 * cache.
+	 */
+	public ArrayList<GriddedVector> getVectors(int first, int last) {
+		ArrayList<GriddedVector> list = new ArrayList<GriddedVector>();
+		first = Math.max(first, 1);
+		last = Math.min(last, numberOfTimestamps());
+		for (int id = first; id <= last; id++) list.addAll(getVectorsAtTime(id));
+		return list;
+	}
+
+	public VectorCursor cursor(Range time, Range rows, Range cols, Range values) {
+		return database.cursor(time, rows, cols, values);
+	}
+
+	public Aggregate aggregate(Aggregate.Group group, int blockSize,
+			Range time, Range rows, Range cols, Range values) {
+		return database.aggregate(group, blockSize, time, rows, cols, values);
+	}
+
+	public void useTimeSeriesStore(TimeSeriesStore store) {
+		database.useTimeSeriesStore(store);
+	}
+
+	public TimeSeriesStore timeSeriesStore() { return database.timeSeriesStore(); }
+
+	public TimeSeries getTimeSeries(int row, int col, int t0, int t1) {
+		return database.getTimeSeries(row, col, t0, t1);
+	}
+
+	public void status() {
+		database.status();
+
+		synchronized (this) {
+			long asked = hits + misses;
+			Tools.statusMessage("Cache             = " + (bytes >> 10) + " of " + (capacity >> 10) +
+					" KB in " + entries.size() + " entries");
+			Tools.statusMessage("Cache hits        = " + hits + " of " + asked +
+					((asked > 0) ? " (" + (100 * hits / asked) + "%)" : "") + ", " + evictions + " evicted");
+		}
+	}
+}
@@ -383,6 +383,54 @@ public class DatabaseFileSchema extends Database {
 		return vectorList;
 	}
 
+	/*
+	 * cursor
+	 * 
+	 * Stream the vectors in ranges of timestamp ID and value, reading the
+	 * vector file a record at a time.
+	 * 
+	 * Locations aren't read back from the locations file yet (see
+	 * getLocation), so a row or column range can't be checked: it's refused,
+	 * with a warning, and nothing is returned.
+	 */
+	public VectorCursor cursor(Range time, Range rows, Range cols, Range values) {
+
+		final Range t = Range.orAll(time);
+		final Range v = Range.orAll(values);
+
+		if (!Range.orAll(rows).isAll() || !Range.orAll(cols).isAll()) {
+			Tools.warningMessage("DatabaseFileSchema::cursor: row and column ranges " +
+					"aren't supported, no vectors returned");
+			return VectorCursor.of(new ArrayList<GriddedVector>().iterator(), null, null, null);
+		}
+
+		if (metadata == null) metadata = getMetadata();
+
+		return new VectorCursor() {
+			int read = 0;
+
+			protected GriddedVector advance() {
+				try {
+					while (read < metadata.vectors) {
+						int value = vectorsFile.readInt();
+						int locID =  vectorsFile.readInt();
+						int timeID =  vectorsFile.readInt();
+						read++;
+
+						if (!t.contains(timeID) || !v.contains(value)) continue;
+
+						return new GriddedVector(value, getLocation( locID ), timeID);
+					}
+				} catch( Exception e ) {
+					Tools.warningMessage("DatabaseFileSchema::cursor: while reading vector file.");
+					Tools.warningMessage("Exception: " + e);
+				}
+
+				return null;
+			}
+		};
+	}
+
 	/*
 	 * getVectorsAtTime
 	 * 
@@ -1,6 +1,18 @@
 package helper_classes;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.sql.*;
 
 /* DatabaseH2
@@ -11,6 +23,9 @@ import java.sql.*;
  * 			"jdbc:h2:tcp://localhost/~/"
  * 			"jdbc:h2:tcp://localhost/~/Desktop/myProject/Databases/"
  * 			"jdbc:h2:tcp://10.240.210.131:9292/mem:~/"
+ *
+ * Or embedded, in this process, without a server (see embeddedPath):
+ * 			"jdbc:h2:~/Desktop/myProject/Databases/"
  */
 
 public class DatabaseH2 extends Database {
@@ -23,10 +38,12 @@ public class DatabaseH2 extends Database {
 	 */
 	public enum Table {
 		
-		METADATA("METADATA","(ID TINYINT PRIMARY KEY, ROWS SMALLINT, COLS SMALLINT, TIMESTAMPS INT, LOCATIONS INT, VECTORS BIGINT)"),
+		METADATA("METADATA","(ID TINYINT PRIMARY KEY, ROWS SMALLINT, COLS SMALLINT, TIMESTAMPS INT, LOCATIONS INT, VECTORS BIGINT, PARTITIONING VARCHAR(8))"),
 		LOCATIONS("LOCATIONS","(ID INT PRIMARY KEY, ROW SMALLINT, COL SMALLINT, LAT DOUBLE, LON DOUBLE)"),
 		TIMESTAMPS("TIMESTAMPS","(ID SMALLINT PRIMARY KEY, TIMESTAMP FLOAT)"),
-		VECTORS("VECTORS","(ID INT PRIMARY KEY, VALUE SMALLINT, LOCATIONID INT, TIMESTAMPID SMALLINT)");
+		VECTORS("VECTORS","(ID INT PRIMARY KEY, VALUE SMALLINT, LOCATIONID INT, TIMESTAMPID SMALLINT, CHANNEL TINYINT DEFAULT 0)"),
+		PARTITIONS("PARTITIONS","(NAME VARCHAR(32) PRIMARY KEY, FIRSTID INT, LASTID INT)"),
+		CHANNELS("CHANNELS","(ID TINYINT PRIMARY KEY, NAME VARCHAR(16))");
 			
 		protected final String name;
 		protected final String SQLcolumns;
@@ -49,19 +66,265 @@ public class DatabaseH2 extends Database {
 	
 	Connection conn;
 
+	// Read connections shared by concurrent callers, when connected read-only
+	// with more than one connection. Each query borrows one for as long as it
+	// runs. Null otherwise: everything goes through 'conn'.
+	private ArrayBlockingQueue<Connection> readPool = null;
+	private ArrayList<Connection> readConnections = new ArrayList<Connection>();
+
+	// How long a query waits for a pooled connection before giving up, in
+	// seconds. (A caller holding cursors open can use up the whole pool.)
+	private int borrowTimeout = 60;
+
 	private Statement sqlCreate;
 	private boolean metadataStored = false;
 
+	// Bulk ingest. The tables are created once, the inserts are sent to the
+	// server through re-used prepared statements in JDBC batches, and the
+	// transaction is committed every 'commitInterval' batches (one batch is
+	// normally one day's grid) instead of after every row.
+	private boolean bulkIngest = true;
+	private int commitInterval = 1;
+	private boolean tablesCreated = false;
+	private PreparedStatement insertLocation = null;
+	private PreparedStatement insertTimestamp = null;
+	private PreparedStatement insertVector = null;
+	private int pendingLocations = 0;
+	private int pendingVectors = 0;
+	private int batchesSinceCommit = 0;
+
+	// Secondary indexes, for the range queries. They're built once the data
+	// is loaded (when a writing connection is closed), rather than being
+	// updated through the bulk inserts. Each vector table gets the vector
+	// indexes, named for the table: VECTORS_TIME, VECTORS_2004_TIME, ...
+	static final String[][] vectorIndexes = {
+		{"TIME", "(TIMESTAMPID, LOCATIONID)"},
+		{"LOCATION", "(LOCATIONID)"}
+	};
+	static final String[] locationIndex = {"LOCATIONS_ROWCOL", Table.LOCATIONS.name() + "(ROW, COL)"};
+
+	/*
+	 * Partitioning
+	 * 
+	 * How the vectors are split between tables. NONE keeps them all in
+	 * VECTORS. YEAR and MONTH give each year (or month) of timestamps a table
+	 * of its own, VECTORS_yyyy (or VECTORS_yyyymm), listed in PARTITIONS with
+	 * the range of timestamp IDs it holds. Queries only read the partitions
+	 * in their time range, and a partition can be dropped as a whole.
+	 */
+	public enum Partitioning { NONE, YEAR, MONTH }
+
+	private Partitioning partitioning = Partitioning.NONE;
+
+	/*
+	 * Partition
+	 * 
+	 * A table of vectors, the timestamp IDs in it, and (while writing) its
+	 * insert statement.
+	 */
+	static class Partition {
+		final String table;
+		int first;
+		int last;
+		PreparedStatement insert = null;
+
+		Partition(String table, int first, int last) {
+			this.table = table;
+			this.first = first;
+			this.last = last;
+		}
+
+		boolean overlaps(Range time) {
+			return first <= time.max() && last >= time.min();
+		}
+	}
+
+	// The partitions by table name, read from the database when first needed.
+	// Empty if the vectors aren't partitioned.
+	private volatile LinkedHashMap<String, Partition> partitions = null;
+
+	// While writing, the partition of each timestamp ID, [id - 1].
+	private ArrayList<Partition> timePartitions = new ArrayList<Partition>();
+
+	// Have the channels been read from the database?
+	private boolean channelsRead = false;
+
+	// Rows fetched from the server at a time when streaming a query.
+	private int fetchSize = 10000;
+
+	// CSV load. In bulk mode, the vectors can be written to a CSV file for
+	// each table instead of being batched, and each file loaded in one
+	// statement (see setCsvLoad). Null if not used.
+	private String csvDirectory = null;
+	private LinkedHashMap<String, Staged> staged = new LinkedHashMap<String, Staged>();
+
+	// The user and password every connection is made with (see setCredentials).
+	private String user = "";
+	private String password = "";
+
+	/*
+	 * Staged
+	 * 
+	 * A table's vectors waiting in a CSV file to be loaded.
+	 */
+	static class Staged {
+		final File file;
+		final BufferedWriter out;
+
+		Staged(File file) throws IOException {
+			this.file = file;
+			out = new BufferedWriter(new FileWriter(file), 1 << 16);
+		}
+	}
+
+	// Largest number of rows held in a JDBC batch before it is sent to the
+	// server, so a single grid of locations doesn't have to sit in memory.
+	static final int maxBatchSize = 20000;
+
 	// If we read all the locations or timestamps from the database, keep
 	// a record of them (so we don't have to do it again).
 	ArrayList<GriddedLocation> locations = null;
 	ArrayList<Timestamp> timestamps = null;
+
+	// The locations indexed by their ID, for resolving the location IDs in the
+	// vector table without a query per vector. Built when first needed and
+	// shared by every read until more locations are stored.
+	volatile GriddedLocation[] locationsByID = null;
 	
 	// Constructor
 	public DatabaseH2(String path, String name) {
 		super(path, name);
 	}
 
+	/*
+	 * setBulkIngest
+	 * 
+	 * Turn batched inserts and interval commits on or off. Must be set before
+	 * connecting to the database.
+	 */
+	public void setBulkIngest(boolean flag) {
+		bulkIngest = flag;
+	}
+
+	/*
+	 * setCommitInterval
+	 * 
+	 * In bulk ingest mode, commit the transaction after this many batches
+	 * (vector arrays) have been stored.
+	 */
+	public void setCommitInterval(int batches) {
+		if (batches < 1) batches = 1;
+		commitInterval = batches;
+	}
+
+	/*
+	 * setFetchSize
+	 * 
+	 * The number of rows a cursor fetches from the server at a time.
+	 */
+	public void setFetchSize(int rows) {
+		fetchSize = Math.max(rows, 1);
+	}
+
+	/*
+	 * setPartitioning
+	 * 
+	 * Split the vectors into a table per year or month. Must be set before
+	 * anything is stored in a new database; an existing one keeps the
+	 * partitioning it was made with, which is recorded in its metadata row.
+	 */
+	public void setPartitioning(Partitioning p) {
+		partitioning = p;
+	}
+
+	public Partitioning partitioning() { return partitioning; }
+
+	/*
+	 * setCredentials
+	 * 
+	 * The user and password to connect with. A new database is made with them
+	 * as its admin user, and an existing one only lets them in. Needed to
+	 * serve the database (see serve).
+	 */
+	public void setCredentials(String user, String password) {
+		this.user = (user == null) ? "" : user;
+		this.password = (password == null) ? "" : password;
+	}
+
+	/*
+	 * setCsvLoad
+	 * 
+	 * In bulk mode, stage each batch of vectors in CSV files in this directory
+	 * and load them with CSVREAD, which is quicker than inserting them row by
+	 * row. The database reads the files itself, so it must be embedded or on
+	 * this machine. Null turns it off.
+	 */
+	public void setCsvLoad(String directory) {
+		csvDirectory = directory;
+	}
+
+	/*
+	 * embeddedPath
+	 * 
+	 * The path to open a server's database in this process instead:
+	 * "jdbc:h2:tcp://localhost/~/data/" is "jdbc:h2:~/data/". Nothing goes
+	 * over the network, but no one else can open the database while it's
+	 * connected (unless it's served, see serve).
+	 */
+	public static String embeddedPath(String path) {
+
+		for (String server : new String[] {"jdbc:h2:tcp://", "jdbc:h2:ssl://"}) {
+			if (!path.startsWith(server)) continue;
+
+			// Skip the host and port.
+			int slash = path.indexOf('/', server.length());
+			return "jdbc:h2:" + ((slash < 0) ? "" : path.substring(slash + 1));
+		}
+
+		return path;
+	}
+
+	/*
+	 * serve
+	 * 
+	 * Serve an embedded database over TCP, so other processes can read it
+	 * while this one runs, e.g. once it's loaded. Returns the server; it runs
+	 * until stopped or the program ends.
+	 * 
+	 * Only connections from this machine are accepted, unless remote is true.
+	 * Either way, clients have to log in with the credentials the database
+	 * was made with (see setCredentials), so it can't be served without them,
+	 * and they can only open databases that already exist.
+	 */
+	public org.h2.tools.Server serve(int port, boolean remote) {
+
+		if (user.isEmpty() || password.isEmpty()) {
+			Tools.errorMessage("DatabaseH2", "serve", "Can't serve " + dbPath + dbName +
+					" without a user and password; see setCredentials", new Exception());
+			return null;
+		}
+
+		ArrayList<String> args = new ArrayList<String>();
+		args.add("-tcpPort");
+		args.add(Integer.toString(port));
+		args.add("-ifExists");
+		if (remote) args.add("-tcpAllowOthers");
+
+		org.h2.tools.Server server = null;
+
+		try {
+			server = org.h2.tools.Server.createTcpServer(args.toArray(new String[args.size()])).start();
+		} catch (SQLException e) {
+			Tools.errorMessage("DatabaseH2", "serve", "Could not start a server on port " + port, e);
+			return null;
+		}
+
+		Tools.statusMessage("Serving the database at jdbc:h2:tcp://localhost:" +
+				server.getPort() + "/" + dbPath.substring("jdbc:h2:".length()) + dbName);
+
+		return server;
+	}
+
 	/*
 	 * connect
 	 * 
@@ -79,9 +342,12 @@ public class DatabaseH2 extends Database {
 			Class.forName("org.h2.Driver");
 			conn = DriverManager.getConnection(dbPath + dbName +
 					";INIT=CREATE SCHEMA IF NOT EXISTS " + dbName + "\\;" + 
-	                "SET SCHEMA " + dbName, null, null);
+	                "SET SCHEMA " + dbName, user, password);
+
+			// In bulk mode we commit the transactions ourselves.
+			conn.setAutoCommit(!bulkIngest);
 
-			conn.setAutoCommit(true);
+			sqlCreate = conn.createStatement();
 
 		} catch (Exception e) {
 			Tools.errorMessage("DatabaseH2", "connect",
@@ -95,79 +361,733 @@ public class DatabaseH2 extends Database {
 	}
 
 	/*
-	 * connectReadOnly
+	 * connectReadOnly
+	 * 
+	 * Connect to an existing database for reading. Return true on success.
+	 */
+	public boolean connectReadOnly() {
+		
+		// Read-only access. Don't modify the database.
+		createIfDoesNotExist = false;
+		
+		try {
+			Class.forName("org.h2.Driver");
+			conn = DriverManager.getConnection(dbPath + dbName +
+					";INIT=SET SCHEMA " + dbName, user, password);
+
+		} catch (Exception e) {
+			Tools.errorMessage("DatabaseH2", "connectReadOnly",
+					"Could not connect with database " + dbPath + dbName, e);
+
+			return false;
+		}
+
+		Tools.statusMessage("Connected to database, read-only: " + dbPath + dbName);
+		status = Status.CONNECTED_READ_ONLY;
+
+		return true;
+	}
+
+	/*
+	 * connectReadOnly
+	 * 
+	 * Connect to an existing database for reading, with a pool of connections
+	 * so several threads can query it at once. The metadata, timestamps and
+	 * locations are read up front and then shared, read-only, by every query:
+	 * getMetadata, getTimestamp and getLocation answer from them without
+	 * taking a connection, so they can be called while cursors hold the
+	 * whole pool. Return true on success.
+	 */
+	public boolean connectReadOnly(int connections) {
+
+		if (!connectReadOnly()) return false;
+		if (connections < 2) return true;
+
+		readPool = new ArrayBlockingQueue<Connection>(connections);
+		readConnections.add(conn);
+		readPool.add(conn);
+
+		try {
+			for (int i = 1; i < connections; i++) {
+				Connection c = DriverManager.getConnection(dbPath + dbName +
+						";INIT=SET SCHEMA " + dbName, user, password);
+				readConnections.add(c);
+				readPool.add(c);
+			}
+		} catch (SQLException e) {
+			Tools.errorMessage("DatabaseH2", "connectReadOnly",
+					"Could not open pooled connection to " + dbPath + dbName, e);
+			return false;
+		}
+
+		// Fill the caches now, before any threads share them.
+		getMetadata();
+		getTimestamps();
+		getLocationIndex();
+		partitions();
+		getChannels();
+
+		Tools.statusMessage("  Read connections: " + connections);
+
+		return true;
+	}
+
+	/*
+	 * setBorrowTimeout
+	 * 
+	 * How long a query waits for a pooled connection, in seconds.
+	 */
+	public void setBorrowTimeout(int seconds) {
+		borrowTimeout = Math.max(1, seconds);
+	}
+
+	/*
+	 * borrow
+	 * 
+	 * A connection to run a query on, waiting for one if they're all in use.
+	 * Must be handed back with giveBack. Waiting longer than the borrow
+	 * timeout is an error: every connection is held, most likely by cursors
+	 * that haven't been closed.
+	 */
+	protected Connection borrow() {
+
+		if (readPool == null) return conn;
+
+		Connection c = null;
+		try {
+			c = readPool.poll(borrowTimeout, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Tools.errorMessage("DatabaseH2", "borrow", "interrupted waiting for a connection", e);
+		}
+
+		if (c == null) {
+			Tools.errorMessage("DatabaseH2", "borrow", "no read connection free after " + borrowTimeout +
+					" seconds; all " + readConnections.size() + " are held (cursors left open?)",
+					new Exception("connection pool exhausted"));
+		}
+
+		return c;
+	}
+
+	protected void giveBack(Connection c) {
+		if (readPool != null && c != null) readPool.offer(c);
+	}
+
+	/*
+	 * disconnect
+	 * 
+	 * Close the connection to the database.
+	 */
+	public void disconnect() {
+		
+		// If we may have been writing to the file, send off anything still
+		// waiting in a batch and update the metadata first.
+		if (status == Status.CONNECTED) {
+			flush();
+			storeMetadata(metadata);
+			createIndexes();
+			commit();
+		}
+		
+		try {
+			closePreparedStatements();
+
+			for (Connection c : readConnections) {
+				if (c != conn) c.close();
+			}
+			readConnections.clear();
+			readPool = null;
+
+			conn.close();
+		} catch (Exception e) {
+			Tools.warningMessage("Unable to close database: " + dbPath + dbName);
+			status = Status.UNKNOWN;
+			return;
+		}
+
+		status = Status.DISCONNECTED;
+
+		Tools.statusMessage("Disconnected from database");
+	}
+
+	/*
+	 * clean
+	 * 
+	 * Reset the database, clean out all existing data and tables. Empty tables
+	 * are created afterward.
+	 */
+	public void clean() {
+
+		// The partitions first, while they're still listed.
+		for (String table : readPartitions().keySet()) {
+			try {
+				sqlCreate = conn.createStatement();
+				sqlCreate.execute("DROP TABLE IF EXISTS " + table);
+			} catch (Exception e) {
+				// As below: assume it's gone.
+			}
+		}
+
+		// Drop each table.
+		for (Table table : Table.values()) {
+			try {
+				sqlCreate = conn.createStatement();
+				Boolean status = sqlCreate.execute("DROP TABLE IF EXISTS "
+						+ table.name);
+				Tools.debugMessage("DatabaseH2 table clean: " + table.name
+						+ " status: " + status);
+			} catch (Exception e) {
+				// Do nothing right now.
+				// Assume it either didn't exist, or was dropped successfully.
+				// Might want to re-visit this assumption at a later time.
+			}
+		}
+
+		// The tables will need to be re-created before anything is stored.
+		closePreparedStatements();
+		tablesCreated = false;
+		locationsByID = null;
+		partitions = new LinkedHashMap<String, Partition>();
+		timePartitions.clear();
+		channels.clear();
+		channelsRead = true;
+		channel = 0;
+	}
+
+	/*
+	 * resume
+	 * 
+	 * Carry on adding to the database as the last run left it. The counts,
+	 * and so the next IDs, come from the tables themselves rather than the
+	 * metadata row, in case the row wasn't updated at the end; a last day
+	 * the row doesn't cover is dropped, as it may be incomplete. Returns the
+	 * number of timestamps already stored.
+	 */
+	public int resume() {
+
+		try {
+			createTables();
+
+			ResultSet rs = sqlCreate.executeQuery("SELECT COUNT(*) FROM " + Table.METADATA.name());
+			rs.next();
+			metadataStored = rs.getInt(1) > 0;
+			rs.close();
+
+			if (metadataStored) getMetadata();
+			else metadata = new Metadata();
+
+			// Carry on with the partitioning the database was made with.
+			partitions = readPartitions();
+			timePartitions.clear();
+
+			sqlCreate.execute("ALTER TABLE " + Table.METADATA.name() +
+					" ADD COLUMN IF NOT EXISTS PARTITIONING VARCHAR(8)");
+
+			if (metadataStored) {
+				Partitioning stored = readPartitioning();
+				if (stored != partitioning) {
+					Tools.warningMessage("DatabaseH2::resume: " + dbName + " was made with " +
+							stored.toString().toLowerCase() + " partitioning, and will carry on with it");
+					partitioning = stored;
+				}
+			}
+
+			// Databases from before channels don't have the column.
+			sqlCreate.execute("ALTER TABLE " + Table.VECTORS.name() +
+					" ADD COLUMN IF NOT EXISTS CHANNEL TINYINT DEFAULT 0");
+			for (Partition p : partitions.values()) {
+				sqlCreate.execute("ALTER TABLE " + p.table + " ADD COLUMN IF NOT EXISTS CHANNEL TINYINT DEFAULT 0");
+			}
+
+			channels.clear();
+			channelsRead = false;
+			getChannels();
+
+			// Without bulk ingest there are no checkpoints: the metadata row
+			// is only brought up to date when the database is closed, and a
+			// run that stopped part-way may have left its last day half
+			// stored. If the row doesn't account for the last timestamp, drop
+			// that day so the append reads it again. (With checkpoints, the
+			// row and the data are committed together and always agree.)
+			int lastID = maxID(Table.TIMESTAMPS.name());
+			if (metadataStored && lastID > metadata.timestamps) dropTimestamp(lastID);
+
+			metadata.timestamps = maxID(Table.TIMESTAMPS.name());
+			metadata.locations = maxID(Table.LOCATIONS.name());
+			metadata.vectors = maxID(Table.VECTORS.name());
+			for (Partition p : partitions.values()) {
+				metadata.vectors = Math.max(metadata.vectors, maxID(p.table));
+			}
+
+			// Bring the metadata row up to date.
+			if (metadataStored) updateMetadata(metadata);
+			commit();
+
+		} catch (SQLException e) {
+			Tools.errorMessage("DatabaseH2", "resume", "When reading " + dbPath + dbName, e);
+		}
+
+		// Anything read before is out of date.
+		locations = null;
+		timestamps = null;
+		locationsByID = null;
+
+		Tools.statusMessage("  Resuming " + dbName + ": " + metadata.timestamps +
+				" timestamps, " + metadata.vectors + " vectors");
+
+		return metadata.timestamps;
+	}
+
+	/*
+	 * dropTimestamp
+	 * 
+	 * Delete a timestamp and all its vectors, in every channel.
+	 */
+	protected void dropTimestamp(int id) throws SQLException {
+
+		Tools.statusMessage("  Dropping timestamp " + id + " of " + dbName +
+				", which the last run may not have finished");
+
+		for (String table : vectorTables(new Range(id))) {
+			sqlCreate.execute("DELETE FROM " + table + " WHERE TIMESTAMPID = " + id);
+		}
+		sqlCreate.execute("DELETE FROM " + Table.TIMESTAMPS.name() + " WHERE ID = " + id);
+	}
+
+	/*
+	 * readPartitioning
+	 * 
+	 * The partitioning recorded in the metadata row. Databases from before
+	 * partitioning don't record it, and aren't partitioned.
+	 */
+	protected Partitioning readPartitioning() throws SQLException {
+
+		ResultSet rs = sqlCreate.executeQuery("SELECT PARTITIONING FROM " +
+				Table.METADATA.name() + " WHERE ID = 1");
+		String name = rs.next() ? rs.getString(1) : null;
+		rs.close();
+
+		return (name == null) ? Partitioning.NONE : Partitioning.valueOf(name);
+	}
+
+	/*
+	 * maxID
+	 * 
+	 * The largest ID in a table, 0 if it's empty.
+	 */
+	protected int maxID(String table) throws SQLException {
+		ResultSet rs = sqlCreate.executeQuery("SELECT COALESCE(MAX(ID), 0) FROM " + table);
+		rs.next();
+		int id = rs.getInt(1);
+		rs.close();
+		return id;
+	}
+
+	/*
+	 * storeChannel
+	 * 
+	 * Add a channel to the CHANNELS table, or find it there. Returns its ID.
+	 */
+	public int storeChannel(String name) {
+
+		int id = channelID(name);
+		if (id > 0) return id;
+
+		id = channels.size() + 1;
+
+		try {
+			createTables();
+			sqlCreate.execute("INSERT INTO " + Table.CHANNELS.name() + " VALUES(" +
+					id + ",'" + name.replace("'", "''") + "')");
+		} catch (SQLException e) {
+			Tools.errorMessage("DatabaseH2", "storeChannel", "When storing channel " + name, e);
+		}
+
+		channels.add(name);
+		return id;
+	}
+
+	/*
+	 * useChannel
+	 * 
+	 * Every query is for the channel in use (see where). With a read pool,
+	 * the threads sharing it would change it under each other's queries, so
+	 * the channel is chosen before connecting and can't change while the
+	 * pool is open.
+	 */
+	public void useChannel(int id) {
+		if (readPool != null && id != channel) {
+			Tools.errorMessage("DatabaseH2", "useChannel", "can't change channel from " + channel +
+					" to " + id + " with a read pool open; choose it before connectReadOnly",
+					new Exception());
+			return;
+		}
+		super.useChannel(id);
+	}
+
+	/*
+	 * getChannels
+	 * 
+	 * The channel names, by ID - 1, read when first needed. None for a
+	 * single-channel database.
+	 */
+	public synchronized ArrayList<String> getChannels() {
+
+		if (channelsRead) return channels;
+
+		Connection c = borrow();
+
+		try {
+			Statement statement = c.createStatement();
+			ResultSet rs = statement.executeQuery("SELECT NAME FROM " + Table.CHANNELS.name() + " ORDER BY ID");
+			while (rs.next()) channels.add(rs.getString(1));
+			rs.close();
+			statement.close();
+		} catch (SQLException e) {
+			// No channels table: a database from before channels.
+		} finally {
+			giveBack(c);
+		}
+
+		channelsRead = true;
+		return channels;
+	}
+
+	/*
+	 * createTables
+	 * 
+	 * Create the tables (if they don't already exist) and prepare the insert
+	 * statements. Only done once per connection, rather than on every insert.
+	 */
+	protected void createTables() throws SQLException {
+
+		if (tablesCreated) return;
+
+		if (createIfDoesNotExist) {
+			for (Table table : Table.values()) {
+				sqlCreate.execute("CREATE TABLE IF NOT EXISTS " + table.name()
+						+ table.columnNames());
+			}
+		}
+
+		insertLocation = conn.prepareStatement("INSERT INTO " +
+				Table.LOCATIONS.name() + " VALUES(?,?,?,?,?)");
+		insertTimestamp = conn.prepareStatement("INSERT INTO " +
+				Table.TIMESTAMPS.name() + " VALUES(?,?)");
+		insertVector = conn.prepareStatement("INSERT INTO " +
+				Table.VECTORS.name() + " VALUES(?,?,?,?,?)");
+
+		tablesCreated = true;
+	}
+
+	/*
+	 * createIndexes
+	 * 
+	 * Index the vectors by time and location, and the locations by row and
+	 * column, if they aren't already. Only when writing. With partitions,
+	 * each partition is indexed on its own connection, several at once.
+	 */
+	public void createIndexes() {
+
+		if (status != Status.CONNECTED || !tablesCreated) return;
+
+		ArrayList<String> tables = vectorTables(Range.ALL);
+
+		try {
+			sqlCreate.execute("CREATE INDEX IF NOT EXISTS " + locationIndex[0] + " ON " + locationIndex[1]);
+
+			if (tables.size() < 2) {
+				for (String table : tables) createIndexes(sqlCreate, table);
+				return;
+			}
+		} catch (SQLException e) {
+			Tools.warningMessage("DatabaseH2::createIndexes: " + e);
+			return;
+		}
+
+		// The other connections only see committed data.
+		commit();
+
+		int threads = Math.min(tables.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<Void>> done = new ArrayList<Future<Void>>();
+
+		for (final String table : tables) {
+			done.add(pool.submit(() -> {
+				Connection c = DriverManager.getConnection(dbPath + dbName +
+						";INIT=SET SCHEMA " + dbName, user, password);
+				try {
+					createIndexes(c.createStatement(), table);
+				} finally {
+					c.close();
+				}
+				return null;
+			}));
+		}
+
+		for (Future<Void> f : done) {
+			try {
+				f.get();
+			} catch (InterruptedException | ExecutionException e) {
+				Tools.warningMessage("DatabaseH2::createIndexes: " + e);
+			}
+		}
+
+		pool.shutdown();
+	}
+
+	protected void createIndexes(Statement statement, String table) throws SQLException {
+		for (String[] index : vectorIndexes) {
+			statement.execute("CREATE INDEX IF NOT EXISTS " + table + "_" + index[0] +
+					" ON " + table + index[1]);
+		}
+	}
+
+	/*
+	 * readPartitions
+	 * 
+	 * The partitions listed in the database, in order of their timestamps.
+	 * None if it isn't partitioned (or is from before partitioning).
+	 */
+	protected LinkedHashMap<String, Partition> readPartitions() {
+
+		LinkedHashMap<String, Partition> map = new LinkedHashMap<String, Partition>();
+
+		Connection c = borrow();
+
+		try {
+			Statement statement = c.createStatement();
+			ResultSet rs = statement.executeQuery("SELECT NAME, FIRSTID, LASTID FROM " +
+					Table.PARTITIONS.name() + " ORDER BY FIRSTID");
+
+			while (rs.next()) {
+				map.put(rs.getString(1), new Partition(rs.getString(1), rs.getInt(2), rs.getInt(3)));
+			}
+
+			rs.close();
+			statement.close();
+		} catch (SQLException e) {
+			// No partitions table: not partitioned.
+		} finally {
+			giveBack(c);
+		}
+
+		return map;
+	}
+
+	/*
+	 * partitions
+	 * 
+	 * The partitions, read when first needed.
+	 */
+	protected LinkedHashMap<String, Partition> partitions() {
+		if (partitions == null) {
+			synchronized (this) {
+				if (partitions == null) partitions = readPartitions();
+			}
+		}
+		return partitions;
+	}
+
+	/*
+	 * vectorTables
+	 * 
+	 * The tables holding the vectors in a range of timestamp IDs: the
+	 * partitions that overlap it, or VECTORS if there aren't any partitions.
+	 */
+	public ArrayList<String> vectorTables(Range time) {
+
+		ArrayList<String> tables = new ArrayList<String>();
+		LinkedHashMap<String, Partition> map = partitions();
+
+		if (map.isEmpty()) {
+			tables.add(Table.VECTORS.name());
+			return tables;
+		}
+
+		for (Partition p : map.values()) {
+			if (p.overlaps(time)) tables.add(p.table);
+		}
+
+		return tables;
+	}
+
+	/*
+	 * addToPartition
+	 * 
+	 * Put a new timestamp in its year's or month's partition, creating the
+	 * partition if it's the first.
+	 */
+	protected void addToPartition(Timestamp t, int id) throws SQLException {
+
+		String table = Table.VECTORS.name() + "_" +
+				((partitioning == Partitioning.YEAR) ? t.year() : t.year() * 100 + t.month());
+
+		LinkedHashMap<String, Partition> map = partitions();
+		Partition p = map.get(table);
+
+		if (p == null) {
+			sqlCreate.execute("CREATE TABLE IF NOT EXISTS " + table + Table.VECTORS.columnNames());
+			p = new Partition(table, id, id);
+			map.put(table, p);
+		}
+
+		p.first = Math.min(p.first, id);
+		p.last = Math.max(p.last, id);
+
+		sqlCreate.execute("MERGE INTO " + Table.PARTITIONS.name() + " KEY(NAME) VALUES('" +
+				table + "'," + p.first + "," + p.last + ")");
+
+		while (timePartitions.size() < id) timePartitions.add(null);
+		timePartitions.set(id - 1, p);
+	}
+
+	/*
+	 * partitionOf
+	 * 
+	 * The partition holding a timestamp ID's vectors, or null.
+	 */
+	protected Partition partitionOf(int timestampID) {
+
+		if (timestampID >= 1 && timestampID <= timePartitions.size()) {
+			Partition p = timePartitions.get(timestampID - 1);
+			if (p != null) return p;
+		}
+
+		for (Partition p : partitions().values()) {
+			if (p.first <= timestampID && timestampID <= p.last) return p;
+		}
+
+		return null;
+	}
+
+	/*
+	 * dropPartition
+	 * 
+	 * Delete the vectors of a year or month (e.g. "VECTORS_2004") by dropping
+	 * its table, rather than row by row. The timestamps stay, without data.
+	 * The vector count in the metadata isn't changed: it's also the next ID.
+	 */
+	public void dropPartition(String table) {
+
+		Partition p = partitions().get(table);
+		if (p == null) {
+			Tools.warningMessage("DatabaseH2::dropPartition: no partition " + table);
+			return;
+		}
+
+		try {
+			flush();
+			if (p.insert != null) p.insert.close();
+
+			sqlCreate.execute("DROP TABLE IF EXISTS " + table);
+			sqlCreate.execute("DELETE FROM " + Table.PARTITIONS.name() + " WHERE NAME = '" + table + "'");
+			commit();
+		} catch (SQLException e) {
+			Tools.errorMessage("DatabaseH2", "dropPartition", "When dropping " + table, e);
+		}
+
+		partitions().remove(table);
+		for (int i = 0; i < timePartitions.size(); i++) {
+			if (timePartitions.get(i) == p) timePartitions.set(i, null);
+		}
+	}
+
+	/*
+	 * closePreparedStatements
 	 * 
-	 * Connect to an existing database for reading. Return true on success.
+	 * Release the prepared insert statements.
 	 */
-	public boolean connectReadOnly() {
-		
-		// Read-only access. Don't modify the database.
-		createIfDoesNotExist = false;
-		
+	protected void closePreparedStatements() {
 		try {
-			Class.forName("org.h2.Driver");
-			conn = DriverManager.getConnection(dbPath + dbName +
-					";INIT=SET SCHEMA " + dbName, null, null);
-
-		} catch (Exception e) {
-			Tools.errorMessage("DatabaseH2", "connectReadOnly",
-					"Could not connect with database " + dbPath + dbName, e);
+			if (insertLocation != null) insertLocation.close();
+			if (insertTimestamp != null) insertTimestamp.close();
+			if (insertVector != null) insertVector.close();
 
-			return false;
+			if (partitions != null) {
+				for (Partition p : partitions.values()) {
+					if (p.insert != null) p.insert.close();
+					p.insert = null;
+				}
+			}
+		} catch (SQLException e) {
+			Tools.warningMessage("DatabaseH2::closePreparedStatements: " + e);
 		}
 
-		Tools.statusMessage("Connected to database, read-only: " + dbPath + dbName);
-		status = Status.CONNECTED_READ_ONLY;
+		insertLocation = null;
+		insertTimestamp = null;
+		insertVector = null;
+		pendingLocations = 0;
+		pendingVectors = 0;
 
-		return true;
+		// Anything still staged isn't going to be loaded.
+		for (Staged s : staged.values()) {
+			try {
+				s.out.close();
+			} catch (IOException e) {
+			}
+			s.file.delete();
+		}
+		staged.clear();
 	}
 
 	/*
-	 * disconnect
+	 * flush
 	 * 
-	 * Close the connection to the database.
+	 * Send any batched inserts to the database. In bulk mode each call counts
+	 * as one batch toward the commit interval (with channels, each call for
+	 * the last channel).
 	 */
-	public void disconnect() {
-		
-		// If we may have been writing to the file, update the metadata first.
-		if (status == Status.CONNECTED) {
-			storeMetadata(metadata);
-		}
-		
+	public void flush() {
+
+		if (!bulkIngest || !tablesCreated) return;
+
 		try {
-			conn.close();
-		} catch (Exception e) {
-			Tools.warningMessage("Unable to close database: " + dbPath + dbName);
-			status = Status.UNKNOWN;
-			return;
+			if (pendingLocations > 0) insertLocation.executeBatch();
+			if (pendingVectors > 0) executeVectorBatches();
+		} catch (SQLException e) {
+			Tools.errorMessage("DatabaseH2", "flush",
+					"When sending batched inserts to " + dbPath + dbName, e);
 		}
 
-		status = Status.DISCONNECTED;
+		pendingLocations = 0;
+		pendingVectors = 0;
 
-		Tools.statusMessage("Disconnected from database");
+		// With channels, a day's batch is done after its last channel, so
+		// a checkpoint never holds part of a day.
+		if (channel > 0 && channel < channels.size()) return;
+
+		batchesSinceCommit++;
+		if (batchesSinceCommit >= commitInterval) checkpoint();
 	}
 
 	/*
-	 * clean
+	 * checkpoint
 	 * 
-	 * Reset the database, clean out all existing data and tables. Empty tables
-	 * are created afterward.
+	 * Commit the data stored so far together with the metadata describing
+	 * it, in one transaction. If a run is stopped, the database is left as it
+	 * was at the last checkpoint, and can be carried on from there (resume).
 	 */
-	public void clean() {
-		
-		// Drop each table.
-		for (Table table : Table.values()) {
-			try {
-				sqlCreate = conn.createStatement();
-				Boolean status = sqlCreate.execute("DROP TABLE IF EXISTS "
-						+ table.name);
-				Tools.debugMessage("DatabaseH2 table clean: " + table.name
-						+ " status: " + status);
-			} catch (Exception e) {
-				// Do nothing right now.
-				// Assume it either didn't exist, or was dropped successfully.
-				// Might want to re-visit this assumption at a later time.
-			}
+	public void checkpoint() {
+		if (metadataStored) updateMetadata(metadata);
+		commit();
+	}
+
+	/*
+	 * commit
+	 * 
+	 * Commit the current transaction. Only needed in bulk mode; otherwise
+	 * the connection auto-commits.
+	 */
+	public void commit() {
+
+		batchesSinceCommit = 0;
+
+		try {
+			if (bulkIngest && conn != null && !conn.getAutoCommit()) conn.commit();
+		} catch (SQLException e) {
+			Tools.errorMessage("DatabaseH2", "commit",
+					"When committing to " + dbPath + dbName, e);
 		}
 	}
 
@@ -197,8 +1117,7 @@ public class DatabaseH2 extends Database {
 		
 		// Now store it in the database.
 		try {
-			if (createIfDoesNotExist) sqlCreate.execute("CREATE TABLE IF NOT EXISTS " + Table.METADATA.name()
-					+ Table.METADATA.columnNames());
+			createTables();
 
 			sqlCreate.execute("INSERT INTO " + Table.METADATA.name() + " VALUES(" +
 					"1," +		// Primary key index is always 1.
@@ -206,7 +1125,8 @@ public class DatabaseH2 extends Database {
 					metadata.cols + "," +
 					metadata.timestamps + "," +
 					metadata.locations + "," +
-					metadata.vectors + ")");
+					metadata.vectors + ",'" +
+					partitioning.name() + "')");
 
 		} catch (Exception e) {
 			Tools.errorMessage("DatabaseH2", "storeMetadata", "When storing metadata", e);
@@ -240,7 +1160,8 @@ public class DatabaseH2 extends Database {
 						"COLS = " +	metadata.cols + "," +
 						"TIMESTAMPS = " + metadata.timestamps + "," +
 						"LOCATIONS = " + metadata.locations + "," +
-						"VECTORS = " + metadata.vectors + " WHERE ID = 1");
+						"VECTORS = " + metadata.vectors + "," +
+						"PARTITIONING = '" + partitioning.name() + "' WHERE ID = 1");
 
 			} catch (Exception e) {
 				Tools.errorMessage("DatabaseH2", "updateMetadata", "When updating " + dbPath + dbName + " metadata", e);
@@ -259,19 +1180,32 @@ public class DatabaseH2 extends Database {
 
 		if (loc == null) return 0;
 		
+		// The location index is out of date.
+		locationsByID = null;
+
 		try {
 			// Increment the number of locations stored.
 	        metadata.locations++;
 	        
-	        if (createIfDoesNotExist) sqlCreate.execute("CREATE TABLE IF NOT EXISTS " + Table.LOCATIONS.name()
-					+ Table.LOCATIONS.columnNames());
+	        createTables();
 
-			sqlCreate.execute("INSERT INTO " + Table.LOCATIONS.name() + " VALUES(" +
-					+ metadata.locations + "," +
-					+ loc.row() + "," +
-					+ loc.col() + "," +
-					+ loc.lat() + "," +
-					+ loc.lon() + ")");
+	        insertLocation.setInt(1, metadata.locations);
+	        insertLocation.setInt(2, loc.row());
+	        insertLocation.setInt(3, loc.col());
+	        insertLocation.setDouble(4, loc.lat());
+	        insertLocation.setDouble(5, loc.lon());
+
+	        if (bulkIngest) {
+	        	insertLocation.addBatch();
+	        	pendingLocations++;
+	        	if (pendingLocations >= maxBatchSize) {
+	        		insertLocation.executeBatch();
+	        		pendingLocations = 0;
+	        	}
+	        }
+	        else {
+	        	insertLocation.executeUpdate();
+	        }
 
 		} catch (Exception e) {
 			Tools.errorMessage("DatabaseH2",
@@ -296,12 +1230,14 @@ public class DatabaseH2 extends Database {
 		metadata.timestamps++;
 
         try {
-			if (createIfDoesNotExist) sqlCreate.execute("CREATE TABLE IF NOT EXISTS " + Table.TIMESTAMPS.name()
-					+ Table.TIMESTAMPS.columnNames());
+			createTables();
+
+			// Only one timestamp per day: no need to batch these.
+			insertTimestamp.setInt(1, metadata.timestamps);
+			insertTimestamp.setFloat(2, (float) t.days());
+			insertTimestamp.executeUpdate();
 
-			sqlCreate.execute("INSERT INTO " + Table.TIMESTAMPS.name() + " VALUES(" +
-					+ metadata.timestamps + "," +
-					+ t.days() + ")");
+			if (partitioning != Partitioning.NONE) addToPartition(t, metadata.timestamps);
 
 		} catch (Exception e) {
 			Tools.errorMessage("DatabaseH2",
@@ -320,30 +1256,155 @@ public class DatabaseH2 extends Database {
 	public void storeVector(GriddedVector v) {
 
 		if (v == null) return;
+
+		storeVector(v.data(), v.location.id, v.timestampID);
+	}
+
+	/*
+	 * storeFrame
+	 * 
+	 * Store the cells of a frame that hold data, straight from its value array.
+	 */
+	public void storeFrame(GridFrame frame) {
+
+		int[] values = frame.values();
+		int timestampID = frame.timestampID();
+
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == NODATA) continue;
+			storeVector(values[i], frame.location(i).id, timestampID);
+		}
+
+		flush();
+	}
+
+	/*
+	 * storeVector
+	 * 
+	 * Insert one row into the vectors table.
+	 */
+	protected void storeVector(int value, int locationID, int timestampID) {
 		
 		// Increment the number of vectors stored, and use that as the ID.
 		metadata.vectors++;
 		
 		try {
-			if (createIfDoesNotExist) sqlCreate.execute("CREATE TABLE IF NOT EXISTS " + Table.VECTORS.name()
-					+ Table.VECTORS.columnNames());
+			createTables();
+
+			// Partitioned: into the table for the vector's timestamp.
+			Partition p = null;
+			if (partitioning != Partitioning.NONE) {
+				p = partitionOf(timestampID);
+				if (p == null) throw new SQLException("no partition for timestamp ID " + timestampID);
+			}
+
+			// Staged for a CSV load.
+			if (bulkIngest && csvDirectory != null) {
+				stage((p == null) ? Table.VECTORS.name() : p.table).write(metadata.vectors + "," +
+						value + "," + locationID + "," + timestampID + "," + channel + "\n");
+				pendingVectors++;
+				return;
+			}
 
-			sqlCreate.execute("INSERT INTO " + Table.VECTORS.name() + " VALUES(" +
-					metadata.vectors + "," +
-					v.data() + "," +
-					v.location.id + "," +
-					v.timestampID + ")");
+			PreparedStatement insert = insertVector;
+
+			if (p != null) {
+				if (p.insert == null) {
+					p.insert = conn.prepareStatement("INSERT INTO " + p.table + " VALUES(?,?,?,?,?)");
+				}
+				insert = p.insert;
+			}
+
+			insert.setInt(1, metadata.vectors);
+			insert.setInt(2, value);
+			insert.setInt(3, locationID);
+			insert.setInt(4, timestampID);
+			insert.setInt(5, channel);
+
+			if (bulkIngest) {
+				insert.addBatch();
+				pendingVectors++;
+				if (pendingVectors >= maxBatchSize) {
+					executeVectorBatches();
+					pendingVectors = 0;
+				}
+			}
+			else {
+				insert.executeUpdate();
+			}
 
 		} catch (Exception e) {
 			Tools.errorMessage("DatabaseH2",
 					"storeVector",
-					"When storing vector " + v.toString() + " in " + dbPath + dbName, e);
+					"When storing vector " + metadata.vectors + " in " + dbPath + dbName, e);
 		}
 	
 		return;
 	}
 
 
+	/*
+	 * stage
+	 * 
+	 * The CSV file a table's vectors are being staged in.
+	 */
+	protected BufferedWriter stage(String table) throws IOException {
+
+		Staged s = staged.get(table);
+
+		if (s == null) {
+			s = new Staged(File.createTempFile(dbName + "_" + table + "_", ".csv", new File(csvDirectory)));
+			staged.put(table, s);
+		}
+
+		return s.out;
+	}
+
+	/*
+	 * loadStaged
+	 * 
+	 * Load each staged CSV file into its table, in one statement, and
+	 * delete it. The rows go in in ID order, so the primary key index is
+	 * appended to rather than searched.
+	 */
+	protected void loadStaged() throws SQLException {
+
+		for (Map.Entry<String, Staged> e : staged.entrySet()) {
+			Staged s = e.getValue();
+
+			try {
+				s.out.close();
+			} catch (IOException x) {
+				throw new SQLException("could not write " + s.file, x);
+			}
+
+			sqlCreate.execute("INSERT INTO " + e.getKey() + " DIRECT SORTED SELECT * FROM CSVREAD('" +
+					s.file.getPath().replace("'", "''") + "', 'ID,VALUE,LOCATIONID,TIMESTAMPID,CHANNEL')");
+
+			s.file.delete();
+		}
+
+		staged.clear();
+	}
+
+	/*
+	 * executeVectorBatches
+	 * 
+	 * Send the batched (or staged) vector inserts: to VECTORS, or to each
+	 * partition.
+	 */
+	protected void executeVectorBatches() throws SQLException {
+		loadStaged();
+
+		insertVector.executeBatch();
+
+		if (partitioning == Partitioning.NONE) return;
+
+		for (Partition p : partitions().values()) {
+			if (p.insert != null) p.insert.executeBatch();
+		}
+	}
+
 	//
 	// RETRIEVAL METHODS
 	//
@@ -354,12 +1415,17 @@ public class DatabaseH2 extends Database {
 	 */
 	public Metadata getMetadata() {
 		
+		// Read when the pool was opened.
+		if (readPool != null && metadata != null) return metadata;
+
 		if (metadata == null) metadata = new Metadata();
 		
 		String query = "SELECT * FROM " + Table.METADATA.name() +	" WHERE ID = 1";
 
+		Connection c = borrow();
+
 		try {
-			Statement statement = conn.createStatement();
+			Statement statement = c.createStatement();
 			ResultSet rs = statement.executeQuery(query);
 		    
 			if (rs.next()) {
@@ -374,6 +1440,8 @@ public class DatabaseH2 extends Database {
 			statement.close();
 		} catch(SQLException e) {
 			Tools.errorMessage("DatabaseH2", "getMetadata", dbPath + dbName + " query failed", e);
+		} finally {
+			giveBack(c);
 		}
 		
 		return metadata;
@@ -386,10 +1454,23 @@ public class DatabaseH2 extends Database {
 	 public Timestamp getTimestamp(int id) {
 	 	Timestamp t = null;
 		
+		// With a pool, from the timestamps read when it was opened.
+		if (readPool != null && timestamps != null) {
+			if (id >= 1 && id <= timestamps.size() && timestamps.get(id - 1).id() == id) {
+				return timestamps.get(id - 1);
+			}
+			for (Timestamp ts : timestamps) {
+				if (ts.id() == id) return ts;
+			}
+			return null;
+		}
+
 		String query = "SELECT * FROM " + Table.TIMESTAMPS.name() +	" WHERE ID = " + id;
 	    
+		Connection c = borrow();
+
 		try {
-			Statement statement = conn.createStatement();
+			Statement statement = c.createStatement();
 			ResultSet rs = statement.executeQuery(query);
 		    
 			if (rs.next()) {
@@ -401,6 +1482,8 @@ public class DatabaseH2 extends Database {
 			statement.close();
 		} catch(SQLException e) {
 			Tools.errorMessage("DatabaseH2", "getTimestamp", dbPath + dbName + " query failed", e);
+		} finally {
+			giveBack(c);
 		}
 		
 		return t;
@@ -412,11 +1495,18 @@ public class DatabaseH2 extends Database {
 	 */
 	public GriddedLocation getLocation(int id) {
 		GriddedLocation loc = null;
+
+		// If we have the location index, no need to ask the database.
+		if (locationsByID != null) {
+			return (id >= 0 && id < locationsByID.length) ? locationsByID[id] : null;
+		}
 		
 		String query = "SELECT * FROM " + Table.LOCATIONS.name() +	" WHERE ID = " + id;
 	    
+		Connection c = borrow();
+
 		try {
-			Statement statement = conn.createStatement();
+			Statement statement = c.createStatement();
 			ResultSet rs = statement.executeQuery(query);
 		    
 			if (rs.next()) {
@@ -431,6 +1521,8 @@ public class DatabaseH2 extends Database {
 			statement.close();
 		} catch(SQLException e) {
 			Tools.errorMessage("DatabaseH2", "getLocation", dbPath + dbName + " query failed", e);
+		} finally {
+			giveBack(c);
 		}
 		
 		return loc;
@@ -450,8 +1542,10 @@ public class DatabaseH2 extends Database {
 
 	    String query = "SELECT * FROM " + Table.TIMESTAMPS.name() +	" ORDER BY ID";
 	    
+		Connection c = borrow();
+
 		try {
-			Statement statement = conn.createStatement();
+			Statement statement = c.createStatement();
 			ResultSet rs = statement.executeQuery(query);
 		    
 			while (rs.next()) {
@@ -462,6 +1556,8 @@ public class DatabaseH2 extends Database {
 			statement.close();
 		} catch(SQLException e) {
 			Tools.errorMessage("DatabaseH2", "getTimestamps", dbPath + dbName + " query failed", e);
+		} finally {
+			giveBack(c);
 		}
 				
 		return timestamps;
@@ -481,8 +1577,10 @@ public class DatabaseH2 extends Database {
 
 	    String query = "SELECT * FROM " + Table.LOCATIONS.name() +	" ORDER BY ID";
 	    
+		Connection c = borrow();
+
 		try {
-			Statement statement = conn.createStatement();
+			Statement statement = c.createStatement();
 			ResultSet rs = statement.executeQuery(query);
 		    
 			while (rs.next()) {
@@ -499,40 +1597,72 @@ public class DatabaseH2 extends Database {
 			statement.close();
 		} catch(SQLException e) {
 			Tools.errorMessage("DatabaseH2", "getLocations", dbPath + dbName + " query failed", e);
+		} finally {
+			giveBack(c);
 		}
 				
 		return locations;
 	 }
 	
 	
+	/* getLocationIndex
+	 * 
+	 * The locations indexed by ID (IDs start at 1; entry 0 is unused). Read from
+	 * the database the first time, then shared until more locations are stored.
+	 * Callers mustn't change it.
+	 */
+	protected GriddedLocation[] getLocationIndex() {
+
+		if (locationsByID != null) return locationsByID;
+
+		ArrayList<GriddedLocation> list = getLocations();
+
+		int maxID = 0;
+		for (GriddedLocation loc : list) {
+			if (loc.id > maxID) maxID = loc.id;
+		}
+
+		GriddedLocation[] index = new GriddedLocation[maxID + 1];
+		for (GriddedLocation loc : list) {
+			index[loc.id] = loc;
+		}
+
+		locationsByID = index;
+
+		return locationsByID;
+	}
+
 	/* getVectorsAtTime
 	 * 
 	 * Return all the vectors in the database at the specified time index ID.
 	 */
 	public ArrayList<GriddedVector> getVectorsAtTime( int timeID ) {
 
-		// When we create the vectors, we'll also need the locations and timestamps.
-		locations = getLocations();
-		timestamps = getTimestamps();
+		// When we create the vectors, we'll also need the locations.
+		GriddedLocation[] index = getLocationIndex();
 		
 		// An arraylist to store the vectors.
 		ArrayList<GriddedVector> vectors = new ArrayList<GriddedVector>();
 		
-	    String query = "SELECT * FROM " + Table.VECTORS.name() + " WHERE TIMESTAMPID = " + timeID;
-	    ///String query = "SELECT * FROM " + Table.VECTORS.name();
+	    String query = union(vectorTables(new Range(timeID)), "SELECT VALUE, LOCATIONID FROM ",
+	    		" WHERE TIMESTAMPID = " + timeID + ((channel > 0) ? " AND CHANNEL = " + channel : ""));
+	    if (query == null) return vectors;
 	    
+		Connection c = borrow();
+
 		try {
 			GriddedLocation loc;
 			GriddedVector vec;
 			
-			Statement statement = conn.createStatement();
+			Statement statement = c.createStatement();
 			ResultSet rs = statement.executeQuery(query);
 
 			while (rs.next()) {
-				loc = getLocation(rs.getInt("LOCATIONID"));
+				int id = rs.getInt(2);
+				loc = (id >= 0 && id < index.length) ? index[id] : null;
 				
 				// Create the vector from the value, location and timestamp.
-				vec = new GriddedVector(rs.getInt("VALUE"),	loc, timeID );
+				vec = new GriddedVector(rs.getInt(1), loc, timeID );
 				
 				// Add it to the arraylist.
 				vectors.add(vec);
@@ -542,24 +1672,286 @@ public class DatabaseH2 extends Database {
 			statement.close();
 		} catch(SQLException e) {
 			Tools.errorMessage("DatabaseH2", "getVectorsAtTime", dbPath + dbName + " query failed", e);
+		} finally {
+			giveBack(c);
 		}
 
 		return vectors;
 	}	
 
-	/* getVectorsInTimeRange
+	/* cursor
 	 * 
-	 * Return all the vectors in the database in the range of indices.
+	 * Stream the vectors in ranges of time, row, column and value from one
+	 * query. The time range uses the timestamp index; the row and column ranges
+	 * are a join with the location table (on its row/col index), only when
+	 * they're given. Rows come from the server 'fetchSize' at a time, so the
+	 * result is never all in memory.
 	 */
-	public ArrayList<GriddedVector> getVectors( int first, int last ) {
+	public VectorCursor cursor(Range time, Range rows, Range cols, Range values) {
 
-		ArrayList<GriddedVector> vectors = new ArrayList<GriddedVector>();
-		
-		for (int i = first; i <= last; i++) {
-			vectors.addAll( getVectorsAtTime(i) );			
+		time = Range.orAll(time);
+		rows = Range.orAll(rows);
+		cols = Range.orAll(cols);
+		values = Range.orAll(values);
+
+		final GriddedLocation[] index = getLocationIndex();
+
+		ArrayList<Range> ranges = new ArrayList<Range>();
+		String where = where(time, rows, cols, values, ranges);
+
+		if (where == null) {
+			return VectorCursor.of(new ArrayList<GriddedVector>().iterator(), rows, cols, values);
 		}
-	
-		return vectors;
+
+		// One select per table (partition) in the time range.
+		ArrayList<String> tables = vectorTables(time);
+
+		String join = "";
+		if (!rows.isAll() || !cols.isAll()) {
+			join = " JOIN " + Table.LOCATIONS.name() + " L ON V.LOCATIONID = L.ID";
+		}
+
+		String query = union(tables, "SELECT V.VALUE, V.LOCATIONID, V.TIMESTAMPID FROM ", " V" + join + where);
+
+		if (query == null) {
+			return VectorCursor.of(new ArrayList<GriddedVector>().iterator(), rows, cols, values);
+		}
+
+		final Connection c = borrow();
+
+		try {
+			final PreparedStatement statement = c.prepareStatement(query);
+			statement.setFetchSize(fetchSize);
+			for (int i = 0; i < tables.size(); i++) setRanges(statement, ranges, i * ranges.size() * 2 + 1);
+
+			final ResultSet rs = statement.executeQuery();
+
+			return new VectorCursor() {
+				protected GriddedVector advance() {
+					try {
+						if (!rs.next()) return null;
+
+						int id = rs.getInt(2);
+						GriddedLocation loc = (id >= 0 && id < index.length) ? index[id] : null;
+
+						return new GriddedVector(rs.getInt(1), loc, rs.getInt(3));
+					} catch (SQLException e) {
+						Tools.errorMessage("DatabaseH2", "cursor", dbPath + dbName + " read failed", e);
+						return null;
+					}
+				}
+
+				protected void release() {
+					try {
+						rs.close();
+						statement.close();
+					} catch (SQLException e) {
+						Tools.warningMessage("DatabaseH2::cursor: could not close the query: " + e);
+					} finally {
+						giveBack(c);
+					}
+				}
+			};
+		} catch(SQLException e) {
+			giveBack(c);
+			Tools.errorMessage("DatabaseH2", "cursor", dbPath + dbName + " query failed", e);
+		}
+
+		return null;
+	}
+
+	/* where
+	 * 
+	 * The WHERE clause for a box of time, space and value, in the channel
+	 * being used, with only the conditions needed (or "" for none). The ranges to bind, in order, are
+	 * added to 'ranges'. Null if nothing can match: the columns are all
+	 * SMALLINT, so a range outside of that is empty.
+	 */
+	protected String where(Range time, Range rows, Range cols, Range values, ArrayList<Range> ranges) {
+
+		String where = "";
+
+		if (!time.isAll()) {
+			where += " AND V.TIMESTAMPID BETWEEN ? AND ?";
+			ranges.add(time);
+		}
+		if (!rows.isAll()) {
+			where += " AND L.ROW BETWEEN ? AND ?";
+			ranges.add(rows);
+		}
+		if (!cols.isAll()) {
+			where += " AND L.COL BETWEEN ? AND ?";
+			ranges.add(cols);
+		}
+		if (!values.isAll()) {
+			where += " AND V.VALUE BETWEEN ? AND ?";
+			ranges.add(values);
+		}
+		if (channel > 0) {
+			where += " AND V.CHANNEL = " + channel;
+		}
+
+		for (Range r : ranges) {
+			if (r.isEmpty() || r.min() > Short.MAX_VALUE || r.max() < Short.MIN_VALUE) return null;
+		}
+
+		return (where.length() > 0) ? " WHERE" + where.substring(4) : "";
+	}
+
+	/* union
+	 * 
+	 * The same select from each of the tables, as one query: head + table +
+	 * tail, joined with UNION ALL. Null if there are no tables.
+	 */
+	protected String union(ArrayList<String> tables, String head, String tail) {
+
+		if (tables.isEmpty()) return null;
+
+		StringBuilder query = new StringBuilder();
+		for (String table : tables) {
+			if (query.length() > 0) query.append(" UNION ALL ");
+			query.append(head).append(table).append(tail);
+		}
+
+		return query.toString();
+	}
+
+	/* setRanges
+	 * 
+	 * Bind the ranges of a where clause, from parameter p (the first is 1).
+	 * The bounds are kept in range of SMALLINT, so they compare rather than
+	 * overflow.
+	 */
+	protected void setRanges(PreparedStatement statement, ArrayList<Range> ranges) throws SQLException {
+		setRanges(statement, ranges, 1);
+	}
+
+	protected void setRanges(PreparedStatement statement, ArrayList<Range> ranges, int p) throws SQLException {
+		for (Range r : ranges) {
+			statement.setInt(p++, Math.max(r.min(), Short.MIN_VALUE));
+			statement.setInt(p++, Math.min(r.max(), Short.MAX_VALUE));
+		}
+	}
+
+	/* aggregate
+	 * 
+	 * The count, sum, minimum and maximum by group (see Database.aggregate),
+	 * from a GROUP BY in the database: only a row per group comes back. Time
+	 * groups are grouped by timestamp ID in SQL, and the timestamps added up
+	 * into months or seasons here; blocks are grouped by the location's row
+	 * and column divided by the block size.
+	 */
+	public Aggregate aggregate(Aggregate.Group group, int blockSize,
+			Range time, Range rows, Range cols, Range values) {
+
+		time = Range.orAll(time);
+		rows = Range.orAll(rows);
+		cols = Range.orAll(cols);
+		values = Range.orAll(values);
+
+		Aggregate a = newAggregate(group, blockSize);
+		boolean byBlock = (group == Aggregate.Group.BLOCK);
+
+		ArrayList<Range> ranges = new ArrayList<Range>();
+		String where = where(time, rows, cols, values, ranges);
+		if (where == null) return a.finish();
+
+		String by = byBlock ?
+				"L.ROW / " + a.blockSize() + ", L.COL / " + a.blockSize() :
+				"V.TIMESTAMPID";
+
+		String join = "";
+		if (byBlock || !rows.isAll() || !cols.isAll()) {
+			join = " JOIN " + Table.LOCATIONS.name() + " L ON V.LOCATIONID = L.ID";
+		}
+
+		Connection c = borrow();
+
+		try {
+			// Each partition in the time range is grouped on its own; the
+			// groups are added together here.
+			for (String table : vectorTables(time)) {
+
+				String query = "SELECT " + by + ", COUNT(*), SUM(V.VALUE), MIN(V.VALUE), MAX(V.VALUE) FROM " +
+						table + " V" + join + where + " GROUP BY " + by;
+
+				PreparedStatement statement = c.prepareStatement(query);
+				setRanges(statement, ranges);
+
+				ResultSet rs = statement.executeQuery();
+				int n = byBlock ? 3 : 2;
+
+				while (rs.next()) {
+					int key = byBlock ?
+							a.key(0, rs.getInt(1) * a.blockSize(), rs.getInt(2) * a.blockSize()) :
+							a.key(rs.getInt(1), 0, 0);
+
+					a.add(key, rs.getLong(n), rs.getDouble(n + 1), rs.getInt(n + 2), rs.getInt(n + 3));
+				}
+
+				rs.close();
+				statement.close();
+			}
+		} catch(SQLException e) {
+			Tools.errorMessage("DatabaseH2", "aggregate", dbPath + dbName + " query failed", e);
+		} finally {
+			giveBack(c);
+		}
+
+		return a.finish();
+	}
+
+	/* getChannelValues
+	 * 
+	 * Every channel's value at a cell and timestamp ID (see
+	 * Database.getChannelValues), from one query on the time and location
+	 * indexes.
+	 */
+	public int[] getChannelValues(int timestampID, int row, int col) {
+
+		int[] values = new int[getChannels().size()];
+		java.util.Arrays.fill(values, NODATA);
+
+		ArrayList<String> tables = vectorTables(new Range(timestampID));
+		String query = union(tables, "SELECT V.CHANNEL, V.VALUE FROM ", " V JOIN " + Table.LOCATIONS.name() +
+				" L ON V.LOCATIONID = L.ID WHERE V.TIMESTAMPID = ? AND L.ROW = ? AND L.COL = ?");
+
+		if (values.length == 0 || query == null) return values;
+
+		Connection c = borrow();
+
+		try {
+			PreparedStatement statement = c.prepareStatement(query);
+			for (int i = 0; i < tables.size(); i++) {
+				statement.setInt(i * 3 + 1, timestampID);
+				statement.setInt(i * 3 + 2, row);
+				statement.setInt(i * 3 + 3, col);
+			}
+
+			ResultSet rs = statement.executeQuery();
+			while (rs.next()) {
+				int id = rs.getInt(1);
+				if (id >= 1 && id <= values.length) values[id - 1] = rs.getInt(2);
+			}
+
+			rs.close();
+			statement.close();
+		} catch(SQLException e) {
+			Tools.errorMessage("DatabaseH2", "getChannelValues", dbPath + dbName + " query failed", e);
+		} finally {
+			giveBack(c);
+		}
+
+		return values;
+	}
+
+	/* getVectorsInTimeRange
+	 * 
+	 * Return all the vectors in the database in the range of indices, from a
+	 * single query.
+	 */
+	public ArrayList<GriddedVector> getVectors( int first, int last ) {
+		return getVectors(new Range(first, last), null, null, null);
 	}	
 
 	public int numberOfTimestamps() { return metadata.timestamps; }	
@@ -584,6 +1976,13 @@ public class DatabaseH2 extends Database {
 		Tools.statusMessage("  Actual Vector entries    = " + metadata.vectors);
 		double percent = 100.0 * (double) metadata.vectors / total;
 		Tools.statusMessage("  Percent stored    = " + percent );
+		if (!getChannels().isEmpty()) {
+			Tools.statusMessage("  Channels          = " + String.join(", ", getChannels()));
+		}
+		if (!partitions().isEmpty()) {
+			Tools.statusMessage("  Partitions        = " + partitions().size() + " (" +
+					partitioning.toString().toLowerCase() + ")");
+		}
 		Tools.statusMessage("  ========================================");
 	}
 }
@@ -0,0 +1,301 @@
+package helper_classes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/* DatabaseOffHeapSchema
+ *
+ * An in-memory database that keeps the vectors outside of the Java heap, so
+ * years of data can be held without the garbage collector having to look
+ * at them.
+ *
+ * The vectors are stored as three int columns -- value, location ID and
+ * timestamp ID -- in fixed-size chunks of direct (off-heap) memory, added as
+ * they're needed. A vector is 12 bytes, rather than a GriddedVector object
+ * and its references. Each timestamp keeps a list of the runs of rows holding
+ * its vectors (normally one run: a day is stored in one go), so the vectors
+ * at a time are found without searching.
+ *
+ * Locations and timestamps are few, and kept on the heap. Like the RAM
+ * database, it all disappears when the program ends.
+ */
+
+public class DatabaseOffHeapSchema extends Database {
+
+	// Rows in a chunk, and bytes per column value.
+	static final int CHUNK_ROWS = 1 << 20;
+	static final int BYTES = 4;
+
+	// The columns, chunk by chunk.
+	ArrayList<ByteBuffer> valueChunks = new ArrayList<ByteBuffer>();
+	ArrayList<ByteBuffer> locationChunks = new ArrayList<ByteBuffer>();
+	ArrayList<ByteBuffer> timestampChunks = new ArrayList<ByteBuffer>();
+
+	// Vectors stored.
+	long size = 0;
+
+	ArrayList<GriddedLocation> locations = new ArrayList<GriddedLocation>();
+	ArrayList<Timestamp> timestamps = new ArrayList<Timestamp>();
+
+	// For each timestamp ID, [id - 1], the runs of rows holding its vectors:
+	// pairs of (first row, row count).
+	ArrayList<long[]> runs = new ArrayList<long[]>();
+
+	public DatabaseOffHeapSchema(String path, String name) {
+		super(path, name);
+		metadata = new Metadata();
+	}
+
+	public boolean connect() {
+		status = Status.CONNECTED;
+		return true;
+	}
+
+	public boolean connectReadOnly() {
+		status = Status.CONNECTED_READ_ONLY;
+		return true;
+	}
+
+	public void disconnect() {
+		status = Status.DISCONNECTED;
+	}
+
+	/*
+	 * clean
+	 *
+	 * Empty the database. The memory is given back when the garbage collector
+	 * gets around to the buffers.
+	 */
+	public void clean() {
+		valueChunks.clear();
+		locationChunks.clear();
+		timestampChunks.clear();
+		size = 0;
+
+		locations.clear();
+		timestamps.clear();
+		runs.clear();
+
+		metadata = new Metadata(metadata.rows, metadata.cols, 0, 0, 0);
+	}
+
+	//
+	// STORAGE METHODS
+	//
+
+	public void storeMetadata(Metadata m) {
+		metadata = m;
+	}
+
+	public int storeTimestamp(Timestamp t) {
+		timestamps.add(t);
+		runs.add(new long[0]);
+		metadata.timestamps = timestamps.size();
+		return timestamps.size();
+	}
+
+	public int storeLocation(GriddedLocation loc) {
+		locations.add(loc);
+		metadata.locations = locations.size();
+		return locations.size();
+	}
+
+	public void storeVector(GriddedVector v) {
+		if (v == null) return;
+		storeVector(v.data(), v.location.id, v.timestampID);
+	}
+
+	/*
+	 * storeFrame
+	 *
+	 * Store the cells of a frame that hold data, straight from its value array.
+	 */
+	public void storeFrame(GridFrame frame) {
+
+		int[] values = frame.values();
+		int timeID = frame.timestampID();
+
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == NODATA) continue;
+			storeVector(values[i], frame.location(i).id, timeID);
+		}
+	}
+
+	protected void storeVector(int value, int locationID, int timestampID) {
+
+		if (timestampID < 1 || timestampID > timestamps.size()) {
+			Tools.warningMessage("DatabaseOffHeapSchema::storeVector: unknown timestamp ID " +
+					timestampID + ", vector not stored");
+			return;
+		}
+
+		// Start a new chunk?
+		if (size == (long) valueChunks.size() * CHUNK_ROWS) {
+			valueChunks.add(newChunk());
+			locationChunks.add(newChunk());
+			timestampChunks.add(newChunk());
+		}
+
+		int chunk = (int) (size / CHUNK_ROWS);
+		int offset = (int) (size % CHUNK_ROWS) * BYTES;
+
+		valueChunks.get(chunk).putInt(offset, value);
+		locationChunks.get(chunk).putInt(offset, locationID);
+		timestampChunks.get(chunk).putInt(offset, timestampID);
+
+		addToRun(timestampID, size);
+
+		size++;
+		metadata.vectors++;
+	}
+
+	protected ByteBuffer newChunk() {
+		return ByteBuffer.allocateDirect(CHUNK_ROWS * BYTES).order(ByteOrder.nativeOrder());
+	}
+
+	/*
+	 * addToRun
+	 *
+	 * Record that a row holds a vector for the timestamp: extend the
+	 * timestamp's last run if the row follows on from it, else start another.
+	 */
+	protected void addToRun(int timestampID, long row) {
+
+		long[] r = runs.get(timestampID - 1);
+		int n = r.length;
+
+		if (n > 0 && r[n - 2] + r[n - 1] == row) {
+			r[n - 1]++;
+			return;
+		}
+
+		long[] longer = Arrays.copyOf(r, n + 2);
+		longer[n] = row;
+		longer[n + 1] = 1;
+		runs.set(timestampID - 1, longer);
+	}
+
+	//
+	// RETRIEVAL METHODS
+	//
+
+	public Metadata getMetadata() { return metadata; }
+
+	public Timestamp getTimestamp(int id) {
+		return (id < 1 || id > timestamps.size()) ? null : timestamps.get(id - 1);
+	}
+
+	public GriddedLocation getLocation(int id) {
+		return (id < 1 || id > locations.size()) ? null : locations.get(id - 1);
+	}
+
+	public int numberOfTimestamps() { return timestamps.size(); }
+	public int numberOfVectors() { return (int) size; }
+	public long vectorCount() { return size; }
+
+	public ArrayList<GriddedLocation> getLocations() { return locations; }
+	public ArrayList<Timestamp> getTimestamps() { return timestamps; }
+
+	public int rows() { return metadata.rows; }
+	public int cols() { return metadata.cols; }
+
+	/*
+	 * memoryUsed
+	 *
+	 * Bytes of off-heap memory held by the columns.
+	 */
+	public long memoryUsed() {
+		return 3L * valueChunks.size() * CHUNK_ROWS * BYTES;
+	}
+
+	/*
+	 * getVectorsAtTime
+	 *
+	 * Return all the vectors at a timestamp ID.
+	 */
+	public ArrayList<GriddedVector> getVectorsAtTime(int timeID) {
+		return cursor(new Range(timeID), null, null, null).toList();
+	}
+
+	/*
+	 * getVectors
+	 *
+	 * Return all the vectors in a range of timestamp IDs.
+	 */
+	public ArrayList<GriddedVector> getVectors(int first, int last) {
+		return cursor(new Range(first, last), null, null, null).toList();
+	}
+
+	/*
+	 * cursor
+	 *
+	 * Stream the vectors in ranges of timestamp ID, row, column and value.
+	 * Only the rows of the timestamps in range are read, and the value and
+	 * location are checked before a vector is created.
+	 */
+	public VectorCursor cursor(Range time, Range rows, Range cols, Range values) {
+
+		time = Range.orAll(time);
+		final Range r = Range.orAll(rows);
+		final Range c = Range.orAll(cols);
+		final Range v = Range.orAll(values);
+
+		final int first = Math.max(time.min(), 1);
+		final int last = Math.min(time.max(), timestamps.size());
+
+		return new VectorCursor() {
+			int timeID = first;
+			int run = 0;
+			long row = -1;
+			long end = -1;
+
+			protected GriddedVector advance() {
+				while (true) {
+
+					// Next run of rows: in this timestamp, or the next one.
+					while (row >= end) {
+						if (timeID > last) return null;
+
+						long[] rr = runs.get(timeID - 1);
+						if (run * 2 < rr.length) {
+							row = rr[run * 2];
+							end = row + rr[run * 2 + 1];
+							run++;
+						} else {
+							timeID++;
+							run = 0;
+						}
+					}
+
+					int chunk = (int) (row / CHUNK_ROWS);
+					int offset = (int) (row % CHUNK_ROWS) * BYTES;
+					row++;
+
+					int value = valueChunks.get(chunk).getInt(offset);
+					if (!v.contains(value)) continue;
+
+					GriddedLocation loc = getLocation(locationChunks.get(chunk).getInt(offset));
+					if (!r.isAll() || !c.isAll()) {
+						if (loc == null || !r.contains(loc.row()) || !c.contains(loc.col())) continue;
+					}
+
+					return new GriddedVector(value, loc, timestampChunks.get(chunk).getInt(offset));
+				}
+			}
+		};
+	}
+
+	public void status() {
+		Tools.statusMessage("Database name = " + dbName + "  Status: "
+				+ status.toString());
+		Tools.statusMessage("Timestamp entries = " + timestamps.size());
+		Tools.statusMessage("Location entries  = " + locations.size());
+		Tools.statusMessage("Vector entries    = " + size);
+		Tools.statusMessage("Rows              = " + metadata.rows);
+		Tools.statusMessage("Cols              = " + metadata.cols);
+		Tools.statusMessage("Off-heap memory   = " + (memoryUsed() >> 20) + " MB in " +
+				valueChunks.size() + " chunks");
+	}
+}
@@ -0,0 +1,535 @@
+package helper_classes;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+/* DatabasePerst
+ *
+ * An embedded object-store database: a single file, opened in this process,
+ * with no server and no SQL. It sits between the RAM databases, which are
+ * gone when the program ends, and H2.
+ *
+ * The store is H2's MVStore (in the H2 jar we already use), a file of
+ * persistent B-trees, standing in for Perst, which isn't in our libraries.
+ * It holds these maps:
+ *
+ *   metadata     the grid size and counts, by name
+ *   timestamps   timestamp ID -> days since the epoch
+ *   locations    location ID -> row, column, lat and lon (24 bytes)
+ *   vectors      timestamp ID -> the day's vectors, 6 bytes each: location
+ *                ID and 16-bit value
+ *   byLocation   location ID << 32 | timestamp ID -> value
+ *
+ * So a day's vectors are one read from the time B-tree, and a pixel's
+ * values over time are one range of keys in the location B-tree. Vectors
+ * are gathered in memory by timestamp and written, with the metadata, by
+ * flush, which commits the file: a run that stops leaves the database as it
+ * was at the last flush (normally the end of the last day), and can be
+ * carried on from there (see resume).
+ *
+ * Like the other non-SQL databases, it holds a single channel.
+ */
+
+public class DatabasePerst extends Database {
+
+	// The file is the path and name, plus this.
+	public static final String EXTENSION = ".mv";
+
+	// Bytes in a vector record and a location record.
+	static final int VECTOR_BYTES = 6;
+	static final int LOCATION_BYTES = 24;
+
+	// Boxes of at most this many cells are read through the location index
+	// rather than day by day.
+	static final int maxIndexCells = 256;
+
+	MVStore store = null;
+	MVMap<String, Integer> metadataMap;
+	MVMap<Integer, Double> timestampMap;
+	MVMap<Integer, byte[]> locationMap;
+	MVMap<Integer, byte[]> vectorMap;
+	MVMap<Long, Short> locationIndex;
+
+	ArrayList<GriddedLocation> locations = new ArrayList<GriddedLocation>();
+	ArrayList<Timestamp> timestamps = new ArrayList<Timestamp>();
+
+	// Location IDs by [row * cols + col], for the location index. Built when
+	// first needed.
+	int[] locationIDs = null;
+
+	// Vectors stored but not yet written to the store, by timestamp ID.
+	TreeMap<Integer, ByteBuffer> pending = new TreeMap<Integer, ByteBuffer>();
+
+	// Warn about the first value that doesn't fit in 16 bits, not every one.
+	boolean rangeWarning = true;
+
+	public DatabasePerst(String path, String name) {
+		super(path, name);
+		metadata = new Metadata();
+	}
+
+	public String fileName() {
+		return dbPath + dbName + EXTENSION;
+	}
+
+	/*
+	 * connect
+	 *
+	 * Open the database file for writing, creating it if it isn't there.
+	 */
+	public boolean connect() {
+		return open(false);
+	}
+
+	/*
+	 * connectReadOnly
+	 *
+	 * Open an existing database file for reading.
+	 */
+	public boolean connectReadOnly() {
+		return open(true);
+	}
+
+	protected boolean open(boolean readOnly) {
+
+		try {
+			MVStore.Builder builder = new MVStore.Builder().fileName(fileName()).autoCommitDisabled();
+			if (readOnly) builder.readOnly();
+			store = builder.open();
+		} catch (Exception e) {
+			Tools.errorMessage("DatabasePerst", "open", "Could not open " + fileName(), e);
+			return false;
+		}
+
+		metadataMap = store.openMap("metadata");
+		timestampMap = store.openMap("timestamps");
+		locationMap = store.openMap("locations");
+		vectorMap = store.openMap("vectors");
+		locationIndex = store.openMap("byLocation");
+
+		readMetadata();
+
+		status = readOnly ? Status.CONNECTED_READ_ONLY : Status.CONNECTED;
+
+		return true;
+	}
+
+	/*
+	 * disconnect
+	 *
+	 * Write anything still waiting and close the file.
+	 */
+	public void disconnect() {
+
+		if (store == null) return;
+
+		if (status == Status.CONNECTED) flush();
+
+		try {
+			store.close();
+		} catch (Exception e) {
+			Tools.warningMessage("Unable to close database: " + fileName());
+			status = Status.UNKNOWN;
+			return;
+		}
+
+		store = null;
+		status = Status.DISCONNECTED;
+	}
+
+	/*
+	 * clean
+	 *
+	 * Empty the database.
+	 */
+	public void clean() {
+
+		metadataMap.clear();
+		timestampMap.clear();
+		locationMap.clear();
+		vectorMap.clear();
+		locationIndex.clear();
+
+		locations.clear();
+		timestamps.clear();
+		locationIDs = null;
+		pending.clear();
+
+		metadata = new Metadata(metadata.rows, metadata.cols, 0, 0, 0);
+	}
+
+	/*
+	 * resume
+	 *
+	 * Carry on adding to the database as it was last flushed. Returns the
+	 * number of timestamps already stored.
+	 */
+	public int resume() {
+		readMetadata();
+		return timestamps.size();
+	}
+
+	/*
+	 * readMetadata
+	 *
+	 * Read the metadata, timestamps and locations from the store. They're
+	 * few, and kept in memory.
+	 */
+	protected void readMetadata() {
+
+		metadata = new Metadata(value("rows"), value("cols"), value("timestamps"),
+				value("locations"), value("vectors"));
+
+		timestamps.clear();
+		for (int id = 1; id <= metadata.timestamps; id++) {
+			Double days = timestampMap.get(id);
+			timestamps.add((days == null) ? null : new Timestamp(id, days));
+		}
+
+		locations.clear();
+		for (int id = 1; id <= metadata.locations; id++) {
+			byte[] b = locationMap.get(id);
+			if (b == null) {
+				locations.add(null);
+				continue;
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(b);
+			locations.add(new GriddedLocation(id, buffer.getInt(), buffer.getInt(),
+					buffer.getDouble(), buffer.getDouble()));
+		}
+
+		locationIDs = null;
+	}
+
+	protected int value(String name) {
+		Integer i = metadataMap.get(name);
+		return (i == null) ? 0 : i;
+	}
+
+	//
+	// STORAGE METHODS
+	//
+
+	public void storeMetadata(Metadata m) {
+		metadata = m;
+		writeMetadata();
+	}
+
+	protected void writeMetadata() {
+		metadataMap.put("rows", metadata.rows);
+		metadataMap.put("cols", metadata.cols);
+		metadataMap.put("timestamps", metadata.timestamps);
+		metadataMap.put("locations", metadata.locations);
+		metadataMap.put("vectors", metadata.vectors);
+	}
+
+	public int storeTimestamp(Timestamp t) {
+		timestamps.add(t);
+		metadata.timestamps = timestamps.size();
+		timestampMap.put(timestamps.size(), t.days());
+		return timestamps.size();
+	}
+
+	public int storeLocation(GriddedLocation loc) {
+		locations.add(loc);
+		metadata.locations = locations.size();
+
+		ByteBuffer b = ByteBuffer.allocate(LOCATION_BYTES);
+		b.putInt(loc.row()).putInt(loc.col()).putDouble(loc.lat()).putDouble(loc.lon());
+		locationMap.put(locations.size(), b.array());
+
+		locationIDs = null;
+		return locations.size();
+	}
+
+	public void storeVector(GriddedVector v) {
+		if (v == null) return;
+		storeVector(v.data(), v.location.id, v.timestampID);
+	}
+
+	/*
+	 * storeFrame
+	 *
+	 * Store the cells of a frame that hold data, straight from its value array.
+	 */
+	public void storeFrame(GridFrame frame) {
+
+		int[] values = frame.values();
+		int timeID = frame.timestampID();
+
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == NODATA) continue;
+			storeVector(values[i], frame.location(i).id, timeID);
+		}
+
+		flush();
+	}
+
+	protected void storeVector(int value, int locationID, int timestampID) {
+
+		if (timestampID < 1 || timestampID > timestamps.size()) {
+			Tools.warningMessage("DatabasePerst::storeVector: unknown timestamp ID " +
+					timestampID + ", vector not stored");
+			return;
+		}
+
+		if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+			if (rangeWarning && value != NODATA) {
+				Tools.warningMessage("DatabasePerst::storeVector: value " + value +
+						" doesn't fit in 16 bits, vector not stored");
+				rangeWarning = false;
+			}
+			return;
+		}
+
+		ByteBuffer b = pending.get(timestampID);
+		if (b == null) {
+			b = ByteBuffer.allocate(VECTOR_BYTES * 1024);
+			pending.put(timestampID, b);
+		}
+		else if (b.remaining() < VECTOR_BYTES) {
+			b.flip();
+			b = ByteBuffer.allocate(b.capacity() * 2).put(b);
+			pending.put(timestampID, b);
+		}
+
+		b.putInt(locationID).putShort((short) value);
+
+		locationIndex.put(key(locationID, timestampID), (short) value);
+
+		metadata.vectors++;
+	}
+
+	protected static long key(int locationID, int timestampID) {
+		return ((long) locationID << 32) | timestampID;
+	}
+
+	/*
+	 * flush
+	 *
+	 * Write the vectors gathered so far and the metadata, and commit.
+	 */
+	public void flush() {
+
+		if (store == null || status != Status.CONNECTED) return;
+
+		writePending();
+		writeMetadata();
+		store.commit();
+	}
+
+	/*
+	 * writePending
+	 *
+	 * Add the vectors gathered in memory to their days' records.
+	 */
+	protected void writePending() {
+
+		for (Map.Entry<Integer, ByteBuffer> e : pending.entrySet()) {
+			ByteBuffer b = e.getValue();
+
+			byte[] day = vectorMap.get(e.getKey());
+			int old = (day == null) ? 0 : day.length;
+
+			byte[] records = (day == null) ? new byte[b.position()] : Arrays.copyOf(day, old + b.position());
+			System.arraycopy(b.array(), 0, records, old, b.position());
+
+			vectorMap.put(e.getKey(), records);
+		}
+
+		pending.clear();
+	}
+
+	//
+	// RETRIEVAL METHODS
+	//
+
+	public Metadata getMetadata() { return metadata; }
+
+	public Timestamp getTimestamp(int id) {
+		return (id < 1 || id > timestamps.size()) ? null : timestamps.get(id - 1);
+	}
+
+	public GriddedLocation getLocation(int id) {
+		return (id < 1 || id > locations.size()) ? null : locations.get(id - 1);
+	}
+
+	public int numberOfTimestamps() { return timestamps.size(); }
+	public int numberOfVectors() { return metadata.vectors; }
+
+	public ArrayList<GriddedLocation> getLocations() { return locations; }
+	public ArrayList<Timestamp> getTimestamps() { return timestamps; }
+
+	public int rows() { return metadata.rows; }
+	public int cols() { return metadata.cols; }
+
+	/*
+	 * getVectorsAtTime
+	 *
+	 * Return all the vectors at a timestamp ID.
+	 */
+	public ArrayList<GriddedVector> getVectorsAtTime(int timeID) {
+		return cursor(new Range(timeID), null, null, null).toList();
+	}
+
+	/*
+	 * getVectors
+	 *
+	 * Return all the vectors in a range of timestamp IDs.
+	 */
+	public ArrayList<GriddedVector> getVectors(int first, int last) {
+		return cursor(new Range(first, last), null, null, null).toList();
+	}
+
+	/*
+	 * cursor
+	 *
+	 * Stream the vectors in ranges of timestamp ID, row, column and value. A
+	 * small box of cells is read from the location index, a cell at a time
+	 * (in time order for each cell); anything else a day at a time.
+	 */
+	public VectorCursor cursor(Range time, Range rows, Range cols, Range values) {
+
+		writePending();
+
+		time = Range.orAll(time);
+		final Range r = Range.orAll(rows);
+		final Range c = Range.orAll(cols);
+		final Range v = Range.orAll(values);
+
+		final int first = Math.max(time.min(), 1);
+		final int last = Math.min(time.max(), timestamps.size());
+
+		if (!r.isAll() && !c.isAll() &&
+				(long) (r.max() - r.min() + 1) * (c.max() - c.min() + 1) <= maxIndexCells) {
+			return cellCursor(first, last, r, c, v);
+		}
+
+		return new VectorCursor() {
+			int timeID = first - 1;
+			ByteBuffer day = null;
+
+			protected GriddedVector advance() {
+				while (true) {
+
+					// The next day's records.
+					while (day == null || !day.hasRemaining()) {
+						if (timeID >= last) return null;
+						timeID++;
+						byte[] b = vectorMap.get(timeID);
+						day = (b == null) ? null : ByteBuffer.wrap(b);
+					}
+
+					int locationID = day.getInt();
+					int value = day.getShort();
+					if (!v.contains(value)) continue;
+
+					GriddedLocation loc = getLocation(locationID);
+					if (!r.isAll() || !c.isAll()) {
+						if (loc == null || !r.contains(loc.row()) || !c.contains(loc.col())) continue;
+					}
+
+					return new GriddedVector(value, loc, timeID);
+				}
+			}
+		};
+	}
+
+	/*
+	 * cellCursor
+	 *
+	 * Stream the vectors in a box of cells from the location index: for each
+	 * cell, the range of keys from its first timestamp ID to its last.
+	 */
+	protected VectorCursor cellCursor(final int first, final int last,
+			final Range rows, final Range cols, final Range values) {
+
+		final int[] ids = locationIDs();
+		final int gridCols = metadata.cols;
+
+		final int r0 = Math.max(rows.min(), 0), r1 = Math.min(rows.max(), metadata.rows - 1);
+		final int c0 = Math.max(cols.min(), 0), c1 = Math.min(cols.max(), gridCols - 1);
+
+		// Nothing left of the box on the grid, or no days.
+		if (r0 > r1 || c0 > c1 || first > last) {
+			return VectorCursor.of(new ArrayList<GriddedVector>().iterator(), null, null, null);
+		}
+
+		return new VectorCursor() {
+			int row = r0;
+			int col = c0 - 1;
+			int id = 0;
+			GriddedLocation loc = null;
+			Cursor<Long, Short> cell = null;
+
+			protected GriddedVector advance() {
+				while (true) {
+
+					// The next cell's run of keys.
+					while (cell == null || !cell.hasNext()) {
+						if (++col > c1) {
+							col = c0;
+							if (++row > r1) return null;
+						}
+						id = ids[row * gridCols + col];
+						if (id == 0) continue;
+
+						loc = getLocation(id);
+						cell = locationIndex.cursor(key(id, first));
+					}
+
+					long k = cell.next();
+					int timeID = (int) k;
+					if ((int) (k >>> 32) != id || timeID > last) {
+						cell = null;
+						continue;
+					}
+
+					int value = cell.getValue();
+					if (values.contains(value)) return new GriddedVector(value, loc, timeID);
+				}
+			}
+		};
+	}
+
+	/*
+	 * locationIDs
+	 *
+	 * The location IDs by [row * cols + col], 0 where there isn't one.
+	 */
+	protected int[] locationIDs() {
+
+		if (locationIDs != null) return locationIDs;
+
+		int[] ids = new int[Math.max(metadata.rows * metadata.cols, 0)];
+
+		for (int id = 1; id <= locations.size(); id++) {
+			GriddedLocation loc = locations.get(id - 1);
+			if (loc == null) continue;
+			int r = loc.row(), c = loc.col();
+			if (r < 0 || r >= metadata.rows || c < 0 || c >= metadata.cols) continue;
+			ids[r * metadata.cols + c] = id;
+		}
+
+		locationIDs = ids;
+		return ids;
+	}
+
+	public void status() {
+		Tools.statusMessage("Database name = " + dbName + "  Status: "
+				+ status.toString());
+		Tools.statusMessage("Database file     = " + fileName());
+		Tools.statusMessage("Timestamp entries = " + timestamps.size());
+		Tools.statusMessage("Location entries  = " + locations.size());
+		Tools.statusMessage("Vector entries    = " + metadata.vectors);
+		Tools.statusMessage("Rows              = " + metadata.rows);
+		Tools.statusMessage("Cols              = " + metadata.cols);
+	}
+}
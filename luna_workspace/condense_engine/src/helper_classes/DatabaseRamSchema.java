@@ -1,14 +1,23 @@
 package helper_classes;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 
 /* Database
- * 
- * Database emulator: for sensor vector data, locations, timestamps, and metadata. 
- * 
+ *
+ * Database emulator: for sensor vector data, locations, timestamps, and metadata.
+ *
  * Since this database stores everything in RAM, it is transitory -- as soon as the
  * program ends the database will cease to exist.
+ *
+ * The vectors aren't kept as objects. Each timestamp has a bucket of primitive
+ * arrays (location IDs and values) and each location a bucket of the timestamp
+ * IDs and values it has data for, so the vectors at a time or a location are
+ * found directly instead of by searching everything. Vectors are created as
+ * they're retrieved.
+ *
+ * Timestamp and location IDs are assigned in the order they're stored,
+ * starting at 1, as in the other databases.
  */
 
 public class DatabaseRamSchema extends Database {
@@ -20,18 +29,40 @@ public class DatabaseRamSchema extends Database {
 
 	ArrayList<GriddedLocation> locations;
 	ArrayList<Timestamp> timestamps;
-	ArrayList<GriddedVector> vectors;
+
+	// Vectors by timestamp: entry [id - 1] holds (location ID, value) pairs.
+	ArrayList<Bucket> byTime;
+
+	// Vectors by location: entry [id - 1] holds (timestamp ID, value) pairs.
+	ArrayList<Bucket> byLocation;
+
+	/* Bucket
+	 *
+	 * A growable list of (key, value) int pairs in two primitive arrays.
+	 */
+	static class Bucket {
+		int[] keys = new int[16];
+		int[] values = new int[16];
+		int size = 0;
+
+		void add(int key, int value) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			keys[size] = key;
+			values[size] = value;
+			size++;
+		}
+	}
 
     public DatabaseRamSchema(String path, String name) {
     	super(path, name);
-		metadata = new Metadata();
-		timestamps = new ArrayList<Timestamp>();
-		locations = new ArrayList<GriddedLocation>();
-		vectors = new ArrayList<GriddedVector>();
+    	clean();
 	}
 
 	public DatabaseRamSchema(String name) {
-		super("", name);
+		this("", name);
 	}
 
 	public boolean connect() {
@@ -48,34 +79,103 @@ public class DatabaseRamSchema extends Database {
 		status = Status.DISCONNECTED;
     }
 
-	public void clean() {};
-	
+	/*
+	 * clean
+	 *
+	 * Empty the database.
+	 */
+	public void clean() {
+		int rows = (metadata == null) ? 0 : metadata.rows;
+		int cols = (metadata == null) ? 0 : metadata.cols;
+
+		metadata = new Metadata(rows, cols, 0, 0, 0);
+		timestamps = new ArrayList<Timestamp>();
+		locations = new ArrayList<GriddedLocation>();
+		byTime = new ArrayList<Bucket>();
+		byLocation = new ArrayList<Bucket>();
+	}
+
     protected void writeCheck(String methodName) {
     	if (status != Status.CONNECTED) {
-			Tools.errorMessage("DatabaseRamSchema", methodName, 
+			Tools.errorMessage("DatabaseRamSchema", methodName,
 					": database is not open for writing", new Exception());
 			Tools.exit(1);
 		}
     }
-    
+
     //
     // STORAGE METHODS
     //
-    
+
 	public void storeMetadata( Metadata m ) {
 		metadata = m;
 	}
-	
-	public void store(Timestamp t) {timestamps.add(t);}
-	public void store(ArrayList<GriddedLocation> locs) {locations.addAll(locs);}
-	
+
+	public int storeTimestamp(Timestamp t) {
+		timestamps.add(t);
+		byTime.add(new Bucket());
+		metadata.timestamps = timestamps.size();
+		return timestamps.size();
+	}
+
+	public int storeLocation(GriddedLocation loc) {
+		locations.add(loc);
+		byLocation.add(new Bucket());
+		metadata.locations = locations.size();
+		return locations.size();
+	}
+
+	/*
+	 * storeVector
+	 *
+	 * Store a vector. Its location and timestamp must already be in the
+	 * database (they have IDs).
+	 */
+	public void storeVector(GriddedVector v) {
+		if (v == null) return;
+		storeVector(v.data(), v.location.id, v.timestampID);
+	}
+
+	/*
+	 * storeFrame
+	 *
+	 * Store the cells of a frame that hold data, straight from its value array.
+	 */
+	public void storeFrame(GridFrame frame) {
+
+		int[] values = frame.values();
+		int timeID = frame.timestampID();
+
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == NODATA) continue;
+			storeVector(values[i], frame.location(i).id, timeID);
+		}
+	}
+
+	protected void storeVector(int value, int locationID, int timestampID) {
+
+		if (timestampID < 1 || timestampID > byTime.size() ||
+			locationID < 1 || locationID > byLocation.size()) {
+			Tools.warningMessage("DatabaseRamSchema::storeVector: unknown timestamp ID " +
+					timestampID + " or location ID " + locationID + ", vector not stored");
+			return;
+		}
+
+		byTime.get(timestampID - 1).add(locationID, value);
+		byLocation.get(locationID - 1).add(timestampID, value);
+		metadata.vectors++;
+	}
+
+	public void store(Timestamp t) {storeTimestamp(t);}
+	public void store(ArrayList<GriddedLocation> locs) {
+		for (GriddedLocation loc : locs) loc.id = storeLocation(loc);
+	}
+
 	public int store(GriddedLocation loc) {
-		locations.add( loc );	
-		metadata.locations++;
-		return metadata.locations;
+		return storeLocation(loc);
 	}
-	
-	public void store(GriddedVector v) {vectors.add(v);}
+
+	public void store(GriddedVector v) {storeVector(v);}
 
 	/*
 	 * store a vector array
@@ -91,133 +191,179 @@ public class DatabaseRamSchema extends Database {
 	//
 	// RETRIEVAL METHODS
 	//
-	
-	public Metadata getMetadata() { 
+
+	public Metadata getMetadata() {
 		updateMetadata();
 		return metadata;
 	}
-	
+
 	protected void updateMetadata() {
-		metadata.vectors = vectors.size();
 		metadata.timestamps = timestamps.size();
-		metadata.locations = locations.size();				
+		metadata.locations = locations.size();
+	}
+
+	public Timestamp getTimestamp(int id) {
+		return (id < 1 || id > timestamps.size()) ? null : timestamps.get(id - 1);
+	}
+
+	public GriddedLocation getLocation(int id) {
+		return (id < 1 || id > locations.size()) ? null : locations.get(id - 1);
 	}
-	
-	public Timestamp getTimestamp(int i) { return timestamps.get(i); }
-	
+
 	public int numberOfTimestamps() { return timestamps.size(); }
 	public ArrayList<Timestamp> getTimestamps() { return timestamps; }
 
 	public ArrayList<GriddedLocation> getLocations() { return locations; }
-	
-	public int numberOfVectors() { return vectors.size(); }
-	public ArrayList<GriddedVector> getVectors() { return vectors; }
-	
+
+	public int numberOfVectors() { return metadata.vectors; }
+
+	/*
+	 * getVectors
+	 *
+	 * All the vectors in the database.
+	 */
+	public ArrayList<GriddedVector> getVectors() {
+		return getVectors(1, timestamps.size());
+	}
+
 	public int rows() { return metadata.rows; }
 	public int cols() { return metadata.cols; }
-	
+
 	/* getVectorsAtTimestamp
-	 * 
+	 *
 	 * Return all the vectors in the database at the specified timestamp.
 	 */
 	public ArrayList<GriddedVector> getVectorsAtTimestamp( int timeID ) {
+		return getVectorsAtTime( timeID );
+	}
+
+	/* getVectorsAtTime
+	 *
+	 * Return all the vectors in the database at the specified timestamp ID.
+	 */
+	public ArrayList<GriddedVector> getVectorsAtTime( int timeID ) {
+
 		ArrayList<GriddedVector> subset = new ArrayList<GriddedVector>();
-		
-		Iterator<GriddedVector> iterator = vectors.iterator();
-        while (iterator.hasNext()) {
-            GriddedVector vector = iterator.next();
-            if (vector.timestampID == timeID) subset.add(vector);
-        }
-		
+
+		if (timeID < 1 || timeID > byTime.size()) return subset;
+
+		Bucket b = byTime.get(timeID - 1);
+		subset.ensureCapacity(b.size);
+
+		for (int i = 0; i < b.size; i++) {
+			subset.add(new GriddedVector(b.values[i], locations.get(b.keys[i] - 1), timeID));
+		}
+
 		return subset;
-	}	
+	}
 
-	
-	/* getVectorsAtTime
-	 * 
-	 * Return all the vectors in the database at the specified timestamp ID
+	/* getVectorsAtLocation
+	 *
+	 * Return all the vectors in the database at the specified location ID,
+	 * in the order they were stored.
 	 */
-	public ArrayList<GriddedVector> getVectorsAtTime( int index ) {
+	public ArrayList<GriddedVector> getVectorsAtLocation( int locationID ) {
 
 		ArrayList<GriddedVector> subset = new ArrayList<GriddedVector>();
-		
-		if (index > timestamps.size()) {
-			Tools.warningMessage("DatabaseRamSchema::getVectorsAtTimeIndex: Warning: " +
-					"Requested time index " + index +
-					" is greater than number of timestamps in database (" +
-			        timestamps.size() + "). Be sure to index from zero.");
-			
-			return subset;
+
+		if (locationID < 1 || locationID > byLocation.size()) return subset;
+
+		Bucket b = byLocation.get(locationID - 1);
+		GriddedLocation loc = locations.get(locationID - 1);
+		subset.ensureCapacity(b.size);
+
+		for (int i = 0; i < b.size; i++) {
+			subset.add(new GriddedVector(b.values[i], loc, b.keys[i]));
 		}
-		
-		
-		// Find the timestamp associated with the time index, i.e. the i-th
-		// timestamp in the database.
-		int counter = 0;
-		Iterator<Timestamp> timeIter = timestamps.iterator();
-        Timestamp t = null;
-
-        while (timeIter.hasNext()) {
-            t = timeIter.next();
-            if (counter == index) break;
-            counter++;
-        }
-		
-        // If we didn't find anything... Subset will be empty.
-        if (t == null || counter > timestamps.size()) return subset;
-        
-		subset = getVectorsAtTimestamp( t.id );
 
 		return subset;
-	}	
+	}
+
+	/* getTimeSeries
+	 *
+	 * The values at a grid cell in a range of timestamp IDs, straight from
+	 * the cell's location bucket rather than through every timestamp.
+	 */
+	public TimeSeries getTimeSeries( int row, int col, int t0, int t1 ) {
+
+		if (timeSeriesStore() != null) return super.getTimeSeries(row, col, t0, t1);
+
+		Bucket b = null;
+		for (int i = 0; i < locations.size(); i++) {
+			GriddedLocation loc = locations.get(i);
+			if (loc.row() == row && loc.col() == col) {
+				b = byLocation.get(i);
+				break;
+			}
+		}
+
+		if (b == null) return new TimeSeries(row, col, new int[0], new int[0]);
+
+		int[] ids = new int[b.size];
+		int[] values = new int[b.size];
+		int n = 0;
+
+		for (int i = 0; i < b.size; i++) {
+			if (b.keys[i] < t0 || b.keys[i] > t1) continue;
+			ids[n] = b.keys[i];
+			values[n] = b.values[i];
+			n++;
+		}
+
+		return new TimeSeries(row, col, Arrays.copyOf(ids, n), Arrays.copyOf(values, n));
+	}
 
-	
 	/* getVectorsInTimeRange
-	 * 
+	 *
 	 * Return all the vectors in the database in the range of time IDs.
 	 */
 	public ArrayList<GriddedVector> getVectors( int first, int last ) {
+		return getVectors(new Range(first, last), null, null, null);
+	}
 
-		ArrayList<GriddedVector> subset = new ArrayList<GriddedVector>();
-		
-		if (first > last || first < 0) {
-			Tools.warningMessage("DatabaseRamSchema::getVectors: Warning: " +
-					"Requested time range " + first + " to " + last +
-					" may exceed the range of the timestamps in the datbase " +
-					"or be malformed. Be sure to index from zero.");
-			
-			return subset;
-		}
-		
-		for (int day = first; day <= last; day++) {
-    		// Find the timestamp associated with the time index, i.e. the i-th
-    		// timestamp in the database.
-    		int counter = 0;
-    		Iterator<Timestamp> timeIter = timestamps.iterator();
-            Timestamp t = null;
-
-            // Find the timestamp associated with 'day' index.
-            while (timeIter.hasNext()) {
-                t = timeIter.next();
-                if (counter == day) break;
-                counter++;
-            }
-            
-            // If we've gone beyond the number of timestamps in the database, bail out.
-            if (counter > timestamps.size()) return subset;
-            
-            // If we didn't find anything (no timestamp) subset will be empty.
-            if (t == null ) continue;
-            
-            // Add any vectors we found to the subset list.
-    		subset.addAll( getVectorsAtTimestamp( t.id ));
-		}
-		return subset;
+	/* cursor
+	 *
+	 * Stream the vectors in ranges of timestamp ID, row, column and value.
+	 * Only the buckets for the timestamps in range are visited, and the
+	 * location and value are checked before a vector is created.
+	 */
+	public VectorCursor cursor(Range time, Range rows, Range cols, Range values) {
+
+		time = Range.orAll(time);
+		final Range r = Range.orAll(rows);
+		final Range c = Range.orAll(cols);
+		final Range v = Range.orAll(values);
+
+		final int first = Math.max(time.min(), 1);
+		final int last = Math.min(time.max(), byTime.size());
+
+		return new VectorCursor() {
+			int timeID = first;
+			int i = 0;
+
+			protected GriddedVector advance() {
+				for (; timeID <= last; timeID++, i = 0) {
+					Bucket b = byTime.get(timeID - 1);
+
+					while (i < b.size) {
+						int value = b.values[i];
+						GriddedLocation loc = locations.get(b.keys[i] - 1);
+						i++;
+
+						if (!v.contains(value) || !r.contains(loc.row()) || !c.contains(loc.col())) continue;
+
+						return new GriddedVector(value, loc, timeID);
+					}
+				}
+
+				return null;
+			}
+		};
 	}
 
 	public void status() {
 		updateMetadata();
-		
+
 		Tools.statusMessage("Database name = " + dbName + "  Status: "
 				+ status.toString());
 		Tools.statusMessage("Timestamp entries = " + metadata.timestamps);
@@ -226,22 +372,4 @@ public class DatabaseRamSchema extends Database {
 		Tools.statusMessage("Rows              = " + metadata.rows);
 		Tools.statusMessage("Cols              = " + metadata.cols);
 	}
-	
-	public int storeTimestamp(Timestamp t) {
-		metadata.timestamps++;		
-		return metadata.timestamps;
-	}
-
-	@Override
-	public int storeLocation(GriddedLocation loc) {
-		// TODO Auto-generated method stub
-		return 0;
-	}
-
-	@Override
-	public void storeVector(GriddedVector v) {
-		// TODO Auto-generated method stub
-		
-	}
 }
-
@@ -0,0 +1,622 @@
+package helper_classes;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/* DatabaseTileSchema
+ *
+ * File-based database that stores each timestamp's condensed pixels as one
+ * compact, columnar "day tile":
+ *
+ *     int     timestamp ID
+ *     int     number of stored pixels (n)
+ *     long[]  bitmap of the grid cells kept, (rows * cols + 63) / 64 words
+ *     short[] the n pixel values, in grid cell (row-major) order
+ *
+ * A separate index file holds the timestamp ID, file offset and length of
+ * every tile, so retrieving one day is a single seek and a single bulk read
+ * rather than a scan of every vector in the database.
+ *
+ * Values are stored as 16-bit integers (SSMI brightness temperatures are
+ * encoded as tenths of a degree K, well within range). NODATA, or anything
+ * else that won't fit, is stored as a sentinel and read back as NODATA.
+ */
+
+public class DatabaseTileSchema extends Database {
+
+	// Stored in place of NODATA (or out of range values).
+	static final short NODATA_SHORT = Short.MIN_VALUE;
+
+	// Bytes in a tile header: timestamp ID and pixel count.
+	static final int HEADER_BYTES = 8;
+
+	String metadataFilename = "";
+	String locationsFilename = "";
+	String timestampsFilename = "";
+	String tilesFilename = "";
+	String indexFilename = "";
+
+	// Output streams, when writing.
+	DataOutputStream locationsOut = null;
+	DataOutputStream timestampsOut = null;
+	DataOutputStream tilesOut = null;
+	DataOutputStream indexOut = null;
+	long tilesOffset = 0;
+
+	// Tile file, when reading.
+	RandomAccessFile tilesIn = null;
+
+	// The tile currently being assembled.
+	int tileTimestampID = -1;
+	long[] tileBitmap = null;
+	short[] tileValues = null;
+	int tileCount = 0;
+	boolean rangeWarning = true;
+
+	// Tile index: timestamp ID -> file offsets and lengths. A timestamp
+	// normally has exactly one tile, but may have more if its vectors were
+	// flushed in more than one batch.
+	HashMap<Integer, ArrayList<long[]>> tileIndex = new HashMap<Integer, ArrayList<long[]>>();
+
+	// Locations indexed by grid cell (row * cols + col), and all the timestamps.
+	GriddedLocation[] cellLocations = null;
+	ArrayList<GriddedLocation> locations = new ArrayList<GriddedLocation>();
+	ArrayList<Timestamp> timestamps = new ArrayList<Timestamp>();
+
+	public DatabaseTileSchema(String path, String name) {
+		super(path, name);
+
+		metadataFilename = path + dbName + "_metadata.db";
+		locationsFilename = path + dbName + "_locations.db";
+		timestampsFilename = path + dbName + "_timestamps.db";
+		tilesFilename = path + dbName + "_tiles.db";
+		indexFilename = path + dbName + "_tiles.idx";
+
+		metadata = new Metadata();
+
+		status = Status.DISCONNECTED;
+	}
+
+	/*
+	 * connect
+	 *
+	 * Create the database files for writing. Warning: as with the other
+	 * file-based schema, this over-writes any existing database files.
+	 */
+	public boolean connect() {
+
+		try {
+			locationsOut = openOutput(locationsFilename);
+			timestampsOut = openOutput(timestampsFilename);
+			tilesOut = openOutput(tilesFilename);
+			indexOut = openOutput(indexFilename);
+		} catch (Exception e) {
+			Tools.errorMessage("DatabaseTileSchema", "connect", "could not create database files", e);
+			return false;
+		}
+
+		metadata = new Metadata();
+		tilesOffset = 0;
+		tileTimestampID = -1;
+		tileIndex.clear();
+		locations.clear();
+		timestamps.clear();
+		cellLocations = null;
+
+		status = Status.CONNECTED;
+
+		return true;
+	}
+
+	/*
+	 * connectReadOnly
+	 *
+	 * Open the database files for reading. The metadata, locations, timestamps
+	 * and tile index are small, and are read into memory.
+	 */
+	public boolean connectReadOnly() {
+
+		try {
+			readMetadata();
+			readLocations();
+			readTimestamps();
+			readIndex();
+
+			tilesIn = new RandomAccessFile(tilesFilename, "r");
+		} catch (Exception e) {
+			Tools.errorMessage("DatabaseTileSchema", "connectReadOnly",
+					"error trying to open database file(s)", e);
+			return false;
+		}
+
+		status = Status.CONNECTED_READ_ONLY;
+
+		return true;
+	}
+
+	/*
+	 * disconnect
+	 *
+	 * Write out any tile in progress and the metadata, then close the files.
+	 */
+	public void disconnect() {
+
+		if (status == Status.CONNECTED) {
+			flush();
+
+			try {
+				DataOutputStream out = openOutput(metadataFilename);
+				out.writeInt(metadata.rows);
+				out.writeInt(metadata.cols);
+				out.writeInt(metadata.timestamps);
+				out.writeInt(metadata.locations);
+				out.writeInt(metadata.vectors);
+				out.close();
+			} catch (Exception e) {
+				Tools.errorMessage("DatabaseTileSchema", "disconnect",
+						"Could not write the metadata file", e);
+			}
+		}
+
+		try {
+			if (locationsOut != null) locationsOut.close();
+			if (timestampsOut != null) timestampsOut.close();
+			if (tilesOut != null) tilesOut.close();
+			if (indexOut != null) indexOut.close();
+			if (tilesIn != null) tilesIn.close();
+		} catch (Exception e) {
+			Tools.warningMessage("DatabaseTileSchema::disconnect: error when closing files: " + e);
+		}
+
+		locationsOut = null;
+		timestampsOut = null;
+		tilesOut = null;
+		indexOut = null;
+		tilesIn = null;
+
+		status = Status.DISCONNECTED;
+	}
+
+	/*
+	 * clean
+	 *
+	 * Any existing files are overwritten on connect, so there's nothing to do.
+	 */
+	public void clean() {};
+
+	protected DataOutputStream openOutput(String filename) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+	}
+
+	protected DataInputStream openInput(String filename) throws IOException {
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+	}
+
+	protected void writeCheck(String methodName) {
+		if (status != Status.CONNECTED) {
+			Tools.errorMessage("DatabaseTileSchema", methodName,
+					"database is not open for writing", new Exception());
+		}
+	}
+
+	//
+	// STORAGE METHODS
+	//
+
+	public void storeMetadata(Metadata m) {
+		writeCheck("storeMetadata");
+
+		metadata.rows = m.rows;
+		metadata.cols = m.cols;
+	}
+
+	public int storeLocation(GriddedLocation loc) {
+
+		if (loc == null) return 0;
+
+		writeCheck("storeLocation");
+
+		metadata.locations++;
+
+		try {
+			locationsOut.writeInt(metadata.locations);
+			locationsOut.writeInt(loc.row());
+			locationsOut.writeInt(loc.col());
+			locationsOut.writeDouble(loc.lat());
+			locationsOut.writeDouble(loc.lon());
+		} catch (Exception e) {
+			Tools.errorMessage("DatabaseTileSchema", "storeLocation",
+					"error when writing to file: " + locationsFilename, e);
+		}
+
+		return metadata.locations;
+	}
+
+	public int storeTimestamp(Timestamp t) {
+
+		if (t == null) return 0;
+
+		writeCheck("storeTimestamp");
+
+		metadata.timestamps++;
+
+		try {
+			timestampsOut.writeInt(metadata.timestamps);
+			timestampsOut.writeDouble(t.days());
+		} catch (Exception e) {
+			Tools.errorMessage("DatabaseTileSchema", "storeTimestamp",
+					"error when writing to file: " + timestampsFilename, e);
+		}
+
+		return metadata.timestamps;
+	}
+
+	/*
+	 * storeVector
+	 *
+	 * Add a vector to the tile being assembled for its timestamp. When a vector
+	 * for a different timestamp arrives, the current tile is written out first.
+	 */
+	public void storeVector(GriddedVector v) {
+
+		if (v == null) return;
+
+		writeCheck("storeVector");
+
+		storeCell(v.row() * metadata.cols + v.col(), v.data(), v.timestampID);
+	}
+
+	/*
+	 * storeFrame
+	 *
+	 * A frame is already in cell order: copy its kept values straight into
+	 * the tile.
+	 */
+	public void storeFrame(GridFrame frame) {
+
+		writeCheck("storeFrame");
+
+		int[] values = frame.values();
+		int timestampID = frame.timestampID();
+
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == NODATA) continue;
+			storeCell(i, values[i], timestampID);
+		}
+
+		flush();
+	}
+
+	/*
+	 * storeCell
+	 *
+	 * Add one grid cell's value to the tile for its timestamp.
+	 */
+	protected void storeCell(int cell, int value, int timestampID) {
+
+		if (timestampID != tileTimestampID) {
+			flush();
+			startTile(timestampID);
+		}
+
+		int word = cell >>> 6;
+		long bit = 1L << (cell & 63);
+
+		// A new cell? Count it.
+		if ((tileBitmap[word] & bit) == 0) {
+			tileBitmap[word] |= bit;
+			tileCount++;
+			metadata.vectors++;
+		}
+
+		tileValues[cell] = toShort(value);
+	}
+
+	/*
+	 * flush
+	 *
+	 * Write the tile in progress, if it has anything in it.
+	 */
+	public void flush() {
+
+		if (status != Status.CONNECTED || tileTimestampID < 0 || tileCount == 0) return;
+
+		int words = tileBitmap.length;
+		int length = HEADER_BYTES + 8 * words + 2 * tileCount;
+
+		// Assemble the whole tile in memory and write it with one call.
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.putInt(tileTimestampID);
+		buffer.putInt(tileCount);
+		for (int i = 0; i < words; i++) buffer.putLong(tileBitmap[i]);
+
+		// Pack the kept values, in cell order.
+		for (int i = 0; i < words; i++) {
+			long bits = tileBitmap[i];
+			while (bits != 0) {
+				int cell = (i << 6) + Long.numberOfTrailingZeros(bits);
+				buffer.putShort(tileValues[cell]);
+				bits &= bits - 1;
+			}
+		}
+
+		try {
+			tilesOut.write(buffer.array());
+
+			indexOut.writeInt(tileTimestampID);
+			indexOut.writeLong(tilesOffset);
+			indexOut.writeInt(length);
+		} catch (Exception e) {
+			Tools.errorMessage("DatabaseTileSchema", "flush",
+					"error when writing tile to file: " + tilesFilename, e);
+		}
+
+		addToIndex(tileTimestampID, tilesOffset, length);
+		tilesOffset += length;
+
+		startTile(tileTimestampID);
+	}
+
+	/*
+	 * startTile
+	 *
+	 * Reset the working tile.
+	 */
+	protected void startTile(int timestampID) {
+
+		int cells = metadata.rows * metadata.cols;
+
+		if (tileBitmap == null || tileValues.length != cells) {
+			tileBitmap = new long[(cells + 63) / 64];
+			tileValues = new short[cells];
+		}
+		else {
+			java.util.Arrays.fill(tileBitmap, 0L);
+		}
+
+		tileTimestampID = timestampID;
+		tileCount = 0;
+	}
+
+	protected short toShort(int value) {
+		if (value == NODATA) return NODATA_SHORT;
+
+		if (value <= Short.MIN_VALUE || value > Short.MAX_VALUE) {
+			if (rangeWarning) {
+				Tools.warningMessage("DatabaseTileSchema: value " + value +
+						" doesn't fit in 16 bits, stored as NODATA");
+				rangeWarning = false;
+			}
+			return NODATA_SHORT;
+		}
+
+		return (short) value;
+	}
+
+	protected void addToIndex(int timestampID, long offset, int length) {
+		ArrayList<long[]> tiles = tileIndex.get(timestampID);
+		if (tiles == null) {
+			tiles = new ArrayList<long[]>(1);
+			tileIndex.put(timestampID, tiles);
+		}
+		tiles.add(new long[] {offset, length});
+	}
+
+	//
+	// RETRIEVAL METHODS
+	//
+
+	protected void readMetadata() throws IOException {
+		DataInputStream in = openInput(metadataFilename);
+		metadata = new Metadata(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+		in.close();
+	}
+
+	protected void readLocations() throws IOException {
+		locations = new ArrayList<GriddedLocation>(metadata.locations);
+		cellLocations = new GriddedLocation[metadata.rows * metadata.cols];
+
+		DataInputStream in = openInput(locationsFilename);
+		for (int i = 0; i < metadata.locations; i++) {
+			GriddedLocation loc = new GriddedLocation(in.readInt(), in.readInt(),
+					in.readInt(), in.readDouble(), in.readDouble());
+			locations.add(loc);
+
+			int cell = loc.row() * metadata.cols + loc.col();
+			if (cell >= 0 && cell < cellLocations.length) cellLocations[cell] = loc;
+		}
+		in.close();
+	}
+
+	protected void readTimestamps() throws IOException {
+		timestamps = new ArrayList<Timestamp>(metadata.timestamps);
+
+		DataInputStream in = openInput(timestampsFilename);
+		for (int i = 0; i < metadata.timestamps; i++) {
+			timestamps.add(new Timestamp(in.readInt(), in.readDouble()));
+		}
+		in.close();
+	}
+
+	protected void readIndex() throws IOException {
+		tileIndex.clear();
+
+		File file = new File(indexFilename);
+		long entries = file.length() / 16;
+
+		DataInputStream in = openInput(indexFilename);
+		for (long i = 0; i < entries; i++) {
+			addToIndex(in.readInt(), in.readLong(), in.readInt());
+		}
+		in.close();
+	}
+
+	public Metadata getMetadata() {
+		if (status == Status.DISCONNECTED) {
+			try {
+				readMetadata();
+			} catch (Exception e) {
+				Tools.errorMessage("DatabaseTileSchema", "getMetadata", "error on file read", e);
+			}
+		}
+		return metadata;
+	}
+
+	public Timestamp getTimestamp(int id) {
+		// IDs are assigned sequentially from 1.
+		if (id < 1 || id > timestamps.size()) return null;
+		return timestamps.get(id - 1);
+	}
+
+	public ArrayList<Timestamp> getTimestamps() { return timestamps; }
+	public ArrayList<GriddedLocation> getLocations() { return locations; }
+
+	public int numberOfTimestamps() { return metadata.timestamps; }
+	public int numberOfVectors() { return metadata.vectors; }
+
+	/*
+	 * getVectorsAtTime
+	 *
+	 * Retrieve all the vectors at a timestamp ID: look up the tile in the index,
+	 * then one seek and one read.
+	 */
+	public ArrayList<GriddedVector> getVectorsAtTime(int timeID) {
+
+		ArrayList<GriddedVector> vectors = new ArrayList<GriddedVector>();
+
+		readTiles(timeID, vectors, Range.ALL, Range.ALL, Range.ALL);
+
+		return vectors;
+	}
+
+	/*
+	 * readTiles
+	 *
+	 * Read the tiles for a timestamp ID, adding the vectors inside the row,
+	 * column and value ranges to the list.
+	 */
+	protected void readTiles(int timeID, ArrayList<GriddedVector> vectors,
+			Range rows, Range cols, Range values) {
+
+		ArrayList<long[]> tiles = tileIndex.get(timeID);
+		if (tiles == null || tilesIn == null) return;
+
+		for (long[] tile : tiles) {
+			try {
+				byte[] bytes = new byte[(int) tile[1]];
+				tilesIn.seek(tile[0]);
+				tilesIn.readFully(bytes);
+
+				decodeTile(ByteBuffer.wrap(bytes), vectors, rows, cols, values);
+			} catch (Exception e) {
+				Tools.warningMessage("DatabaseTileSchema::getVectorsAtTime: while reading tile file: " + e);
+			}
+		}
+	}
+
+	/*
+	 * decodeTile
+	 *
+	 * Unpack a tile into vectors, keeping the ones inside the row, column and
+	 * value ranges. Only the part of the bitmap covering the rows is scanned.
+	 */
+	protected void decodeTile(ByteBuffer buffer, ArrayList<GriddedVector> vectors,
+			Range rows, Range cols, Range values) {
+
+		int timeID = buffer.getInt();
+		int count = buffer.getInt();
+
+		int gridCols = metadata.cols;
+		int words = (metadata.rows * gridCols + 63) / 64;
+		int valuesStart = HEADER_BYTES + 8 * words;
+
+		boolean everything = rows.isAll() && cols.isAll() && values.isAll();
+		if (everything) vectors.ensureCapacity(vectors.size() + count);
+
+		// The bitmap words holding the rows we want.
+		int firstRow = Math.max(rows.min(), 0);
+		int lastRow = Math.min(rows.max(), metadata.rows - 1);
+		if (firstRow > lastRow) return;
+
+		int firstWord = (firstRow * gridCols) >> 6;
+		int lastWord = ((lastRow + 1) * gridCols - 1) >> 6;
+
+		// The values are packed in cell order: skip over the ones before the
+		// first word.
+		int n = 0;
+		for (int i = 0; i < firstWord; i++) {
+			n += Long.bitCount(buffer.getLong(HEADER_BYTES + 8 * i));
+		}
+
+		for (int i = firstWord; i <= lastWord; i++) {
+			long bits = buffer.getLong(HEADER_BYTES + 8 * i);
+			while (bits != 0) {
+				int cell = (i << 6) + Long.numberOfTrailingZeros(bits);
+				short stored = buffer.getShort(valuesStart + 2 * n);
+				n++;
+				bits &= bits - 1;
+
+				int value = (stored == NODATA_SHORT) ? NODATA : stored;
+
+				if (!everything) {
+					int r = cell / gridCols;
+					if (!rows.contains(r) || !cols.contains(cell - r * gridCols) ||
+							!values.contains(value)) continue;
+				}
+
+				vectors.add(new GriddedVector(value, cellLocation(cell), timeID));
+			}
+		}
+	}
+
+	protected GriddedLocation cellLocation(int cell) {
+		GriddedLocation loc = cellLocations == null ? null : cellLocations[cell];
+		if (loc == null) loc = new GriddedLocation(cell / metadata.cols, cell % metadata.cols);
+		return loc;
+	}
+
+	/*
+	 * getVectors
+	 *
+	 * Retrieve all the vectors between a range of timestamp IDs.
+	 */
+	public ArrayList<GriddedVector> getVectors(int startTimestampID, int endTimestampID) {
+
+		ArrayList<GriddedVector> vectors = new ArrayList<GriddedVector>();
+
+		for (int id = startTimestampID; id <= endTimestampID; id++) {
+			vectors.addAll(getVectorsAtTime(id));
+		}
+
+		return vectors;
+	}
+
+	/*
+	 * getVectorsAtTime
+	 *
+	 * The vectors at a timestamp ID inside the row, column and value ranges.
+	 * Only the rows in range are decoded. (Range queries and cursors read the
+	 * tiles through this, one timestamp at a time.)
+	 */
+	protected ArrayList<GriddedVector> getVectorsAtTime(int timeID, Range rows, Range cols, Range values) {
+
+		ArrayList<GriddedVector> vectors = new ArrayList<GriddedVector>();
+
+		readTiles(timeID, vectors, rows, cols, values);
+
+		return vectors;
+	}
+
+	public void status() {
+		Tools.statusMessage("Database name = " + dbName + "  Status: "
+				+ status.toString());
+		Tools.statusMessage("Database path = " + dbPath);
+		Tools.statusMessage("tilesFilename = " + tilesFilename);
+		Tools.statusMessage("Timestamp entries = " + metadata.timestamps);
+		Tools.statusMessage("Location entries  = " + metadata.locations);
+		Tools.statusMessage("Vector entries    = " + metadata.vectors);
+		Tools.statusMessage("Tile file bytes   = " + tilesOffset);
+	}
+}
@@ -24,6 +24,18 @@ public abstract class Dataset extends GeoObject {
 
 	public abstract Metadata readMetadata( String filename );
     public GriddedLocation[][] getLocations() { return locs; }
+
+	/*
+	 * readFrame
+	 * 
+	 * Read one file of gridded data into a GridFrame. FileName should include
+	 * the full path. Datasets that support frames override this; the default
+	 * is to return null, i.e. no data.
+	 */
+	public GridFrame readFrame(String filename, LocationTable locations, int timestampID) throws Exception {
+		Tools.warningMessage("Dataset::readFrame: not supported by " + getClass().getSimpleName());
+		return null;
+	}
     
 	// Data types
 	public enum DataType {
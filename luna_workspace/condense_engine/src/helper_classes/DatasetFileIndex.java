@@ -0,0 +1,182 @@
+package helper_classes;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/* DatasetFileIndex
+ *
+ * The file names in a data directory, listed once and then looked up in
+ * memory. Finding a day's file used to mean listing the whole directory
+ * (a year's worth of daily files, for each channel) every day; now the
+ * directory is read the first time it's asked about, and each file name is
+ * filed under any dates (yyyymmdd) it contains.
+ *
+ * Lookups give the same answers as searching the directory listing for a
+ * file whose name contains the search strings, first match wins.
+ *
+ * The indexes are shared by everything in the process. A long-running
+ * process that expects new files to appear in a directory should call
+ * invalidate (or invalidateAll) to have it listed again.
+ */
+
+public class DatasetFileIndex extends GeoObject {
+
+	// Every directory indexed so far, by path.
+	protected static final HashMap<String, DatasetFileIndex> indexes =
+			new HashMap<String, DatasetFileIndex>();
+
+	protected final File dir;
+
+	// The file names, in listing order.
+	protected final String[] names;
+
+	// Names by the dates in them.
+	protected final HashMap<String, ArrayList<String>> byDate =
+			new HashMap<String, ArrayList<String>>();
+
+	// Results of findFile searches, by search string.
+	protected final HashMap<String, String> searches = new HashMap<String, String>();
+
+	// The search strings that found nothing, so they aren't searched for again.
+	protected final HashSet<String> misses = new HashSet<String>();
+
+	protected DatasetFileIndex(String path) {
+
+		dir = new File(path);
+
+		String[] list = dir.list();
+		names = (list == null) ? new String[0] : list;
+
+		for (String name : names) {
+			indexDates(name);
+		}
+
+		Tools.debugMessage("DatasetFileIndex: " + names.length + " files in " + path);
+	}
+
+	/*
+	 * forDirectory
+	 *
+	 * The index of a directory, listing the directory if it hasn't been yet.
+	 * A directory that doesn't exist has an empty index.
+	 */
+	public static synchronized DatasetFileIndex forDirectory(String path) {
+
+		DatasetFileIndex index = indexes.get(path);
+
+		if (index == null) {
+			index = new DatasetFileIndex(path);
+			indexes.put(path, index);
+		}
+
+		return index;
+	}
+
+	/*
+	 * invalidate
+	 *
+	 * Forget a directory's listing; the next lookup lists it again.
+	 */
+	public static synchronized void invalidate(String path) {
+		indexes.remove(path);
+	}
+
+	/*
+	 * invalidateAll
+	 *
+	 * Forget every directory's listing.
+	 */
+	public static synchronized void invalidateAll() {
+		indexes.clear();
+	}
+
+	public int size() { return names.length; }
+
+	/*
+	 * find
+	 *
+	 * The full path of the first file with the date (yyyymmdd) and the
+	 * channel (e.g. "19h"; empty for any) in its name. Null if there isn't one.
+	 */
+	public synchronized String find(String date, String channel) {
+
+		ArrayList<String> candidates = byDate.get(date);
+		if (candidates == null) return null;
+
+		for (String name : candidates) {
+			if (name.contains(channel)) return new File(dir, name).getPath();
+		}
+
+		return null;
+	}
+
+	/*
+	 * find
+	 *
+	 * The full path of the first file with the search string in its name.
+	 * Null if there isn't one.
+	 */
+	public synchronized String find(String searchString) {
+
+		String found = searches.get(searchString);
+		if (found != null || misses.contains(searchString)) return found;
+
+		for (String name : names) {
+			if (name.contains(searchString)) {
+				found = new File(dir, name).getPath();
+				break;
+			}
+		}
+
+		if (found == null) misses.add(searchString);
+		else searches.put(searchString, found);
+
+		return found;
+	}
+
+	/*
+	 * dateString
+	 *
+	 * A date as it appears in the data file names: yyyymmdd.
+	 */
+	public static String dateString(int year, int month, int day) {
+		return String.valueOf(year) + (month < 10 ? "0" : "") + month +
+				(day < 10 ? "0" : "") + day;
+	}
+
+	/*
+	 * indexDates
+	 *
+	 * File a name under every 8-digit string in it. (Any run of digits could
+	 * hold a date, so longer runs are filed under each 8 digits within them.)
+	 */
+	protected void indexDates(String name) {
+
+		int i = 0;
+		while (i < name.length()) {
+
+			if (!Character.isDigit(name.charAt(i))) {
+				i++;
+				continue;
+			}
+
+			int start = i;
+			while (i < name.length() && Character.isDigit(name.charAt(i))) i++;
+
+			for (int s = start; s + 8 <= i; s++) {
+				String date = name.substring(s, s + 8);
+
+				ArrayList<String> list = byDate.get(date);
+				if (list == null) {
+					list = new ArrayList<String>(2);
+					byDate.put(date, list);
+				}
+
+				// A name could hold the same date twice; file it once.
+				if (list.isEmpty() || list.get(list.size() - 1) != name) list.add(name);
+			}
+		}
+	}
+}
@@ -5,8 +5,7 @@ package helper_classes;
  * File and data handling for SSMI data.
  */
 
-import java.io.File;
-import java.io.FilenameFilter;
+import java.nio.ByteOrder;
 
 public class DatasetSSMI extends Dataset {
 
@@ -36,40 +35,27 @@ public class DatasetSSMI extends Dataset {
 		if (addYearToInputDirectory) {
 			path = path + String.valueOf(year) + "/";
 		}
-		
-		// Strings for building the file name.
-		String yearString = String.valueOf(year);
-		String monthString = String.valueOf(month);
-		
-		if (month < 10)
-			monthString = "0" + String.valueOf(month);
-		
-		String dayString = String.valueOf(day);
-		
-		if (day < 10)
-			dayString = "0" + String.valueOf(day);
-
-		final String date = yearString + monthString + dayString;
 
-		final String channel = frequency + polarization;
 
-		// Search for this date in the directory of file names.
-		File dir = new File(path);
-
-		File[] matches = dir.listFiles(new FilenameFilter() {
-			public boolean accept(File dir, String name) {
-				return name.contains(date) && name.contains(channel);
-			}
-		});
+		// Look up the date and channel in the directory's index of file names.
+		// If there's more than one match, use the first occurrence.
+		return DatasetFileIndex.forDirectory(path).find(
+				DatasetFileIndex.dateString(year, month, day), frequency + polarization);
+	}
 
-		// Did we find a file with that date? If yes, use the first occurrence.
-		if (matches != null) {
-			if (matches.length != 0)
-				return matches[0].getPath();
-		}
+	/*
+	 * sameGrid
+	 * 
+	 * Are two channels (frequency and polarization, e.g. "19h") on the same
+	 * grid? The 85.5 and 91.7 GHz channels are on a grid twice as fine as the
+	 * rest.
+	 */
+	public static boolean sameGrid(String channel1, String channel2) {
+		return fineGrid(channel1) == fineGrid(channel2);
+	}
 
-		// Nothing. 
-		return null;
+	static boolean fineGrid(String channel) {
+		return channel.startsWith("85") || channel.startsWith("91");
 	}
 
 	/*
@@ -178,21 +164,18 @@ public class DatasetSSMI extends Dataset {
 			DataFile latitudes = new DataFile( latsFileName );
 			DataFile longitudes = new DataFile( lonsFileName );
 
+			// Read the encoded data from the files. The integers are
+			// little-endian, read the whole grid at once.
+			int[] lats = latitudes.readInts(metadata.rows * metadata.cols, ByteOrder.LITTLE_ENDIAN);
+			int[] lons = longitudes.readInts(metadata.rows * metadata.cols, ByteOrder.LITTLE_ENDIAN);
+
+			int i = 0;
 			for (int r = 0; r < metadata.rows; r++) {
-				for (int c = 0; c < metadata.cols; c++) {
-							
-					// Read the encoded data from the files
-							
-					int lat = latitudes.readInt();
-					int lon = longitudes.readInt();
-		
-					// Reverse the byte order (for Windows).
-					lat = Tools.reverseByteOrder(lat);
-					lon = Tools.reverseByteOrder(lon);
+				for (int c = 0; c < metadata.cols; c++, i++) {
 
 					// Decode the data, convert to doubles.
-					double latD = ((double) lat) / 100000.0;
-					double lonD = ((double) lon) / 100000.0;
+					double latD = ((double) lats[i]) / 100000.0;
+					double lonD = ((double) lons[i]) / 100000.0;
 							
 					// Create the surface object at this location
 					locs[r][c] = new GriddedLocation(r,c,latD,lonD);
@@ -207,6 +190,38 @@ public class DatasetSSMI extends Dataset {
 		}				
 	}
 
+	/*
+	 * readFrame
+	 * 
+	 * Read the SSMI data from a file into a GridFrame. The whole grid of
+	 * 2-byte little-endian values is read in one go, no per-pixel objects.
+	 */
+	public GridFrame readFrame(String filename, LocationTable locations, int timestampID) throws Exception {
+
+		DataFile file = new DataFile(filename);
+
+		GridFrame frame = null;
+
+		try {
+			// A file of another size is on another grid, and read as this one
+			// would be garbage.
+			if (file.length() != 2L * rows() * cols()) {
+				throw new Exception(filename + " is not a " + rows() + " x " + cols() + " grid");
+			}
+
+			frame = new GridFrame(file.read2ByteInts(rows() * cols()), locations, timestampID);
+		} catch (Exception error) {
+			Tools.warningMessage("DatasetSSMI::readFrame: when reading data, "
+					+ error);
+
+			throw error;
+		} finally {
+			file.close();
+		}
+
+		return frame;
+	}
+
 	/*
 	 * readData
 	 * 
@@ -1,7 +1,5 @@
 package helper_classes;
 
-import java.io.File;
-import java.io.FilenameFilter;
 import java.util.ArrayList;
 import ucar.ma2.ArrayByte;
 import ucar.ma2.ArrayDouble;
@@ -40,32 +38,11 @@ public class DatasetSeaIce extends Dataset {
 		if (addYearToInputDirectory) {
 			path = path + String.valueOf(year) + "/";
 		}
-		// Strings for building the file name.
-		String yearString = String.valueOf(year);
-		String monthString = String.valueOf(month);
-		if (month < 10)
-			monthString = "0" + String.valueOf(month);
-		String dayString = String.valueOf(day);
-		if (day < 10)
-			dayString = "0" + String.valueOf(day);
-
-		final String date = yearString + monthString + dayString;
-
-		// Search for this date in the directory of file names.
-		File dir = new File(path);
-
-		File[] matches = dir.listFiles(new FilenameFilter() {
-			public boolean accept(File dir, String name) {
-				return name.contains(date);
-			}
-		});
-
-		// Did we find a file with that date? If yes, use the first occurrence.
-		if (matches.length > 0)
-			return matches[0].getPath();
 
-		// Nothing.
-		return null;
+		// Look up the date in the directory's index of file names. If there's
+		// more than one match, use the first occurrence.
+		return DatasetFileIndex.forDirectory(path).find(
+				DatasetFileIndex.dateString(year, month, day), "");
 	}
 
 	/*
@@ -0,0 +1,115 @@
+package helper_classes;
+
+/* GridFrame
+ *
+ * One timestamp's worth of gridded data, held as a flat array of values in
+ * row-major order (cell = row * cols + col), with a shared table of the cell
+ * locations. This is the compact alternative to a GriddedVector[][]: one
+ * int[] per day instead of an object per pixel.
+ *
+ * Cells that hold no data (for instance, pixels discarded by a condensation
+ * algorithm) are set to NODATA.
+ */
+
+public class GridFrame extends GeoObject {
+
+	protected final int[] values;
+	protected final LocationTable locations;
+	protected int timestampID;
+
+	public GridFrame(LocationTable locs, int timeID) {
+		this(new int[locs.size()], locs, timeID);
+	}
+
+	public GridFrame(int[] values, LocationTable locs, int timeID) {
+		if (values.length != locs.size()) {
+			Tools.errorMessage("GridFrame", "GridFrame", "values (" + values.length +
+					") and locations (" + locs.size() + ") are different sizes", new Exception());
+		}
+
+		this.values = values;
+		locations = locs;
+		timestampID = timeID;
+	}
+
+	/*
+	 * GridFrame
+	 *
+	 * Make a frame from a 2-D array of vectors. Null vectors become NODATA.
+	 */
+	public GridFrame(GriddedVector[][] v, LocationTable locs, int timeID) {
+		this(locs, timeID);
+
+		int cols = locs.cols();
+		for (int i = 0; i < values.length; i++) {
+			GriddedVector vector = v[i / cols][i % cols];
+			values[i] = (vector == null) ? NODATA : vector.data();
+		}
+	}
+
+	public int rows() { return locations.rows(); }
+	public int cols() { return locations.cols(); }
+	public int size() { return values.length; }
+
+	public int[] values() { return values; }
+	public LocationTable locations() { return locations; }
+
+	public int timestampID() { return timestampID; }
+	public void timestampID(int id) { timestampID = id; }
+
+	public int value(int cell) { return values[cell]; }
+	public int value(int r, int c) { return values[r * locations.cols() + c]; }
+
+	public GriddedLocation location(int cell) { return locations.get(cell); }
+
+	/*
+	 * count
+	 *
+	 * The number of cells that hold data.
+	 */
+	public int count() {
+		int n = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != NODATA) n++;
+		}
+		return n;
+	}
+
+	/*
+	 * filterBadData
+	 *
+	 * Replace any values outside of the min/max thresholds with NODATA.
+	 */
+	public void filterBadData(int min, int max) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] < min || values[i] > max) values[i] = NODATA;
+		}
+	}
+
+	/*
+	 * vector
+	 *
+	 * Create a GriddedVector for one cell, or null if the cell has no data.
+	 */
+	public GriddedVector vector(int cell) {
+		if (values[cell] == NODATA) return null;
+		return new GriddedVector(values[cell], locations.get(cell), timestampID);
+	}
+
+	/*
+	 * toVectorArray
+	 *
+	 * Create a 2-D array of vectors, for code that still works with them.
+	 * Cells without data are null.
+	 */
+	public GriddedVector[][] toVectorArray() {
+		int cols = cols();
+		GriddedVector[][] v = new GriddedVector[rows()][cols];
+
+		for (int i = 0; i < values.length; i++) {
+			v[i / cols][i % cols] = vector(i);
+		}
+
+		return v;
+	}
+}
@@ -38,6 +38,8 @@ public class GriddedLocation extends Location {
 		hasLatLon = true;
 	}
 	
+	public int id() { return id; }
+
 	public int row() { return rastloc.row(); }
 	public int col() { return rastloc.col(); }
 	public void row( int r ) { rastloc.row(r); }
@@ -38,6 +38,7 @@ public class GriddedVector extends GeoObject {
 	public boolean hasLatLon() {return location.hasLatLon;}
 	public GriddedLocation location() {return location;}
 	public int locationID() {return location.id;}
+	public int timestampID() {return timestampID;}
 	
 	/*
 	 * classification
@@ -0,0 +1,56 @@
+package helper_classes;
+
+/* LocationTable
+ *
+ * The locations of every cell in a grid, indexed by cell (row * cols + col).
+ * A table is built once per dataset and then shared, read-only, by every
+ * GridFrame of that dataset -- the locations don't change from day to day.
+ */
+
+public final class LocationTable extends GeoObject {
+
+	private final int rows;
+	private final int cols;
+	private final GriddedLocation[] locations;
+
+	/*
+	 * LocationTable
+	 *
+	 * Build a table from a 2-D array of locations. The array should be fully
+	 * populated; the location objects themselves are shared, not copied, so
+	 * any database IDs assigned to them are visible through the table.
+	 */
+	public LocationTable(GriddedLocation[][] locs) {
+		rows = locs.length;
+		cols = locs[0].length;
+		locations = new GriddedLocation[rows * cols];
+
+		for (int r = 0; r < rows; r++) {
+			System.arraycopy(locs[r], 0, locations, r * cols, cols);
+		}
+	}
+
+	/*
+	 * LocationTable
+	 *
+	 * A table of raster-only locations, for grids without lat/lon information.
+	 */
+	public LocationTable(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		locations = new GriddedLocation[rows * cols];
+
+		for (int i = 0; i < locations.length; i++) {
+			locations[i] = new GriddedLocation(i / cols, i % cols);
+		}
+	}
+
+	public int rows() { return rows; }
+	public int cols() { return cols; }
+	public int size() { return locations.length; }
+
+	public int cell(int r, int c) { return r * cols + c; }
+
+	public GriddedLocation get(int cell) { return locations[cell]; }
+	public GriddedLocation get(int r, int c) { return locations[r * cols + c]; }
+}
@@ -0,0 +1,51 @@
+package helper_classes;
+
+/* Range
+ *
+ * An inclusive range of integers, min to max: timestamp IDs, rows, columns
+ * or data values in a database query. Range.ALL matches everything.
+ */
+
+public final class Range extends GeoObject {
+
+	public static final Range ALL = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+	private final int min;
+	private final int max;
+
+	public Range(int min, int max) {
+		this.min = min;
+		this.max = max;
+	}
+
+	/*
+	 * Range
+	 *
+	 * A range of just one value.
+	 */
+	public Range(int value) {
+		this(value, value);
+	}
+
+	public int min() { return min; }
+	public int max() { return max; }
+
+	public boolean contains(int value) { return value >= min && value <= max; }
+
+	public boolean isAll() { return min == Integer.MIN_VALUE && max == Integer.MAX_VALUE; }
+	public boolean isEmpty() { return min > max; }
+
+	/*
+	 * orAll
+	 *
+	 * The range, or ALL if it's null: a query with no range given for
+	 * something doesn't restrict it.
+	 */
+	public static Range orAll(Range r) {
+		return (r == null) ? ALL : r;
+	}
+
+	public String toString() {
+		return "[" + min + ", " + max + "]";
+	}
+}
@@ -0,0 +1,90 @@
+package helper_classes;
+
+/* Reconstruction
+ *
+ * An approximate full grid for a day of condensed data. Condensing keeps
+ * only the pixels that are anomalous against the climatology; the rest were
+ * close to the climatology mean, so the mean stands in for them. Each cell
+ * gets the stored value if there is one, otherwise the monthly (or seasonal)
+ * mean, otherwise NODATA.
+ *
+ * The means come from a ClimatologyStore, which keeps the most recently used
+ * months in memory, so reconstructing a run of days reads the climatology
+ * once and then costs a copy of the mean grid plus the day's stored vectors.
+ */
+
+public class Reconstruction extends GeoObject {
+
+	protected final Database database;
+	protected final ClimatologyStore climatology;
+	protected final boolean seasonal;
+
+	protected final int rows;
+	protected final int cols;
+
+	/*
+	 * Reconstruction
+	 *
+	 * Seasonal says whether the data was condensed against seasonal rather
+	 * than monthly climatologies.
+	 */
+	public Reconstruction(Database database, ClimatologyStore climatology, boolean seasonal) {
+		this.database = database;
+		this.climatology = climatology;
+		this.seasonal = seasonal;
+
+		rows = climatology.rows();
+		cols = climatology.cols();
+	}
+
+	public int rows() { return rows; }
+	public int cols() { return cols; }
+
+	/*
+	 * grid
+	 *
+	 * The reconstructed grid at a timestamp ID, row-major (row * cols + col).
+	 * Null if there's no such timestamp.
+	 */
+	public int[] grid(int timestampID) {
+
+		Timestamp day = database.getTimestamp(timestampID);
+		if (day == null) {
+			Tools.warningMessage("Reconstruction::grid: no timestamp with ID " + timestampID);
+			return null;
+		}
+
+		// Start from the climatology...
+		int[] mean = climatology.get(ClimatologyStore.incrementName(day, seasonal)).meanValues();
+		int[] values = new int[rows * cols];
+		System.arraycopy(mean, 0, values, 0, Math.min(mean.length, values.length));
+
+		// ...and lay the stored vectors over it.
+		VectorCursor cursor = database.cursor(new Range(timestampID), null, null, null);
+		try {
+			while (cursor.hasNext()) {
+				GriddedVector v = cursor.next();
+
+				int r = v.row(), c = v.col();
+				if (r < 0 || r >= rows || c < 0 || c >= cols) continue;
+
+				values[r * cols + c] = v.data();
+			}
+		} finally {
+			cursor.close();
+		}
+
+		return values;
+	}
+
+	/*
+	 * frame
+	 *
+	 * The reconstructed grid at a timestamp ID as a frame over a table of
+	 * the grid's locations.
+	 */
+	public GridFrame frame(int timestampID, LocationTable locations) {
+		int[] values = grid(timestampID);
+		return (values == null) ? null : new GridFrame(values, locations, timestampID);
+	}
+}
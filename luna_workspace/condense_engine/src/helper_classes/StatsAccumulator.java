@@ -0,0 +1,168 @@
+package helper_classes;
+
+/* StatsAccumulator
+ *
+ * Running mean and standard deviation at every cell of a grid, in a single
+ * pass over the data. Each cell keeps a count, mean and M2 (the sum of the
+ * squared differences from the mean), updated with Welford's method as
+ * values arrive. Two accumulators over different data can be merged (Chan
+ * et al.), so the work can be split up and combined afterwards.
+ *
+ * The results are the same as summing the data for the mean, then summing
+ * the squared differences from that mean for the standard deviation, within
+ * floating point round-off -- without having to read the data twice.
+ *
+ * Cells are in row-major order: cell = row * cols + col.
+ */
+
+public class StatsAccumulator extends GeoObject {
+
+	protected final int rows;
+	protected final int cols;
+
+	protected final int[] count;
+	protected final double[] mean;
+	protected final double[] m2;
+
+	public StatsAccumulator(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+
+		count = new int[rows * cols];
+		mean = new double[rows * cols];
+		m2 = new double[rows * cols];
+	}
+
+	public int rows() { return rows; }
+	public int cols() { return cols; }
+	public int count(int cell) { return count[cell]; }
+	public int count(int r, int c) { return count[r * cols + c]; }
+
+	/*
+	 * add
+	 *
+	 * Add one value at one cell.
+	 */
+	public void add(int cell, double value) {
+		int n = ++count[cell];
+		double delta = value - mean[cell];
+		mean[cell] += delta / n;
+		m2[cell] += delta * (value - mean[cell]);
+	}
+
+	/*
+	 * add
+	 *
+	 * Add a grid of values, one per cell. NODATA is ignored.
+	 */
+	public void add(int[] values) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != NODATA) add(i, values[i]);
+		}
+	}
+
+	/*
+	 * add
+	 *
+	 * Add a grid of values, ignoring NODATA and anything outside of the
+	 * min/max range of "reasonable" values.
+	 */
+	public void add(int[] values, int minValue, int maxValue) {
+		for (int i = 0; i < values.length; i++) {
+			int v = values[i];
+			if (v == NODATA || v < minValue || v > maxValue) continue;
+			add(i, v);
+		}
+	}
+
+	public void add(GridFrame frame) {
+		add(frame.values());
+	}
+
+	/*
+	 * add
+	 *
+	 * Add a grid of vectors. Null vectors and NODATA are ignored.
+	 */
+	public void add(GriddedVector[][] vectors) {
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				if (vectors[r][c] == null || vectors[r][c].data() == NODATA) continue;
+				add(r * cols + c, vectors[r][c].data());
+			}
+		}
+	}
+
+	/*
+	 * merge
+	 *
+	 * Fold another accumulator, over different data for the same grid, into
+	 * this one.
+	 */
+	public void merge(StatsAccumulator other) {
+		if (other.rows != rows || other.cols != cols) {
+			Tools.errorMessage("StatsAccumulator", "merge", "grid sizes differ", new Exception());
+		}
+
+		for (int i = 0; i < count.length; i++) {
+			int nb = other.count[i];
+			if (nb == 0) continue;
+
+			int na = count[i];
+			int n = na + nb;
+			double delta = other.mean[i] - mean[i];
+
+			mean[i] += delta * nb / n;
+			m2[i] += other.m2[i] + delta * delta * ((double) na * nb / n);
+			count[i] = n;
+		}
+	}
+
+	/*
+	 * mean
+	 *
+	 * The mean at each cell; NODATA where there was no data.
+	 */
+	public double[] mean() {
+		double[] out = new double[count.length];
+
+		for (int i = 0; i < count.length; i++) {
+			out[i] = (count[i] > 0) ? mean[i] : NODATA;
+		}
+
+		return out;
+	}
+
+	/*
+	 * standardDeviation
+	 *
+	 * The standard deviation at each cell. Bias adjusts the degrees of freedom,
+	 * as in Stats.standardDeviation: 0 for the population SD, 1 for the sample
+	 * SD. NODATA where there isn't enough data.
+	 */
+	public double[] standardDeviation(double bias) {
+		double[] out = new double[count.length];
+
+		for (int i = 0; i < count.length; i++) {
+			out[i] = (count[i] - bias > 0.0) ? Math.sqrt(m2[i] / (count[i] - bias)) : NODATA;
+		}
+
+		return out;
+	}
+
+	public double[][] mean2d() {
+		return to2d(mean());
+	}
+
+	public double[][] standardDeviation2d(double bias) {
+		return to2d(standardDeviation(bias));
+	}
+
+	protected double[][] to2d(double[] flat) {
+		double[][] out = new double[rows][cols];
+		for (int r = 0; r < rows; r++) {
+			System.arraycopy(flat, r * cols, out[r], 0, cols);
+		}
+		return out;
+	}
+}
@@ -0,0 +1,81 @@
+package helper_classes;
+
+import java.util.ArrayList;
+
+/* TimeSeries
+ *
+ * The history of one grid cell: the timestamp IDs that have data there, in
+ * order, and the values. Times without data aren't included.
+ */
+
+public class TimeSeries extends GeoObject {
+
+	protected final int row;
+	protected final int col;
+	protected final int[] timestampIDs;
+	protected final int[] values;
+
+	public TimeSeries(int row, int col, int[] timestampIDs, int[] values) {
+		this.row = row;
+		this.col = col;
+		this.timestampIDs = timestampIDs;
+		this.values = values;
+	}
+
+	public int row() { return row; }
+	public int col() { return col; }
+	public int size() { return values.length; }
+
+	public int[] timestampIDs() { return timestampIDs; }
+	public int[] values() { return values; }
+
+	public int timestampID(int i) { return timestampIDs[i]; }
+	public int value(int i) { return values[i]; }
+
+	/*
+	 * toNumberArray
+	 *
+	 * The series as [i][0] = timestamp ID, [i][1] = value: the form the
+	 * downsampling and plotting code takes.
+	 */
+	public Number[][] toNumberArray() {
+		Number[][] out = new Number[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			out[i] = new Number[] {timestampIDs[i], values[i]};
+		}
+		return out;
+	}
+
+	/*
+	 * toNumberArray
+	 *
+	 * The same, with the time as days (see Timestamp.days) instead of the ID.
+	 * Timestamps is the database's list, indexed by ID - 1.
+	 */
+	public Number[][] toNumberArray(ArrayList<Timestamp> timestamps) {
+		Number[][] out = new Number[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			out[i] = new Number[] {timestamps.get(timestampIDs[i] - 1).days(), values[i]};
+		}
+		return out;
+	}
+
+	/*
+	 * append
+	 *
+	 * A series with another's points added on the end.
+	 */
+	public TimeSeries append(TimeSeries more) {
+		if (more == null || more.size() == 0) return this;
+
+		int[] t = new int[size() + more.size()];
+		int[] v = new int[t.length];
+
+		System.arraycopy(timestampIDs, 0, t, 0, size());
+		System.arraycopy(more.timestampIDs, 0, t, size(), more.size());
+		System.arraycopy(values, 0, v, 0, size());
+		System.arraycopy(more.values, 0, v, size(), more.size());
+
+		return new TimeSeries(row, col, t, v);
+	}
+}
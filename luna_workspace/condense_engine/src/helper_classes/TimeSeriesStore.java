@@ -0,0 +1,219 @@
+package helper_classes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/* TimeSeriesStore
+ *
+ * A pixel-major copy of a database: for every grid cell, its value at every
+ * timestamp, one after the other in a file. A cell's whole history is one
+ * contiguous read, where the databases (stored a day at a time) would have
+ * to visit every day.
+ *
+ * File layout: a header of five ints -- rows, cols, timestamps, the first
+ * timestamp ID (1), and the channel ID the values are from (0 for a
+ * database without channels) -- then for each cell (row * cols + col), a
+ * 16-bit value per timestamp, NODATA_SHORT where there's no data.
+ *
+ * The file is made from a database by transpose(), which works through the
+ * days in blocks, holding just one block of days in memory at a time.
+ */
+
+public class TimeSeriesStore extends GeoObject {
+
+	// Stored in place of NODATA (or out of range values).
+	static final short NODATA_SHORT = Short.MIN_VALUE;
+
+	static final int HEADER_BYTES = 20;
+
+	protected final String filename;
+	protected RandomAccessFile file;
+	protected FileChannel channel;
+
+	protected int rows;
+	protected int cols;
+	protected int timestamps;
+	protected int channelID;
+
+	/*
+	 * TimeSeriesStore
+	 *
+	 * Open an existing time series file.
+	 */
+	public TimeSeriesStore(String filename) throws IOException {
+		this.filename = filename;
+
+		file = new RandomAccessFile(filename, "r");
+		channel = file.getChannel();
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		channel.read(header, 0);
+		header.flip();
+
+		rows = header.getInt();
+		cols = header.getInt();
+		timestamps = header.getInt();
+		header.getInt();
+		channelID = header.getInt();
+	}
+
+	public int rows() { return rows; }
+	public int cols() { return cols; }
+	public int timestamps() { return timestamps; }
+	public int channelID() { return channelID; }
+	public String filename() { return filename; }
+
+	public void close() {
+		try {
+			file.close();
+		} catch (IOException e) {
+			Tools.warningMessage("TimeSeriesStore::close: " + e);
+		}
+	}
+
+	/*
+	 * get
+	 *
+	 * The series for a cell between two timestamp IDs, inclusive, from one
+	 * read. IDs beyond the end of the file are left out. Safe to call from
+	 * several threads.
+	 */
+	public TimeSeries get(int row, int col, int t0, int t1) {
+
+		int first = Math.max(t0, 1);
+		int last = Math.min(t1, timestamps);
+
+		if (row < 0 || row >= rows || col < 0 || col >= cols || first > last) {
+			return new TimeSeries(row, col, new int[0], new int[0]);
+		}
+
+		int n = last - first + 1;
+		ByteBuffer buffer = ByteBuffer.allocate(2 * n);
+
+		long position = HEADER_BYTES + ((long) (row * cols + col) * timestamps + (first - 1)) * 2;
+
+		try {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) break;
+			}
+		} catch (IOException e) {
+			Tools.errorMessage("TimeSeriesStore", "get", "reading " + filename, e);
+		}
+
+		buffer.flip();
+
+		// Leave out the times without data.
+		int[] ids = new int[n];
+		int[] values = new int[n];
+		int count = 0;
+
+		for (int i = 0; i < n && buffer.remaining() >= 2; i++) {
+			short v = buffer.getShort();
+			if (v == NODATA_SHORT) continue;
+
+			ids[count] = first + i;
+			values[count] = v;
+			count++;
+		}
+
+		return new TimeSeries(row, col, java.util.Arrays.copyOf(ids, count),
+				java.util.Arrays.copyOf(values, count));
+	}
+
+	/*
+	 * transpose
+	 *
+	 * Write the channel in use of a database out as a time series file, and
+	 * open it. The days are read in blocks, as many as fit in about 'memory' bytes; each block is
+	 * then written out as a run of values for every cell. Memory use doesn't
+	 * depend on how many days there are.
+	 */
+	public static TimeSeriesStore transpose(Database db, String filename, long memory) throws IOException {
+
+		Metadata m = db.getMetadata();
+		int rows = m.rows();
+		int cols = m.cols();
+		int cells = rows * cols;
+		int timestamps = db.numberOfTimestamps();
+
+		// Days per block: each day of a block is a short per cell.
+		long fit = Math.min(memory / 2, Integer.MAX_VALUE) / Math.max(cells, 1);
+		int block = (int) Math.max(1, Math.min(timestamps, fit));
+
+		Tools.statusMessage("Time series: " + cells + " cells x " + timestamps +
+				" timestamps, " + block + " days at a time -> " + filename);
+
+		new File(filename).delete();
+		RandomAccessFile out = new RandomAccessFile(filename, "rw");
+		FileChannel channel = out.getChannel();
+
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(rows).putInt(cols).putInt(timestamps).putInt(1).putInt(db.channel());
+			header.flip();
+			channel.write(header, 0);
+
+			// Every cell's run is written for every block, with NODATA_SHORT
+			// for the days it has no data, so there are no holes in the file.
+			short[] values = new short[cells * block];
+			ByteBuffer run = ByteBuffer.allocate(2 * block).order(ByteOrder.BIG_ENDIAN);
+			boolean rangeWarning = true;
+
+			for (int t0 = 1; t0 <= timestamps; t0 += block) {
+
+				int t1 = Math.min(t0 + block - 1, timestamps);
+				int days = t1 - t0 + 1;
+
+				java.util.Arrays.fill(values, NODATA_SHORT);
+
+				// Read the block into a cell-major buffer: values[cell * days + day],
+				// each cell's days together.
+				VectorCursor cursor = db.cursor(new Range(t0, t1), null, null, null);
+				try {
+					while (cursor.hasNext()) {
+						GriddedVector v = cursor.next();
+
+						int cell = v.row() * cols + v.col();
+						if (cell < 0 || cell >= cells) continue;
+
+						int value = v.data();
+						if (value < Short.MIN_VALUE + 1 || value > Short.MAX_VALUE) {
+							if (rangeWarning && value != NODATA) {
+								Tools.warningMessage("TimeSeriesStore::transpose: value " + value +
+										" doesn't fit in 16 bits, stored as no data");
+								rangeWarning = false;
+							}
+							continue;
+						}
+
+						values[cell * days + (v.timestampID() - t0)] = (short) value;
+					}
+				} finally {
+					cursor.close();
+				}
+
+				// Write it pixel-major: each cell's run of days goes in its place.
+				for (int cell = 0; cell < cells; cell++) {
+					run.clear();
+					for (int d = 0; d < days; d++) run.putShort(values[cell * days + d]);
+					run.flip();
+
+					long position = HEADER_BYTES + ((long) cell * timestamps + (t0 - 1)) * 2;
+					while (run.hasRemaining()) {
+						channel.write(run, position + run.position());
+					}
+				}
+
+				Tools.debugMessage("Time series: timestamps " + t0 + " to " + t1 + " done");
+			}
+		} finally {
+			out.close();
+		}
+
+		return new TimeSeriesStore(filename);
+	}
+}
@@ -0,0 +1,97 @@
+package helper_classes;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/* VectorCursor
+ *
+ * Vectors streamed out of a database one at a time, rather than collected
+ * into a list first, so a query over years of data runs in constant memory.
+ *
+ * Subclasses implement advance(), which returns the next vector or null when
+ * there are no more. A cursor holds database resources (a result set, a file
+ * position) until it's closed: use try-with-resources, or read it to the end,
+ * which closes it.
+ *
+ *   try (VectorCursor cursor = db.cursor(time, null, null, null)) {
+ *       while (cursor.hasNext()) { GriddedVector v = cursor.next(); ... }
+ *   }
+ */
+
+public abstract class VectorCursor extends GeoObject
+		implements Iterator<GriddedVector>, AutoCloseable {
+
+	private GriddedVector next = null;
+	private boolean closed = false;
+
+	/*
+	 * advance
+	 *
+	 * The next vector, or null at the end.
+	 */
+	protected abstract GriddedVector advance();
+
+	/*
+	 * release
+	 *
+	 * Free whatever the cursor is holding. Called once, by close.
+	 */
+	protected void release() {}
+
+	public boolean hasNext() {
+		if (next != null) return true;
+		if (closed) return false;
+
+		next = advance();
+		if (next == null) close();
+
+		return next != null;
+	}
+
+	public GriddedVector next() {
+		if (!hasNext()) throw new NoSuchElementException();
+
+		GriddedVector v = next;
+		next = null;
+		return v;
+	}
+
+	public void close() {
+		if (closed) return;
+		closed = true;
+		release();
+	}
+
+	/*
+	 * toList
+	 *
+	 * Read the rest of the cursor into a list, and close it.
+	 */
+	public ArrayList<GriddedVector> toList() {
+		ArrayList<GriddedVector> list = new ArrayList<GriddedVector>();
+		while (hasNext()) list.add(next());
+		close();
+		return list;
+	}
+
+	/*
+	 * of
+	 *
+	 * A cursor over vectors already in memory, skipping any outside of the
+	 * row, column and value ranges.
+	 */
+	public static VectorCursor of(final Iterator<GriddedVector> vectors,
+			final Range rows, final Range cols, final Range values) {
+
+		return new VectorCursor() {
+			protected GriddedVector advance() {
+				while (vectors.hasNext()) {
+					GriddedVector v = vectors.next();
+					if (v != null && Database.inBox(v, rows, cols, values)) return v;
+				}
+				return null;
+			}
+		};
+	}
+}
@@ -0,0 +1,79 @@
+package test.helper_classes;
+
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import helper_classes.*;
+
+/**
+ * Aggregate Tester.
+ */
+public class AggregateTest {
+
+    /**
+     * Method: add(int key, int value), finish()
+     */
+    @Test
+    public void testAddAndFinish() throws Exception {
+        Aggregate a = new Aggregate(Aggregate.Group.TIMESTAMP, 0, 0, null);
+
+        for (int i = 0; i < 40; i++) a.add(40 - i, i);
+        a.add(5, 1000);
+        a.add(5, 3, 30.0, -2, 20);
+        a.finish();
+
+        Assert.assertEquals(40, a.size());
+        Assert.assertEquals(40, a.keys().length);
+        Assert.assertEquals(1, a.key(0));
+        Assert.assertEquals(40, a.key(39));
+
+        int i = a.indexOf(5);
+        Assert.assertEquals(4, i);
+        Assert.assertEquals(5, a.count(i));
+        Assert.assertEquals((35 + 1000 + 30) / 5.0, a.mean(i), 1e-9);
+        Assert.assertEquals(-2, a.min(i));
+        Assert.assertEquals(1000, a.max(i));
+        Assert.assertEquals(-1, a.indexOf(41));
+
+        // More can be added after finishing.
+        a.add(41, 1);
+        Assert.assertEquals(41, a.finish().size());
+    }
+
+    /**
+     * Method: key(int timestampID, int row, int col)
+     */
+    @Test
+    public void testKey() throws Exception {
+        ArrayList<Timestamp> t = new ArrayList<Timestamp>();
+        t.add(new Timestamp(2003, 12, 15));
+        t.add(new Timestamp(2004, 2, 29));
+        t.add(new Timestamp(2004, 5, 31));
+        t.add(new Timestamp(2004, 6, 1));
+        t.add(new Timestamp(2004, 11, 30));
+
+        Aggregate month = new Aggregate(Aggregate.Group.MONTH, 0, 0, t);
+        Assert.assertEquals(200312, month.key(1, 0, 0));
+        Assert.assertEquals(200402, month.key(2, 0, 0));
+
+        // December goes with the next winter.
+        Aggregate season = new Aggregate(Aggregate.Group.SEASON, 0, 0, t);
+        Assert.assertEquals(20041, season.key(1, 0, 0));
+        Assert.assertEquals(20041, season.key(2, 0, 0));
+        Assert.assertEquals(20042, season.key(3, 0, 0));
+        Assert.assertEquals(20043, season.key(4, 0, 0));
+        Assert.assertEquals(20044, season.key(5, 0, 0));
+
+        // 10 columns in blocks of 4: 3 blocks across.
+        Aggregate block = new Aggregate(Aggregate.Group.BLOCK, 4, 10, null);
+        Assert.assertEquals(0, block.key(1, 3, 3));
+        Assert.assertEquals(2, block.key(1, 0, 9));
+        Assert.assertEquals(5, block.key(1, 5, 8));
+        Assert.assertEquals(1, block.blockRow(5));
+        Assert.assertEquals(2, block.blockCol(5));
+
+        Assert.assertEquals(7, new Aggregate(Aggregate.Group.TIMESTAMP, 0, 0, null).key(7, 1, 1));
+    }
+}
@@ -0,0 +1,103 @@
+package test.helper_classes;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import helper_classes.*;
+
+/**
+ * Algorithms Tester.
+ */
+public class AlgorithmsTest {
+
+    static final int rows = 100;
+    static final int cols = 30;
+
+    GriddedVector[][] vectors;
+    GridFrame frame;
+    double[][] mean;
+    double[][] sd;
+    double[] meanFlat;
+    double[] sdFlat;
+
+    @Before
+    public void before() throws Exception {
+        Random random = new Random(42);
+
+        GriddedLocation[][] locs = new GriddedLocation[rows][cols];
+        vectors = new GriddedVector[rows][cols];
+        int[] values = new int[rows * cols];
+        mean = new double[rows][cols];
+        sd = new double[rows][cols];
+        meanFlat = new double[rows * cols];
+        sdFlat = new double[rows * cols];
+
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                int i = r * cols + c;
+                locs[r][c] = new GriddedLocation(r, c);
+                mean[r][c] = meanFlat[i] = 2000;
+                sd[r][c] = sdFlat[i] = 100;
+
+                // Mostly normal values, some anomalies, some bad data.
+                values[i] = 2000 + (int) (random.nextGaussian() * 150);
+                if (random.nextInt(50) == 0) values[i] = 10;
+
+                vectors[r][c] = new GriddedVector(values[i], locs[r][c], 1);
+            }
+        }
+
+        frame = new GridFrame(values, new LocationTable(locs), 1);
+    }
+
+    @After
+    public void after() throws Exception {
+    }
+
+    /**
+     * Method: algorithm1(GridFrame data, double[] mean, double[] sd, ...)
+     */
+    @Test
+    public void testAlgorithm1Frame() throws Exception {
+        GriddedVector[][] expected = Algorithms.algorithm1(vectors, mean, sd, 1.5, 50, 4000);
+        GridFrame condensed = Algorithms.algorithm1(frame, meanFlat, sdFlat, 1.5, 50, 4000);
+
+        Assert.assertEquals(1, condensed.timestampID());
+
+        int kept = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                if (expected[r][c] == null) {
+                    Assert.assertEquals(GeoObject.NODATA, condensed.value(r, c));
+                }
+                else {
+                    Assert.assertEquals(expected[r][c].data(), condensed.value(r, c));
+                    kept++;
+                }
+            }
+        }
+
+        Assert.assertEquals(kept, condensed.count());
+        Assert.assertTrue(kept > 0);
+    }
+
+    /**
+     * Method: algorithm1(GridFrame data, double[] mean, double[] sd, ..., ForkJoinPool pool)
+     */
+    @Test
+    public void testAlgorithm1Parallel() throws Exception {
+        GridFrame expected = Algorithms.algorithm1(frame, meanFlat, sdFlat, 1.5, 50, 4000);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        GridFrame condensed = Algorithms.algorithm1(frame, meanFlat, sdFlat, 1.5, 50, 4000, pool);
+        pool.shutdown();
+
+        Assert.assertArrayEquals(expected.values(), condensed.values());
+        Assert.assertTrue(condensed.count() > 0);
+    }
+}
@@ -0,0 +1,188 @@
+package test.helper_classes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import helper_classes.*;
+
+/**
+ * CondensePipeline Tester.
+ */
+public class CondensePipelineTest {
+
+    DatabaseOffHeapSchema db;
+    LocationTable table;
+
+    @Before
+    public void before() throws Exception {
+        db = new DatabaseOffHeapSchema("", "PIPELINETEST");
+        Assert.assertTrue(db.connect());
+        table = new LocationTable(TestGrid.store(db));
+    }
+
+    @After
+    public void after() throws Exception {
+        db.disconnect();
+    }
+
+    /*
+     * A pipeline over made-up daily files, "day<n>" for the nth of the month,
+     * each frame holding the day's values (see TestGrid). Days can be missing, unreadable, or
+     * make the reader or the condensation fail.
+     */
+    class FakePipeline extends CondensePipeline {
+
+        List<Integer> missing = new ArrayList<Integer>();
+        List<Integer> unreadable = new ArrayList<Integer>();
+        int readerFailsOn = 0;
+        int condenseFailsOn = 0;
+
+        // The days in the order their condensation finished.
+        List<Integer> condensed = Collections.synchronizedList(new ArrayList<Integer>());
+
+        // Held until the second day is condensed, if set.
+        CountDownLatch firstWaitsForSecond = null;
+
+        FakePipeline(int readAhead, int workers) {
+            super(db, readAhead, workers);
+        }
+
+        protected String fileName(Timestamp date) {
+            int day = date.dayOfMonth();
+            if (day == readerFailsOn) throw new IllegalStateException("index lost");
+            return missing.contains(day) ? null : "day" + day;
+        }
+
+        protected GridFrame readFrame(String filename) throws Exception {
+            int day = Integer.parseInt(filename.substring(3));
+            if (unreadable.contains(day)) throw new Exception("short read");
+
+            return TestGrid.frame(day, table, 0, false);
+        }
+
+        protected GridFrame condenseFrame(GridFrame frame, Timestamp date) {
+            int day = date.dayOfMonth();
+            if (day == condenseFailsOn) throw new IllegalStateException("bad frame");
+
+            try {
+                if (firstWaitsForSecond != null) {
+                    if (day == 1) Assert.assertTrue(firstWaitsForSecond.await(10, TimeUnit.SECONDS));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            condensed.add(day);
+            if (day == 2 && firstWaitsForSecond != null) firstWaitsForSecond.countDown();
+            return frame;
+        }
+    }
+
+    private Timespan days(int first, int last) {
+        return new Timespan(new Timestamp(2000, 1, first), new Timestamp(2000, 1, last),
+                Timespan.Increment.NONE);
+    }
+
+    // The days of the month stored, in timestamp ID order, checking each
+    // one's vectors are its own.
+    private List<Integer> storedDays() {
+        List<Integer> days = new ArrayList<Integer>();
+        for (Timestamp t : db.getTimestamps()) {
+            int day = t.dayOfMonth();
+            ArrayList<GriddedVector> vectors = db.getVectorsAtTime(t.id());
+            Assert.assertEquals(12, vectors.size());
+            for (GriddedVector v : vectors) {
+                Assert.assertEquals(TestGrid.value(day, v.row(), v.col()), v.data());
+            }
+            days.add(day);
+        }
+        return days;
+    }
+
+    /**
+     * Method: run(Timestamp startDate, Timespan timespan)
+     */
+    @Test
+    public void testDateOrder() throws Exception {
+        FakePipeline pipeline = new FakePipeline(4, 3);
+
+        // The first day finishes condensing after the second.
+        pipeline.firstWaitsForSecond = new CountDownLatch(1);
+
+        Timespan span = days(1, 8);
+        Assert.assertEquals(8, pipeline.run(span.startTimestamp(), span));
+
+        Assert.assertEquals(8, pipeline.condensed.size());
+        Assert.assertTrue(pipeline.condensed.indexOf(2) < pipeline.condensed.indexOf(1));
+
+        // Still stored in date order, with IDs to match.
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8), storedDays());
+        for (int id = 1; id <= 8; id++) {
+            Assert.assertEquals(id, db.getTimestamp(id).dayOfMonth());
+        }
+    }
+
+    /**
+     * Method: run(Timestamp startDate, Timespan timespan)
+     */
+    @Test
+    public void testMissingFiles() throws Exception {
+        FakePipeline pipeline = new FakePipeline(2, 2);
+        pipeline.missing.add(3);
+        pipeline.unreadable.add(5);
+
+        // The days without data are skipped, and the days after them stored.
+        Timespan span = days(1, 7);
+        Assert.assertEquals(5, pipeline.run(span.startTimestamp(), span));
+        Assert.assertEquals(Arrays.asList(1, 2, 4, 6, 7), storedDays());
+    }
+
+    /**
+     * Method: run(Timestamp startDate, Timespan timespan)
+     */
+    @Test
+    public void testReaderFailure() throws Exception {
+        FakePipeline pipeline = new FakePipeline(2, 2);
+        pipeline.readerFailsOn = 4;
+
+        Timespan span = days(1, 7);
+        try {
+            pipeline.run(span.startTimestamp(), span);
+            Assert.fail("the reader's exception should reach the caller");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            Assert.assertEquals("index lost", e.getCause().getMessage());
+        }
+
+        // The days read before it were stored.
+        Assert.assertEquals(Arrays.asList(1, 2, 3), storedDays());
+    }
+
+    /**
+     * Method: run(Timestamp startDate, Timespan timespan)
+     */
+    @Test
+    public void testCondenseFailure() throws Exception {
+        FakePipeline pipeline = new FakePipeline(2, 2);
+        pipeline.condenseFailsOn = 3;
+
+        Timespan span = days(1, 7);
+        try {
+            pipeline.run(span.startTimestamp(), span);
+            Assert.fail("the worker's exception should reach the caller");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("bad frame", e.getCause().getMessage());
+        }
+
+        Assert.assertEquals(Arrays.asList(1, 2), storedDays());
+    }
+}
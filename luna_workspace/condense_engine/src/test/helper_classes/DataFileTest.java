@@ -1,9 +1,15 @@
 package test.helper_classes;
 
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.Before;
 import org.junit.After;
 
+import helper_classes.*;
+
 /**
  * DataFile Tester.
  *
@@ -13,12 +19,22 @@ import org.junit.After;
  */
 public class DataFileTest {
 
+    String filename;
+
     @Before
     public void before() throws Exception {
+        filename = File.createTempFile("DataFileTest", ".bin").getPath();
     }
 
     @After
     public void after() throws Exception {
+        new File(filename).delete();
+    }
+
+    private void writeBytes(byte[] bytes) throws Exception {
+        FileOutputStream out = new FileOutputStream(filename);
+        out.write(bytes);
+        out.close();
     }
 
     /**
@@ -125,6 +141,56 @@ public class DataFileTest {
 //TODO: Test goes here... 
     }
 
+    /**
+     * Method: readDoubles2D(int rows, int cols)
+     */
+    @Test
+    public void testReadDoubles2D() throws Exception {
+        DataFile out = new DataFile();
+        out.create(filename);
+        out.writeInt(7);
+        out.writeDouble2d(new double[][] {{1.0, 2.0, 3.0}, {4.0, 5.0, 6.0}});
+        out.writeDouble2d(new double[][] {{-1.0, -2.0, -3.0}, {-4.0, -5.0, -6.0}});
+        out.writeInt(8);
+        out.close();
+
+        // Stream and mapped reads can be mixed, each picks up where the last left off.
+        DataFile in = new DataFile(filename);
+        Assert.assertEquals(7, in.readInt());
+        double[][] first = in.readDoubles2D(2, 3);
+        double[][] second = in.readDoubles2D(2, 3);
+        Assert.assertEquals(8, in.readInt());
+        in.close();
+
+        Assert.assertEquals(2.0, first[0][1], 0.0);
+        Assert.assertEquals(6.0, first[1][2], 0.0);
+        Assert.assertEquals(-4.0, second[1][0], 0.0);
+    }
+
+    /**
+     * Method: readInts(int count, ByteOrder order)
+     */
+    @Test
+    public void testReadIntsByteOrder() throws Exception {
+        writeBytes(new byte[] {0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x02});
+
+        DataFile in = new DataFile(filename);
+        int[] ints = in.readInts(2, java.nio.ByteOrder.LITTLE_ENDIAN);
+        in.close();
+
+        Assert.assertEquals(1, ints[0]);
+        Assert.assertEquals(0x02000000, ints[1]);
+
+        // Reading past the end of the file is an error.
+        in = new DataFile(filename);
+        try {
+            in.readInts(3, java.nio.ByteOrder.BIG_ENDIAN);
+            Assert.fail("read past the end of the file");
+        } catch (java.io.EOFException e) {
+        }
+        in.close();
+    }
+
     /**
      * Method: readFloats()
      */
@@ -186,7 +252,18 @@ public class DataFileTest {
      */
     @Test
     public void testReadInt2d() throws Exception {
-//TODO: Test goes here... 
+        DataFile out = new DataFile();
+        out.create(filename);
+        out.writeInt2d(new int[][] {{1, -2, 3}, {400000, 5, -6}});
+        out.close();
+
+        DataFile in = new DataFile(filename);
+        int[][] ints = in.readInt2D(2, 3);
+        in.close();
+
+        Assert.assertEquals(-2, ints[0][1]);
+        Assert.assertEquals(400000, ints[1][0]);
+        Assert.assertEquals(-6, ints[1][2]);
     }
 
     /**
@@ -202,7 +279,17 @@ public class DataFileTest {
      */
     @Test
     public void testRead2ByteInts2D() throws Exception {
-//TODO: Test goes here... 
+        // Little-endian, unsigned.
+        writeBytes(new byte[] {0x34, 0x12, (byte) 0xff, (byte) 0xff, 0x01, 0x00, 0x00, (byte) 0x80});
+
+        DataFile in = new DataFile(filename);
+        int[][] ints = in.read2ByteInts2D(2, 2);
+        in.close();
+
+        Assert.assertEquals(0x1234, ints[0][0]);
+        Assert.assertEquals(65535, ints[0][1]);
+        Assert.assertEquals(1, ints[1][0]);
+        Assert.assertEquals(0x8000, ints[1][1]);
     }
 
     /**
@@ -210,7 +297,17 @@ public class DataFileTest {
      */
     @Test
     public void testReadFloat2d() throws Exception {
-//TODO: Test goes here... 
+        DataFile out = new DataFile();
+        out.create(filename);
+        out.writeFloat2d(new float[][] {{1.5f, -2.25f}, {3.0f, 1.0e10f}});
+        out.close();
+
+        DataFile in = new DataFile(filename);
+        float[][] floats = in.readFloat2d(2, 2);
+        in.close();
+
+        Assert.assertEquals(-2.25f, floats[0][1], 0.0f);
+        Assert.assertEquals(1.0e10f, floats[1][1], 0.0f);
     }
 
     /**
@@ -0,0 +1,133 @@
+package test.helper_classes;
+
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import helper_classes.*;
+
+/**
+ * DatabaseCache Tester.
+ */
+public class DatabaseCacheTest {
+
+    // Counts the reads that get through to the database.
+    int reads;
+
+    DatabaseOffHeapSchema db;
+    DatabaseCache cache;
+    GriddedLocation[][] locs;
+
+    @Before
+    public void before() throws Exception {
+        reads = 0;
+
+        db = new DatabaseOffHeapSchema("", "CACHETEST") {
+            public ArrayList<GriddedVector> getVectorsAtTime(int timeID) {
+                reads++;
+                return super.getVectorsAtTime(timeID);
+            }
+            public ArrayList<Timestamp> getTimestamps() {
+                reads++;
+                return super.getTimestamps();
+            }
+        };
+
+        // Room for two days of 12 vectors, and a little more.
+        cache = new DatabaseCache(db, 2 * (64 + 12 * 48) + 100);
+        Assert.assertTrue(cache.connect());
+        locs = TestGrid.store(cache);
+
+        for (int day = 1; day <= 3; day++) storeDay(day);
+    }
+
+    @After
+    public void after() throws Exception {
+        cache.disconnect();
+    }
+
+    private int storeDay(int day) {
+        int id = cache.storeTimestamp(new Timestamp(2000, 1, day));
+
+        cache.storeFrame(TestGrid.frame(day, new LocationTable(locs), id, false));
+
+        return id;
+    }
+
+    /**
+     * Method: getVectorsAtTime(int timestampID)
+     */
+    @Test
+    public void testGetVectorsAtTime() throws Exception {
+        ArrayList<GriddedVector> first = cache.getVectorsAtTime(1);
+        Assert.assertEquals(12, first.size());
+        Assert.assertEquals(1, reads);
+
+        // The second time is from memory.
+        Assert.assertSame(first, cache.getVectorsAtTime(1));
+        Assert.assertEquals(1, reads);
+        Assert.assertEquals(1, cache.hits());
+        Assert.assertEquals(1, cache.misses());
+    }
+
+    /**
+     * Method: put(Object key, Object value, long size)
+     */
+    @Test
+    public void testEviction() throws Exception {
+        cache.getVectorsAtTime(1);
+        cache.getVectorsAtTime(2);
+        cache.getVectorsAtTime(1);
+        Assert.assertEquals(2, reads);
+
+        // Only two days fit: day 2, the least recently used, goes.
+        cache.getVectorsAtTime(3);
+        Assert.assertEquals(1, cache.evictions());
+        Assert.assertTrue(cache.bytes() <= cache.capacity());
+
+        cache.getVectorsAtTime(1);
+        Assert.assertEquals(3, reads);
+        cache.getVectorsAtTime(2);
+        Assert.assertEquals(4, reads);
+    }
+
+    /**
+     * Method: storeFrame(GridFrame frame), storeVector(GriddedVector v)
+     */
+    @Test
+    public void testInvalidation() throws Exception {
+        Assert.assertEquals(3, cache.getTimestamps().size());
+        Assert.assertEquals(12, cache.getVectorsAtTime(3).size());
+
+        // A new day: the timestamps are read again.
+        int id = storeDay(4);
+        Assert.assertEquals(4, cache.getTimestamps().size());
+        Assert.assertEquals(4, cache.getTimestamp(id).dayOfMonth());
+
+        // More vectors for a day already cached.
+        cache.storeVector(new GriddedVector(999, locs[0][0], 3));
+        Assert.assertEquals(13, cache.getVectorsAtTime(3).size());
+
+        // Changing channel empties the cache.
+        int before = reads;
+        cache.useChannel(1);
+        cache.getVectorsAtTime(3);
+        Assert.assertEquals(before + 1, reads);
+        Assert.assertEquals(1, cache.size());
+    }
+
+    /**
+     * Method: getVectors(int first, int last)
+     */
+    @Test
+    public void testGetVectors() throws Exception {
+        Assert.assertEquals(36, cache.getVectors(1, 5).size());
+        Assert.assertEquals(12, cache.getVectors(new Range(2), new Range(0, 2), null, null).size());
+        Assert.assertEquals(4, cache.getMetadata().cols());
+        Assert.assertEquals(12, cache.getLocations().size());
+        cache.status();
+    }
+}
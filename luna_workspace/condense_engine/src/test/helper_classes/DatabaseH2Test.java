@@ -1,9 +1,20 @@
 package test.helper_classes;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.Before;
 import org.junit.After;
 
+import helper_classes.*;
+
 /**
  * DatabaseH2 Tester.
  *
@@ -13,12 +24,33 @@ import org.junit.After;
  */
 public class DatabaseH2Test {
 
+    DatabaseH2 db;
+    GriddedLocation[][] locs;
+
     @Before
     public void before() throws Exception {
+        // A private, in-memory database.
+        db = new DatabaseH2("jdbc:h2:mem:", "H2TEST");
+        db.setCommitInterval(2);
+        Assert.assertTrue(db.connect());
+        db.clean();
+        locs = TestGrid.store(db);
     }
 
     @After
     public void after() throws Exception {
+        db.disconnect();
+    }
+
+    /*
+     * Store one day's grid, with a couple of holes in it (see TestGrid).
+     */
+    private int storeDay(int value) {
+        return TestGrid.storeDay(db, locs, value);
+    }
+
+    private int storeDay(Timestamp t, int value) {
+        return TestGrid.storeDay(db, locs, t, value);
     }
 
     /**
@@ -34,7 +66,103 @@ public class DatabaseH2Test {
      */
     @Test
     public void testConnectReadOnly() throws Exception {
-//TODO: Test goes here... 
+        final int[] ids = new int[6];
+        for (int i = 0; i < ids.length; i++) ids[i] = storeDay(i + 1);
+        db.commit();
+
+        // A second, read-only instance on the same database, shared by
+        // several threads through a pool of connections.
+        final DatabaseH2 reader = new DatabaseH2("jdbc:h2:mem:", "H2TEST");
+        Assert.assertTrue(reader.connectReadOnly(3));
+        Assert.assertEquals(6, reader.getTimestamps().size());
+
+        final int[] counts = new int[8];
+        final Throwable[] errors = new Throwable[counts.length];
+        Thread[] threads = new Thread[counts.length];
+
+        for (int t = 0; t < threads.length; t++) {
+            final int n = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int k = 0; k < 20; k++) {
+                            int id = ids[(n + k) % ids.length];
+                            for (GriddedVector v : reader.getVectorsAtTime(id)) {
+                                Assert.assertEquals(id * 100 + v.row() * 10 + v.col(), v.data());
+                                counts[n]++;
+                            }
+                            try (VectorCursor cursor = reader.cursor(new Range(id), new Range(0), null, null)) {
+                                while (cursor.hasNext()) {
+                                    Assert.assertEquals(0, cursor.next().row());
+                                    counts[n]++;
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors[n] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+            Assert.assertNull(errors[t]);
+            Assert.assertEquals(20 * (10 + 4), counts[t]);
+        }
+
+        reader.disconnect();
+    }
+
+    /**
+     * Method: connectReadOnly(int connections), getTimestamp(int id)
+     */
+    @Test
+    public void testPoolWithOpenCursors() throws Exception {
+        for (int i = 1; i <= 3; i++) storeDay(i);
+        db.commit();
+
+        final DatabaseH2 reader = new DatabaseH2("jdbc:h2:mem:", "H2TEST");
+        Assert.assertTrue(reader.connectReadOnly(3));
+
+        // As many threads as connections, each holding a cursor open (and so
+        // a connection) while it looks up each vector's timestamp and
+        // location: those mustn't need a connection of their own.
+        final CyclicBarrier allOpen = new CyclicBarrier(3);
+        final int[] counts = new int[3];
+        final Throwable[] errors = new Throwable[counts.length];
+        Thread[] threads = new Thread[counts.length];
+
+        for (int t = 0; t < threads.length; t++) {
+            final int n = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try (VectorCursor cursor = reader.cursor(new Range(n + 1), null, null, null)) {
+                        allOpen.await();
+                        while (cursor.hasNext()) {
+                            GriddedVector v = cursor.next();
+                            Assert.assertEquals(n + 1, reader.getTimestamp(v.timestampID()).dayOfMonth());
+                            Assert.assertEquals(v.row(), reader.getLocation(v.location().id()).row());
+                            Assert.assertEquals(4, reader.getMetadata().cols());
+                            counts[n]++;
+                        }
+                    } catch (Throwable e) {
+                        errors[n] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join(10000);
+            Assert.assertFalse("deadlocked on the pool", threads[t].isAlive());
+            Assert.assertNull(errors[t]);
+            Assert.assertEquals(10, counts[t]);
+        }
+
+        reader.disconnect();
     }
 
     /**
@@ -106,7 +234,34 @@ public class DatabaseH2Test {
      */
     @Test
     public void testStoreV() throws Exception {
-//TODO: Test goes here... 
+        int id = db.storeTimestamp(new Timestamp(2000, 1, 1));
+        db.storeVector(new GriddedVector(1234, locs[2][3], id));
+        db.flush();
+
+        java.util.ArrayList<GriddedVector> list = db.getVectorsAtTime(id);
+        Assert.assertEquals(1, list.size());
+        Assert.assertEquals(1234, list.get(0).data());
+        Assert.assertEquals(2, list.get(0).row());
+        Assert.assertEquals(3, list.get(0).col());
+    }
+
+    /**
+     * Method: storeFrame(GridFrame frame)
+     */
+    @Test
+    public void testStoreFrame() throws Exception {
+        int id = db.storeTimestamp(new Timestamp(2000, 1, 1));
+
+        int[] values = new int[12];
+        java.util.Arrays.fill(values, GeoObject.NODATA);
+        values[0] = 100;
+        values[7] = 107;
+        db.storeFrame(new GridFrame(values, new LocationTable(locs), id));
+
+        int[][] grid = GriddedVector.createArrayFromVectorList(3, 4, db.getVectorsAtTime(id));
+        Assert.assertEquals(2, db.numberOfVectors());
+        Assert.assertEquals(100, grid[0][0]);
+        Assert.assertEquals(107, grid[1][3]);
     }
 
     /**
@@ -138,7 +293,19 @@ public class DatabaseH2Test {
      */
     @Test
     public void testAddV() throws Exception {
-//TODO: Test goes here... 
+        int first = storeDay(1);
+        int second = storeDay(2);
+        int third = storeDay(3);
+
+        Assert.assertEquals(30, db.numberOfVectors());
+        Assert.assertEquals(10, db.getVectorsAtTime(first).size());
+        Assert.assertEquals(10, db.getVectorsAtTime(second).size());
+        Assert.assertEquals(10, db.getVectorsAtTime(third).size());
+
+        int[][] grid = GriddedVector.createArrayFromVectorList(3, 4, db.getVectorsAtTime(second));
+        Assert.assertEquals(200, grid[0][0]);
+        Assert.assertEquals(223, grid[2][3]);
+        Assert.assertEquals(0, grid[1][2]);
     }
 
     /**
@@ -202,7 +369,33 @@ public class DatabaseH2Test {
      */
     @Test
     public void testGetVectors() throws Exception {
-//TODO: Test goes here... 
+        storeDay(1);
+        int second = storeDay(2);
+        int third = storeDay(3);
+        db.createIndexes();
+
+        // Time range only.
+        Assert.assertEquals(20, db.getVectors(new Range(second, third), null, null, null).size());
+
+        // A box of rows and columns, over all time.
+        ArrayList<GriddedVector> list = db.getVectors(null, new Range(2), new Range(1, 2), null);
+        Assert.assertEquals(6, list.size());
+        for (GriddedVector v : list) {
+            Assert.assertEquals(2, v.row());
+            Assert.assertTrue(v.col() >= 1 && v.col() <= 2);
+            Assert.assertEquals(-68.0, v.lat(), 0.0);
+        }
+
+        // Everything at once: day 2, row 0, values 201 to 203.
+        list = db.getVectors(new Range(second), new Range(0), Range.ALL, new Range(201, 203));
+        Assert.assertEquals(3, list.size());
+        for (GriddedVector v : list) {
+            Assert.assertEquals(200 + v.col(), v.data());
+        }
+
+        // Nothing there.
+        Assert.assertEquals(0, db.getVectors(new Range(second), null, null, new Range(40000, 50000)).size());
+        Assert.assertEquals(0, db.getVectors(new Range(5, 4), null, null, null).size());
     }
 
     /**
@@ -221,12 +414,68 @@ public class DatabaseH2Test {
 //TODO: Test goes here... 
     }
 
+    /**
+     * Method: cursor(Range time, Range rows, Range cols, Range values)
+     */
+    @Test
+    public void testCursor() throws Exception {
+        int first = storeDay(1);
+        storeDay(2);
+        int third = storeDay(3);
+
+        // A small fetch size, so the rows come from the server in pieces.
+        db.setFetchSize(4);
+
+        int n = 0;
+        try (VectorCursor cursor = db.cursor(new Range(first, third), null, null, null)) {
+            while (cursor.hasNext()) {
+                GriddedVector v = cursor.next();
+                Assert.assertEquals(v.timestampID() * 100 + v.row() * 10 + v.col(), v.data());
+                n++;
+            }
+        }
+        Assert.assertEquals(30, n);
+        Assert.assertEquals(db.getVectors(first, third).size(), n);
+
+        // Closed early.
+        VectorCursor cursor = db.cursor(null, new Range(0), null, null);
+        Assert.assertTrue(cursor.hasNext());
+        cursor.next();
+        cursor.close();
+        Assert.assertFalse(cursor.hasNext());
+
+        // Or read into a list.
+        Assert.assertEquals(12, db.cursor(null, new Range(0), null, null).toList().size());
+    }
+
     /**
      * Method: getVectorsAtTime(int time)
      */
     @Test
     public void testGetVectorsAtTime() throws Exception {
-//TODO: Test goes here... 
+        int id = storeDay(3);
+
+        // Every vector comes back with its own location, resolved from the
+        // location index.
+        ArrayList<GriddedVector> list = db.getVectorsAtTime(id);
+        Assert.assertEquals(10, list.size());
+        for (GriddedVector v : list) {
+            Assert.assertEquals(300 + v.row() * 10 + v.col(), v.data());
+            Assert.assertEquals(-70.0 + v.row(), v.lat(), 0.0);
+            Assert.assertEquals(10.0 * v.col(), v.location().lon(), 0.0);
+        }
+
+        // Storing more locations brings the index up to date.
+        GriddedLocation extra = new GriddedLocation(5, 5, -60.0, 1.0);
+        int locID = db.storeLocation(extra);
+        int id2 = db.storeTimestamp(new Timestamp(2000, 2, 1));
+        db.storeVector(new GriddedVector(555, new GriddedLocation(locID, 5, 5, -60.0, 1.0), id2));
+        db.flush();
+
+        list = db.getVectorsAtTime(id2);
+        Assert.assertEquals(1, list.size());
+        Assert.assertEquals(5, list.get(0).row());
+        Assert.assertEquals(-60.0, db.getLocation(locID).lat(), 0.0);
     }
 
     /**
@@ -245,6 +494,515 @@ public class DatabaseH2Test {
 //TODO: Test goes here... 
     }
 
+    /**
+     * Method: aggregate(Aggregate.Group group, int blockSize, Range time, Range rows, Range cols, Range values)
+     */
+    @Test
+    public void testAggregate() throws Exception {
+        int first = storeDay(1);
+        int second = storeDay(2);
+
+        Aggregate a = db.aggregate(Aggregate.Group.TIMESTAMP, 0, null, null, null, null);
+        Assert.assertArrayEquals(new int[] {first, second}, a.keys());
+        Assert.assertArrayEquals(new long[] {10, 10}, a.counts());
+        Assert.assertEquals(1113.0, a.sums()[0], 0.0);
+        Assert.assertEquals(200, a.min(1));
+        Assert.assertEquals(223, a.max(1));
+
+        // Grid blocks of 2x2: the second block is missing row 1.
+        a = db.aggregate(Aggregate.Group.BLOCK, 2, null, null, null, null);
+        Assert.assertArrayEquals(new int[] {0, 1, 2, 3}, a.keys());
+        Assert.assertArrayEquals(new long[] {8, 4, 4, 4}, a.counts());
+        Assert.assertEquals(610.0 / 4, a.mean(1), 1e-9);
+        Assert.assertEquals(102, a.min(1));
+        Assert.assertEquals(203, a.max(1));
+        Assert.assertEquals(1, a.blockRow(2));
+        Assert.assertEquals(0, a.blockCol(2));
+
+        // With ranges.
+        a = db.aggregate(Aggregate.Group.TIMESTAMP, 0, new Range(second), new Range(2), null, null);
+        Assert.assertEquals(1, a.size());
+        Assert.assertEquals(4, a.count(0));
+        Assert.assertEquals(886.0, a.sums()[0], 0.0);
+
+        // By month: a day in February.
+        int feb = db.storeTimestamp(new Timestamp(2000, 2, 5));
+        GriddedVector[][] v = new GriddedVector[3][4];
+        v[0][0] = new GriddedVector(7, locs[0][0], feb);
+        db.storeVectorArray(v, locs);
+
+        a = db.aggregate(Aggregate.Group.MONTH, 0, null, null, null, null);
+        Assert.assertArrayEquals(new int[] {200001, 200002}, a.keys());
+        Assert.assertArrayEquals(new long[] {20, 1}, a.counts());
+        Assert.assertEquals(7, a.min(1));
+
+        a = db.aggregate(Aggregate.Group.SEASON, 0, null, null, null, null);
+        Assert.assertArrayEquals(new int[] {20001}, a.keys());
+        Assert.assertEquals(21, a.count(0));
+
+        // Nothing in range.
+        Assert.assertEquals(0, db.aggregate(Aggregate.Group.TIMESTAMP, 0, null, null, null,
+                new Range(40000, 50000)).size());
+    }
+
+    /**
+     * Method: resume(), lastTimestamp()
+     */
+    @Test
+    public void testResume() throws Exception {
+        db.disconnect();
+
+        File dir = Files.createTempDirectory("DatabaseH2Test").toFile();
+        String path = "jdbc:h2:" + dir.getPath() + "/";
+
+        try {
+            // The first run: two days.
+            db = new DatabaseH2(path, "H2RESUME");
+            Assert.assertTrue(db.connect());
+            db.clean();
+            db.storeMetadata(new Metadata(3, 4, 0, 0, 0));
+            db.storeLocationArray(locs);
+            storeDay(1);
+            storeDay(2);
+            db.disconnect();
+
+            // The next carries on from there.
+            db = new DatabaseH2(path, "H2RESUME");
+            Assert.assertTrue(db.connect());
+            Assert.assertEquals(2, db.resume());
+            Assert.assertEquals(2, db.lastTimestamp().dayOfMonth());
+            Assert.assertEquals(12, db.getLocations().size());
+
+            Assert.assertEquals(3, storeDay(3));
+            db.disconnect();
+
+            db = new DatabaseH2(path, "H2RESUME");
+            Assert.assertTrue(db.connectReadOnly());
+            Metadata m = db.getMetadata();
+            Assert.assertEquals(3, m.timestamps());
+            Assert.assertEquals(30, m.vectors());
+            Assert.assertEquals(30, db.getVectors(1, 3).size());
+            Assert.assertEquals(10, db.getVectorsAtTime(3).size());
+            Assert.assertEquals(3, db.lastTimestamp().dayOfMonth());
+        } finally {
+            db.disconnect();
+            for (File f : dir.listFiles()) f.delete();
+            dir.delete();
+
+            // For after().
+            db = new DatabaseH2("jdbc:h2:mem:", "H2TEST");
+            db.connect();
+        }
+    }
+
+    /*
+     * Stop a run without closing the database properly: whatever wasn't
+     * committed is lost, and the metadata row isn't brought up to date.
+     */
+    private void stop(DatabaseH2 d) throws Exception {
+        java.lang.reflect.Field f = DatabaseH2.class.getDeclaredField("conn");
+        f.setAccessible(true);
+        ((java.sql.Connection) f.get(d)).close();
+    }
+
+    /**
+     * Method: resume(), after a run stopped part-way through a day
+     */
+    @Test
+    public void testResumeAfterStop() throws Exception {
+        db.disconnect();
+
+        File dir = Files.createTempDirectory("DatabaseH2Test").toFile();
+        String path = "jdbc:h2:" + dir.getPath() + "/";
+
+        try {
+            for (boolean bulk : new boolean[] {false, true}) {
+                String name = bulk ? "H2STOPBULK" : "H2STOP";
+
+                // Two days and a checkpoint, then the run stops with only
+                // part of the third stored.
+                db = new DatabaseH2(path, name);
+                db.setBulkIngest(bulk);
+                db.setCommitInterval(2);
+                Assert.assertTrue(db.connect());
+                db.clean();
+                db.storeMetadata(new Metadata(3, 4, 0, 0, 0));
+                db.storeLocationArray(locs);
+                storeDay(1);
+                storeDay(2);
+                db.checkpoint();
+
+                int id = db.storeTimestamp(new Timestamp(2000, 1, 3));
+                GriddedVector[][] v = new GriddedVector[3][4];
+                v[0][0] = new GriddedVector(300, locs[0][0], id);
+                v[0][1] = new GriddedVector(301, locs[0][1], id);
+                db.storeVectorArray(v, locs);
+                stop(db);
+
+                // Appending starts again from the third day, and stores all of it.
+                db = new DatabaseH2(path, name);
+                db.setBulkIngest(bulk);
+                Assert.assertTrue(db.connect());
+                Assert.assertEquals(name, 2, db.resume());
+                Assert.assertEquals(2, db.lastTimestamp().dayOfMonth());
+                Assert.assertEquals(3, storeDay(3));
+                db.disconnect();
+
+                db = new DatabaseH2(path, name);
+                Assert.assertTrue(db.connectReadOnly());
+                Assert.assertEquals(3, db.getMetadata().timestamps());
+                Assert.assertEquals(30, db.getVectors(1, 3).size());
+                Assert.assertEquals(10, db.getVectorsAtTime(3).size());
+                db.disconnect();
+            }
+        } finally {
+            for (File f : dir.listFiles()) f.delete();
+            dir.delete();
+
+            // For after().
+            db = new DatabaseH2("jdbc:h2:mem:", "H2TEST");
+            db.connect();
+        }
+    }
+
+    /**
+     * Method: storeChannel(String name), useChannel(int id), getChannelValues(int timestampID, int row, int col)
+     */
+    @Test
+    public void testChannels() throws Exception {
+        Assert.assertEquals(1, db.storeChannel("19h"));
+        Assert.assertEquals(2, db.storeChannel("37v"));
+        Assert.assertEquals(1, db.storeChannel("19h"));
+        Assert.assertEquals(Arrays.asList("19h", "37v"), db.getChannels());
+
+        // Day 1 has both channels, day 2 only 37v.
+        db.useChannel(1);
+        int day1 = storeDay(1);
+
+        db.useChannel(2);
+        int day2 = storeDay(2);
+        GriddedVector[][] v = new GriddedVector[3][4];
+        v[0][0] = new GriddedVector(5000, locs[0][0], day1);
+        v[2][3] = new GriddedVector(5023, locs[2][3], day1);
+        db.storeVectorArray(v, locs);
+
+        Assert.assertArrayEquals(new int[] {100, 5000}, db.getChannelValues(day1, 0, 0));
+        Assert.assertArrayEquals(new int[] {101, GeoObject.NODATA}, db.getChannelValues(day1, 0, 1));
+        Assert.assertArrayEquals(new int[] {GeoObject.NODATA, 200}, db.getChannelValues(day2, 0, 0));
+        Assert.assertArrayEquals(new int[] {GeoObject.NODATA, GeoObject.NODATA},
+                db.getChannelValues(day1, 1, 2));
+
+        // Queries only see the channel in use.
+        db.useChannel(1);
+        Assert.assertEquals(10, db.getVectorsAtTime(day1).size());
+        Assert.assertEquals(0, db.getVectorsAtTime(day2).size());
+        Assert.assertEquals(10, db.aggregate(Aggregate.Group.TIMESTAMP, 0, Range.ALL, null, null, null).count(0));
+
+        db.useChannel(2);
+        Assert.assertEquals(2, db.getVectorsAtTime(day1).size());
+        VectorCursor cursor = db.cursor(new Range(day1), new Range(2), new Range(3), null);
+        Assert.assertEquals(5023, cursor.next().data());
+        Assert.assertFalse(cursor.hasNext());
+        cursor.close();
+
+        // Channel 0 is all of them.
+        db.useChannel(0);
+        Assert.assertEquals(12, db.getVectorsAtTime(day1).size());
+
+        // The channels are kept in the database.
+        db.flush();
+        db.commit();
+        DatabaseH2 reader = new DatabaseH2("jdbc:h2:mem:", "H2TEST");
+        Assert.assertTrue(reader.connectReadOnly());
+        Assert.assertEquals(2, reader.channelID("37v"));
+        Assert.assertArrayEquals(new int[] {100, 5000}, reader.getChannelValues(day1, 0, 0));
+        reader.disconnect();
+    }
+
+    /**
+     * Method: useChannel(int id), connectReadOnly(int connections)
+     */
+    @Test
+    public void testChannelWithPool() throws Exception {
+        db.storeChannel("19h");
+        int ch37 = db.storeChannel("37v");
+        db.useChannel(ch37);
+        int day1 = storeDay(1);
+        db.flush();
+        db.commit();
+
+        // The channel is chosen before the pool opens...
+        DatabaseH2 reader = new DatabaseH2("jdbc:h2:mem:", "H2TEST");
+        reader.useChannel(ch37);
+        Assert.assertTrue(reader.connectReadOnly(3));
+        reader.useChannel(ch37);
+        Assert.assertEquals(10, reader.getVectorsAtTime(day1).size());
+
+        // ...and reading every channel at once doesn't change it under the
+        // threads sharing the pool.
+        Assert.assertArrayEquals(new int[] {GeoObject.NODATA, 100}, reader.getChannelValues(day1, 0, 0));
+        Assert.assertEquals(ch37, reader.channel());
+        reader.disconnect();
+    }
+
+    /**
+     * Method: setCsvLoad(String directory)
+     */
+    @Test
+    public void testCsvLoad() throws Exception {
+        File dir = Files.createTempDirectory("DatabaseH2Test").toFile();
+
+        try {
+            db.setCsvLoad(dir.getPath());
+            db.setPartitioning(DatabaseH2.Partitioning.MONTH);
+
+            storeDay(new Timestamp(2000, 1, 31), 1);
+            storeDay(new Timestamp(2000, 2, 1), 2);
+            Assert.assertEquals(0, dir.listFiles().length);
+
+            Assert.assertEquals(20, db.getVectors(1, 2).size());
+            for (GriddedVector v : db.getVectorsAtTime(2)) {
+                Assert.assertEquals(200 + v.row() * 10 + v.col(), v.data());
+            }
+            Assert.assertEquals(Arrays.asList("VECTORS_200002"), db.vectorTables(new Range(2)));
+
+            // Rows stored one at a time afterwards follow on.
+            db.setCsvLoad(null);
+            Assert.assertEquals(3, storeDay(new Timestamp(2000, 2, 2), 3));
+            Assert.assertEquals(30, db.getVectors(1, 3).size());
+        } finally {
+            for (File f : dir.listFiles()) f.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Method: embeddedPath(String path)
+     */
+    @Test
+    public void testEmbeddedPath() throws Exception {
+        Assert.assertEquals("jdbc:h2:~/Desktop/condense/databases/",
+                DatabaseH2.embeddedPath("jdbc:h2:tcp://localhost/~/Desktop/condense/databases/"));
+        Assert.assertEquals("jdbc:h2:/data/h2/",
+                DatabaseH2.embeddedPath("jdbc:h2:tcp://10.240.210.131:9292//data/h2/"));
+        Assert.assertEquals("jdbc:h2:mem:", DatabaseH2.embeddedPath("jdbc:h2:mem:"));
+    }
+
+    /**
+     * Method: serve(int port, boolean remote), setCredentials(String user, String password)
+     */
+    @Test
+    public void testServe() throws Exception {
+        db.disconnect();
+
+        File dir = Files.createTempDirectory("DatabaseH2Test").toFile();
+        String path = "jdbc:h2:" + dir.getPath() + "/";
+        org.h2.tools.Server server = null;
+
+        try {
+            db = new DatabaseH2(path, "H2SERVE");
+            db.setCredentials("condense", "secret");
+            Assert.assertTrue(db.connect());
+            db.clean();
+            db.storeMetadata(new Metadata(3, 4, 0, 0, 0));
+            db.storeLocationArray(locs);
+            storeDay(1);
+            db.disconnect();
+
+            // This machine only, by default.
+            server = db.serve(0, false);
+            Assert.assertNotNull(server);
+            Assert.assertFalse(server.getService().getAllowOthers());
+
+            String served = "jdbc:h2:tcp://localhost:" + server.getPort() + "/" + dir.getPath() + "/";
+            db = new DatabaseH2(served, "H2SERVE");
+            db.setCredentials("condense", "secret");
+            Assert.assertTrue(db.connectReadOnly());
+            Assert.assertEquals(10, db.getVectorsAtTime(1).size());
+
+            // Clients have to log in...
+            try {
+                DriverManager.getConnection(served + "H2SERVE", "", "").close();
+                Assert.fail("connecting without the credentials should be refused");
+            } catch (SQLException e) {
+            }
+
+            // ...and can't make databases of their own.
+            try {
+                DriverManager.getConnection(served + "H2OTHER", "condense", "secret").close();
+                Assert.fail("a new database shouldn't be made through the server");
+            } catch (SQLException e) {
+            }
+            Assert.assertFalse(new File(dir, "H2OTHER.mv.db").exists());
+
+            server.stop();
+
+            // Other machines only when asked.
+            DatabaseH2 remote = new DatabaseH2(path, "H2SERVE");
+            remote.setCredentials("condense", "secret");
+            server = remote.serve(0, true);
+            Assert.assertTrue(server.getService().getAllowOthers());
+        } finally {
+            db.disconnect();
+            if (server != null) server.stop();
+            for (File f : dir.listFiles()) f.delete();
+            dir.delete();
+
+            // For after().
+            db = new DatabaseH2("jdbc:h2:mem:", "H2TEST");
+            db.connect();
+        }
+    }
+
+    /**
+     * Method: setPartitioning(Partitioning p), vectorTables(Range time), dropPartition(String table)
+     */
+    @Test
+    public void testPartitions() throws Exception {
+        db.setPartitioning(DatabaseH2.Partitioning.MONTH);
+
+        storeDay(new Timestamp(2000, 1, 30), 1);
+        storeDay(new Timestamp(2000, 1, 31), 2);
+        storeDay(new Timestamp(2000, 2, 1), 3);
+        storeDay(new Timestamp(2000, 2, 2), 4);
+        storeDay(new Timestamp(2000, 3, 1), 5);
+
+        Assert.assertEquals(Arrays.asList("VECTORS_200001", "VECTORS_200002", "VECTORS_200003"),
+                db.vectorTables(Range.ALL));
+        Assert.assertEquals(Arrays.asList("VECTORS_200002"), db.vectorTables(new Range(3, 4)));
+        Assert.assertEquals(Arrays.asList("VECTORS_200001", "VECTORS_200002"),
+                db.vectorTables(new Range(2, 3)));
+
+        // Queries across partitions.
+        ArrayList<GriddedVector> list = db.getVectorsAtTime(3);
+        Assert.assertEquals(10, list.size());
+        Assert.assertEquals(300, list.get(0).data() / 100 * 100);
+
+        Assert.assertEquals(30, db.getVectors(new Range(2, 4), null, null, null).size());
+        Assert.assertEquals(20, db.getVectors(null, new Range(0), null, null).size());
+        Assert.assertEquals(50, db.getVectors(1, 5).size());
+
+        Aggregate a = db.aggregate(Aggregate.Group.MONTH, 0, null, null, null, null);
+        Assert.assertArrayEquals(new int[] {200001, 200002, 200003}, a.keys());
+        Assert.assertArrayEquals(new long[] {20, 20, 10}, a.counts());
+
+        // Each partition gets its indexes.
+        db.createIndexes();
+        Assert.assertEquals(10, db.getVectorsAtTime(5).size());
+
+        // Dropping a month.
+        db.dropPartition("VECTORS_200002");
+        Assert.assertEquals(2, db.vectorTables(Range.ALL).size());
+        Assert.assertEquals(0, db.getVectorsAtTime(3).size());
+        Assert.assertEquals(30, db.getVectors(1, 5).size());
+
+        int id = storeDay(new Timestamp(2000, 3, 2), 6);
+        Assert.assertEquals(10, db.getVectorsAtTime(id).size());
+        Assert.assertEquals(40, db.getVectors(1, id).size());
+    }
+
+    /**
+     * Method: resume(), partitioned
+     */
+    @Test
+    public void testResumePartitioned() throws Exception {
+        db.disconnect();
+
+        File dir = Files.createTempDirectory("DatabaseH2Test").toFile();
+        String path = "jdbc:h2:" + dir.getPath() + "/";
+
+        try {
+            db = new DatabaseH2(path, "H2PARTITIONS");
+            db.setPartitioning(DatabaseH2.Partitioning.YEAR);
+            Assert.assertTrue(db.connect());
+            db.clean();
+            db.storeMetadata(new Metadata(3, 4, 0, 0, 0));
+            db.storeLocationArray(locs);
+            storeDay(new Timestamp(2000, 12, 31), 1);
+            storeDay(new Timestamp(2001, 1, 1), 2);
+            db.disconnect();
+
+            // Appending keeps the partitioning it was made with.
+            db = new DatabaseH2(path, "H2PARTITIONS");
+            Assert.assertTrue(db.connect());
+            Assert.assertEquals(2, db.resume());
+            Assert.assertEquals(DatabaseH2.Partitioning.YEAR, db.partitioning());
+            storeDay(new Timestamp(2001, 1, 2), 3);
+            db.disconnect();
+
+            db = new DatabaseH2(path, "H2PARTITIONS");
+            Assert.assertTrue(db.connectReadOnly());
+            Assert.assertEquals(Arrays.asList("VECTORS_2000", "VECTORS_2001"), db.vectorTables(Range.ALL));
+            Assert.assertEquals(Arrays.asList("VECTORS_2001"), db.vectorTables(new Range(2, 3)));
+            Assert.assertEquals(30, db.getVectors(1, 3).size());
+            Assert.assertEquals(10, db.getVectorsAtTime(3).size());
+        } finally {
+            db.disconnect();
+            for (File f : dir.listFiles()) f.delete();
+            dir.delete();
+
+            // For after().
+            db = new DatabaseH2("jdbc:h2:mem:", "H2TEST");
+            db.connect();
+        }
+    }
+
+    /**
+     * Method: resume(), partitioning()
+     */
+    @Test
+    public void testResumeKeepsPartitioning() throws Exception {
+        db.disconnect();
+
+        File dir = Files.createTempDirectory("DatabaseH2Test").toFile();
+        String path = "jdbc:h2:" + dir.getPath() + "/";
+
+        DatabaseH2.Partitioning[][] cases = {
+            // Made with, appended to with.
+            {DatabaseH2.Partitioning.MONTH, DatabaseH2.Partitioning.YEAR},
+            {DatabaseH2.Partitioning.NONE, DatabaseH2.Partitioning.MONTH},
+            {DatabaseH2.Partitioning.YEAR, DatabaseH2.Partitioning.NONE}
+        };
+
+        try {
+            for (DatabaseH2.Partitioning[] c : cases) {
+                String name = "H2KEEP" + c[0];
+
+                db = new DatabaseH2(path, name);
+                db.setPartitioning(c[0]);
+                Assert.assertTrue(db.connect());
+                db.clean();
+                db.storeMetadata(new Metadata(3, 4, 0, 0, 0));
+                db.storeLocationArray(locs);
+                storeDay(new Timestamp(2001, 1, 1), 1);
+                db.disconnect();
+
+                // Whatever the new run asks for, the database carries on as it was made.
+                db = new DatabaseH2(path, name);
+                db.setPartitioning(c[1]);
+                Assert.assertTrue(db.connect());
+                Assert.assertEquals(1, db.resume());
+                Assert.assertEquals(c[0], db.partitioning());
+                storeDay(new Timestamp(2001, 2, 1), 2);
+                db.disconnect();
+
+                db = new DatabaseH2(path, name);
+                Assert.assertTrue(db.connectReadOnly());
+                Assert.assertEquals(20, db.getVectors(1, 2).size());
+                Assert.assertEquals(c[0] == DatabaseH2.Partitioning.MONTH ? 2 :
+                        1, db.vectorTables(Range.ALL).size());
+                db.disconnect();
+            }
+        } finally {
+            for (File f : dir.listFiles()) f.delete();
+            dir.delete();
+
+            // For after().
+            db = new DatabaseH2("jdbc:h2:mem:", "H2TEST");
+            db.connect();
+        }
+    }
+
     /**
      * Method: status()
      */
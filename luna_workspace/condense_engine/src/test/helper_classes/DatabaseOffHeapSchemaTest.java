@@ -0,0 +1,145 @@
+package test.helper_classes;
+
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import helper_classes.*;
+
+/**
+ * DatabaseOffHeapSchema Tester.
+ */
+public class DatabaseOffHeapSchemaTest {
+
+    DatabaseOffHeapSchema db;
+    GriddedLocation[][] locs;
+    LocationTable table;
+
+    @Before
+    public void before() throws Exception {
+        db = new DatabaseOffHeapSchema("", "OFFHEAPTEST");
+        Assert.assertTrue(db.connect());
+        locs = TestGrid.store(db);
+        table = new LocationTable(locs);
+    }
+
+    @After
+    public void after() throws Exception {
+        db.disconnect();
+    }
+
+    /*
+     * Store one day's grid as a frame, with a couple of holes in it (see
+     * TestGrid).
+     */
+    private int storeDay(int value) {
+        int id = db.storeTimestamp(new Timestamp(2000, 1, value));
+        db.storeFrame(TestGrid.frame(value, table, id, true));
+        return id;
+    }
+
+    /**
+     * Method: getVectorsAtTime(int timeID)
+     */
+    @Test
+    public void testGetVectorsAtTime() throws Exception {
+        int first = storeDay(1);
+        int second = storeDay(2);
+
+        Assert.assertEquals(20, db.numberOfVectors());
+
+        ArrayList<GriddedVector> list = db.getVectorsAtTime(second);
+        Assert.assertEquals(10, list.size());
+        for (GriddedVector v : list) {
+            Assert.assertEquals(second, v.timestampID());
+            Assert.assertEquals(200 + v.row() * 10 + v.col(), v.data());
+            Assert.assertEquals(-70.0 + v.row(), v.lat(), 0.0);
+        }
+
+        Assert.assertEquals(10, db.getVectorsAtTime(first).size());
+        Assert.assertEquals(0, db.getVectorsAtTime(second + 1).size());
+    }
+
+    /**
+     * Method: storeVector(GriddedVector v)
+     */
+    @Test
+    public void testInterleavedTimes() throws Exception {
+        int first = db.storeTimestamp(new Timestamp(2000, 1, 1));
+        int second = db.storeTimestamp(new Timestamp(2000, 1, 2));
+
+        // Vectors for the two days mixed together.
+        for (int c = 0; c < 4; c++) {
+            db.storeVector(new GriddedVector(100 + c, locs[0][c], first));
+            db.storeVector(new GriddedVector(200 + c, locs[0][c], second));
+        }
+
+        ArrayList<GriddedVector> list = db.getVectorsAtTime(second);
+        Assert.assertEquals(4, list.size());
+        for (int c = 0; c < 4; c++) {
+            Assert.assertEquals(200 + c, list.get(c).data());
+        }
+    }
+
+    /**
+     * Method: cursor(Range time, Range rows, Range cols, Range values)
+     */
+    @Test
+    public void testCursor() throws Exception {
+        storeDay(1);
+        int second = storeDay(2);
+        int third = storeDay(3);
+
+        Assert.assertEquals(20, db.getVectors(second, third).size());
+
+        ArrayList<GriddedVector> list = db.getVectors(null, new Range(2), new Range(1, 2), new Range(0, 299));
+        Assert.assertEquals(4, list.size());
+
+        int n = 0;
+        try (VectorCursor cursor = db.cursor(new Range(third), new Range(0), null, null)) {
+            while (cursor.hasNext()) {
+                Assert.assertEquals(third, cursor.next().timestampID());
+                n++;
+            }
+        }
+        Assert.assertEquals(4, n);
+    }
+
+    /**
+     * Method: memoryUsed()
+     */
+    @Test
+    public void testMemoryUsed() throws Exception {
+        Assert.assertEquals(0, db.memoryUsed());
+        storeDay(1);
+        Assert.assertTrue(db.memoryUsed() >= 12 * 10);
+
+        db.clean();
+        Assert.assertEquals(0, db.memoryUsed());
+        Assert.assertEquals(0, db.numberOfVectors());
+        Assert.assertEquals(0, db.numberOfTimestamps());
+    }
+
+    /**
+     * Method: aggregate(Aggregate.Group group, int blockSize, Range time, Range rows, Range cols, Range values)
+     */
+    @Test
+    public void testAggregate() throws Exception {
+        storeDay(1);
+        storeDay(2);
+
+        Aggregate a = db.aggregate(Aggregate.Group.BLOCK, 2, null, null, null, null);
+        Assert.assertArrayEquals(new int[] {0, 1, 2, 3}, a.keys());
+        Assert.assertArrayEquals(new long[] {8, 4, 4, 4}, a.counts());
+        Assert.assertEquals(610.0 / 4, a.mean(1), 1e-9);
+
+        a = db.aggregate(Aggregate.Group.MONTH, 0, null, null, new Range(0), null);
+        Assert.assertArrayEquals(new int[] {200001}, a.keys());
+        Assert.assertEquals(6, a.count(0));
+        Assert.assertEquals(100, a.min(0));
+        Assert.assertEquals(220, a.max(0));
+    }
+}
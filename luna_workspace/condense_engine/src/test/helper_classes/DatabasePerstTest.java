@@ -1,9 +1,19 @@
 package test.helper_classes;
 
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.h2.mvstore.MVStore;
+
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.Before;
 import org.junit.After;
 
+import helper_classes.*;
+
 /**
  * DatabasePerst Tester.
  *
@@ -13,12 +23,52 @@ import org.junit.After;
  */
 public class DatabasePerstTest {
 
+    File dir;
+    DatabasePerst db;
+    GriddedLocation[][] locs;
+
     @Before
     public void before() throws Exception {
+        dir = Files.createTempDirectory("DatabasePerstTest").toFile();
+
+        db = new DatabasePerst(dir.getPath() + "/", "PERSTTEST");
+        Assert.assertTrue(db.connect());
+        db.clean();
+        locs = TestGrid.store(db);
     }
 
     @After
     public void after() throws Exception {
+        db.disconnect();
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    /*
+     * Store one day's grid, with a couple of holes in it (see TestGrid).
+     */
+    private int storeDay(int value) {
+        return TestGrid.storeDay(db, locs, value);
+    }
+
+    /*
+     * Stop the way a killed program would: close the file without writing
+     * anything, leaving it as it was at the last commit.
+     */
+    private void stop() throws Exception {
+        Field field = DatabasePerst.class.getDeclaredField("store");
+        field.setAccessible(true);
+        ((MVStore) field.get(db)).closeImmediately();
+        field.set(db, null);
+    }
+
+    /*
+     * Close the database and open it again, read-only.
+     */
+    private void reopen() {
+        db.disconnect();
+        db = new DatabasePerst(dir.getPath() + "/", "PERSTTEST");
+        Assert.assertTrue(db.connectReadOnly());
     }
 
     /**
@@ -26,7 +76,7 @@ public class DatabasePerstTest {
      */
     @Test
     public void testConnect() throws Exception {
-//TODO: Test goes here... 
+        Assert.assertTrue(new File(db.fileName()).exists());
     }
 
     /**
@@ -34,7 +84,17 @@ public class DatabasePerstTest {
      */
     @Test
     public void testConnectReadOnly() throws Exception {
-//TODO: Test goes here... 
+        storeDay(1);
+        storeDay(2);
+        reopen();
+
+        Assert.assertEquals(2, db.numberOfTimestamps());
+        Assert.assertEquals(20, db.numberOfVectors());
+        Assert.assertEquals(12, db.getLocations().size());
+
+        int[][] grid = GriddedVector.createArrayFromVectorList(3, 4, db.getVectorsAtTime(2));
+        Assert.assertEquals(200, grid[0][0]);
+        Assert.assertEquals(223, grid[2][3]);
     }
 
     /**
@@ -42,103 +102,222 @@ public class DatabasePerstTest {
      */
     @Test
     public void testDisconnect() throws Exception {
-//TODO: Test goes here... 
-    }
+        storeDay(1);
+        db.disconnect();
 
-    /**
-     * Method: writeCheck(String methodName)
-     */
-    @Test
-    public void testWriteCheck() throws Exception {
-//TODO: Test goes here... 
+        db = new DatabasePerst(dir.getPath() + "/", "PERSTTEST");
+        Assert.assertTrue(db.connect());
+        Assert.assertEquals(1, db.resume());
+        Assert.assertEquals(10, db.getVectorsAtTime(1).size());
     }
 
     /**
-     * Method: store(Metadata m)
+     * Method: clean()
      */
     @Test
-    public void testStoreM() throws Exception {
-//TODO: Test goes here... 
+    public void testClean() throws Exception {
+        storeDay(1);
+        db.clean();
+
+        Assert.assertEquals(0, db.numberOfTimestamps());
+        Assert.assertEquals(0, db.numberOfVectors());
+        Assert.assertEquals(0, db.getLocations().size());
+        Assert.assertEquals(3, db.rows());
+
+        reopen();
+        Assert.assertEquals(0, db.numberOfTimestamps());
+        Assert.assertEquals(0, db.getVectorsAtTime(1).size());
     }
 
     /**
-     * Method: store(Timestamp t)
+     * Method: flush()
      */
     @Test
-    public void testStoreT() throws Exception {
-//TODO: Test goes here... 
+    public void testFlush() throws Exception {
+        int id = storeDay(1);
+
+        // Vectors stored one at a time wait in memory, where reads see
+        // them, until the flush writes them and the metadata.
+        db.storeVector(new GriddedVector(999, locs[1][2], id));
+        Assert.assertEquals(11, db.getVectorsAtTime(id).size());
+        Assert.assertEquals(11, db.numberOfVectors());
+
+        db.flush();
+        Assert.assertEquals(11, db.getVectorsAtTime(id).size());
+        reopen();
+        Assert.assertEquals(11, db.getMetadata().vectors());
+        Assert.assertEquals(999, db.getTimeSeries(1, 2, 1, 1).value(0));
     }
 
     /**
-     * Method: store(ArrayList<GriddedLocation> locs)
+     * Method: resume(), after a run stopped between flushes
      */
     @Test
-    public void testStoreLocs() throws Exception {
-//TODO: Test goes here... 
+    public void testResumeAfterStop() throws Exception {
+        storeDay(1);
+        storeDay(2);
+
+        // Part of a third day, never flushed, and then the program stops:
+        // the file is closed without writing anything more.
+        int id = db.storeTimestamp(new Timestamp(2000, 1, 3));
+        db.storeVector(new GriddedVector(777, locs[0][0], id));
+        db.storeVector(new GriddedVector(778, locs[2][3], id));
+        stop();
+
+        db = new DatabasePerst(dir.getPath() + "/", "PERSTTEST");
+        Assert.assertTrue(db.connect());
+
+        // It carries on from the last flush, at the end of the second day.
+        Assert.assertEquals(2, db.resume());
+        Assert.assertEquals(2, db.numberOfTimestamps());
+        Assert.assertEquals(20, db.numberOfVectors());
+        Assert.assertEquals(12, db.getLocations().size());
+        Assert.assertEquals(0, db.getVectorsAtTime(3).size());
+        Assert.assertArrayEquals(new int[] {100, 200}, db.getTimeSeries(0, 0, 1, 3).values());
+
+        // The third day again, in full, takes the same ID.
+        Assert.assertEquals(3, storeDay(3));
+        reopen();
+
+        Assert.assertEquals(3, db.numberOfTimestamps());
+        Assert.assertEquals(30, db.numberOfVectors());
+        Assert.assertEquals(3, db.lastTimestamp().dayOfMonth());
+        Assert.assertEquals(10, db.getVectorsAtTime(3).size());
+        Assert.assertArrayEquals(new int[] {100, 200, 300}, db.getTimeSeries(0, 0, 1, 3).values());
+        Assert.assertArrayEquals(new int[] {123, 223, 323}, db.getTimeSeries(2, 3, 1, 3).values());
     }
 
     /**
-     * Method: store(GriddedLocation loc)
+     * Method: storeMetadata(Metadata m)
      */
     @Test
-    public void testStoreLoc() throws Exception {
-//TODO: Test goes here... 
+    public void testStoreMetadata() throws Exception {
+        reopen();
+        Assert.assertEquals(3, db.rows());
+        Assert.assertEquals(4, db.cols());
     }
 
     /**
-     * Method: store(GriddedVector v)
+     * Method: storeTimestamp(Timestamp t)
      */
     @Test
-    public void testStoreV() throws Exception {
-//TODO: Test goes here... 
+    public void testStoreTimestamp() throws Exception {
+        db.storeTimestamp(new Timestamp(2004, 2, 29));
+        reopen();
+
+        Timestamp t = db.getTimestamp(1);
+        Assert.assertEquals(1, t.id());
+        Assert.assertEquals(2004, t.year());
+        Assert.assertEquals(2, t.month());
+        Assert.assertEquals(29, t.dayOfMonth());
+        Assert.assertNull(db.getTimestamp(2));
     }
 
     /**
-     * Method: store(int data, int row, int col, int time)
+     * Method: storeLocationArray(GriddedLocation[][] locs)
      */
     @Test
-    public void testStoreForDataRowColTime() throws Exception {
-//TODO: Test goes here... 
+    public void testStoreLocationArray() throws Exception {
+        reopen();
+
+        ArrayList<GriddedLocation> list = db.getLocations();
+        Assert.assertEquals(12, list.size());
+        GriddedLocation loc = list.get(6);
+        Assert.assertEquals(7, loc.id());
+        Assert.assertEquals(1, loc.row());
+        Assert.assertEquals(2, loc.col());
+        Assert.assertEquals(-69.0, loc.lat(), 1e-9);
+        Assert.assertEquals(20.0, loc.lon(), 1e-9);
     }
 
     /**
-     * Method: add(GriddedLocation[][] loc)
+     * Method: storeLocation(GriddedLocation loc), getLocation(int id)
      */
     @Test
-    public void testAddLoc() throws Exception {
-//TODO: Test goes here... 
+    public void testStoreLocation() throws Exception {
+        Assert.assertEquals(13, db.storeLocation(new GriddedLocation(3, 0, -67.0, 0.0)));
+        reopen();
+
+        Assert.assertEquals(13, db.getMetadata().locations());
+        GriddedLocation loc = db.getLocation(13);
+        Assert.assertEquals(3, loc.row());
+        Assert.assertEquals(-67.0, loc.lat(), 1e-9);
+        Assert.assertNull(db.getLocation(14));
     }
 
     /**
-     * Method: add(GriddedVector[][] v)
+     * Method: storeVector(GriddedVector v)
      */
     @Test
-    public void testAddV() throws Exception {
-//TODO: Test goes here... 
+    public void testStoreVector() throws Exception {
+        int id = db.storeTimestamp(new Timestamp(2000, 1, 1));
+        db.storeVector(new GriddedVector(1234, locs[2][3], id));
+
+        ArrayList<GriddedVector> list = db.getVectorsAtTime(id);
+        Assert.assertEquals(1, list.size());
+        Assert.assertEquals(1234, list.get(0).data());
+        Assert.assertEquals(2, list.get(0).row());
+        Assert.assertEquals(3, list.get(0).col());
     }
 
     /**
-     * Method: getMetadata()
+     * Method: storeVector(GriddedVector v), values outside 16 bits
      */
     @Test
-    public void testGetMetadata() throws Exception {
-//TODO: Test goes here... 
+    public void testStoreVectorOutOfRange() throws Exception {
+        int id = db.storeTimestamp(new Timestamp(2000, 1, 1));
+        db.storeVector(new GriddedVector(Short.MAX_VALUE, locs[0][0], id));
+        db.storeVector(new GriddedVector(Short.MIN_VALUE, locs[0][1], id));
+        db.storeVector(new GriddedVector(Short.MAX_VALUE + 1, locs[0][2], id));
+        db.storeVector(new GriddedVector(Short.MIN_VALUE - 1, locs[0][3], id));
+        db.storeVector(new GriddedVector(GeoObject.NODATA, locs[1][0], id));
+
+        // The ones that don't fit are left out, not wrapped.
+        int[][] grid = GriddedVector.createArrayFromVectorList(3, 4, db.getVectorsAtTime(id));
+        Assert.assertEquals(2, db.numberOfVectors());
+        Assert.assertEquals(Short.MAX_VALUE, grid[0][0]);
+        Assert.assertEquals(Short.MIN_VALUE, grid[0][1]);
+        Assert.assertEquals(0, grid[0][2]);
+        Assert.assertEquals(0, db.getTimeSeries(0, 2, 1, 1).size());
+        Assert.assertEquals(0, db.getTimeSeries(1, 0, 1, 1).size());
     }
 
     /**
-     * Method: updateMetadata()
+     * Method: storeVectorArray(GriddedVector[][] v, GriddedLocation[][] locations)
      */
     @Test
-    public void testUpdateMetadata() throws Exception {
-//TODO: Test goes here... 
+    public void testStoreVectorArray() throws Exception {
+        int first = storeDay(1);
+        int second = storeDay(2);
+        int third = storeDay(3);
+
+        Assert.assertEquals(30, db.numberOfVectors());
+        Assert.assertEquals(10, db.getVectorsAtTime(first).size());
+        Assert.assertEquals(10, db.getVectorsAtTime(third).size());
+
+        int[][] grid = GriddedVector.createArrayFromVectorList(3, 4, db.getVectorsAtTime(second));
+        Assert.assertEquals(200, grid[0][0]);
+        Assert.assertEquals(223, grid[2][3]);
+        Assert.assertEquals(0, grid[1][2]);
+
+        // More for a day already written goes on the end of it.
+        db.storeVector(new GriddedVector(999, locs[1][2], second));
+        db.flush();
+        Assert.assertEquals(11, db.getVectorsAtTime(second).size());
     }
 
     /**
-     * Method: get(int i)
+     * Method: getMetadata()
      */
     @Test
-    public void testGet() throws Exception {
-//TODO: Test goes here... 
+    public void testGetMetadata() throws Exception {
+        storeDay(1);
+        reopen();
+
+        Metadata m = db.getMetadata();
+        Assert.assertEquals(1, m.timestamps());
+        Assert.assertEquals(12, m.locations());
+        Assert.assertEquals(10, m.vectors());
     }
 
     /**
@@ -146,7 +325,10 @@ public class DatabasePerstTest {
      */
     @Test
     public void testNumberOfTimestamps() throws Exception {
-//TODO: Test goes here... 
+        Assert.assertEquals(0, db.numberOfTimestamps());
+        storeDay(1);
+        storeDay(2);
+        Assert.assertEquals(2, db.numberOfTimestamps());
     }
 
     /**
@@ -154,7 +336,10 @@ public class DatabasePerstTest {
      */
     @Test
     public void testGetTimestamps() throws Exception {
-//TODO: Test goes here... 
+        storeDay(1);
+        storeDay(2);
+        Assert.assertEquals(2, db.getTimestamps().size());
+        Assert.assertEquals(2, db.lastTimestamp().dayOfMonth());
     }
 
     /**
@@ -162,7 +347,7 @@ public class DatabasePerstTest {
      */
     @Test
     public void testGetLocations() throws Exception {
-//TODO: Test goes here... 
+        Assert.assertEquals(12, db.getLocations().size());
     }
 
     /**
@@ -170,15 +355,39 @@ public class DatabasePerstTest {
      */
     @Test
     public void testNumberOfVectors() throws Exception {
-//TODO: Test goes here... 
+        storeDay(1);
+        Assert.assertEquals(10, db.numberOfVectors());
     }
 
     /**
-     * Method: getVectors()
+     * Method: getVectors(Range time, Range rows, Range cols, Range values)
      */
     @Test
     public void testGetVectors() throws Exception {
-//TODO: Test goes here... 
+        storeDay(1);
+        storeDay(2);
+        storeDay(3);
+
+        // A box small enough for the location index...
+        ArrayList<GriddedVector> list = db.getVectors(new Range(2, 3), new Range(0, 1), new Range(1), null);
+        Assert.assertEquals(4, list.size());
+        Assert.assertEquals(201, list.get(0).data());
+        Assert.assertEquals(301, list.get(1).data());
+        Assert.assertEquals(211, list.get(2).data());
+        Assert.assertEquals(311, list.get(3).data());
+
+        // ...and the rest, a day at a time.
+        Assert.assertEquals(14, db.getVectors(new Range(1, 2), new Range(0, 2), null, new Range(100, 203)).size());
+        Assert.assertEquals(0, db.getVectors(new Range(1, 3), new Range(1), new Range(2, 3), null).size());
+
+        // Boxes off the grid, or partly off it, only see the cells on it.
+        Assert.assertEquals(0, db.getVectors(null, new Range(-5, -1), new Range(0, 1), null).size());
+        Assert.assertEquals(0, db.getVectors(null, new Range(0, 1), new Range(7, 8), null).size());
+        Assert.assertEquals(0, db.getVectors(null, new Range(100, 101), new Range(0, 1), null).size());
+        Assert.assertEquals(0, db.getVectors(new Range(5, 9), new Range(0, 1), new Range(0, 1), null).size());
+        list = db.getVectors(null, new Range(-1, 0), new Range(3, 5), null);
+        Assert.assertEquals(3, list.size());
+        for (GriddedVector v : list) Assert.assertEquals(TestGrid.value(v.timestampID(), 0, 3), v.data());
     }
 
     /**
@@ -186,7 +395,7 @@ public class DatabasePerstTest {
      */
     @Test
     public void testRows() throws Exception {
-//TODO: Test goes here... 
+        Assert.assertEquals(3, db.rows());
     }
 
     /**
@@ -194,31 +403,29 @@ public class DatabasePerstTest {
      */
     @Test
     public void testCols() throws Exception {
-//TODO: Test goes here... 
+        Assert.assertEquals(4, db.cols());
     }
 
     /**
-     * Method: getVectorsAtTime(int time)
+     * Method: getVectorsAtTime(int startTimestampID)
      */
     @Test
     public void testGetVectorsAtTime() throws Exception {
-//TODO: Test goes here... 
-    }
-
-    /**
-     * Method: getVectorsAtTimeIndex(int index)
-     */
-    @Test
-    public void testGetVectorsAtTimeIndex() throws Exception {
-//TODO: Test goes here... 
+        storeDay(1);
+        Assert.assertEquals(10, db.getVectorsAtTime(1).size());
+        Assert.assertEquals(0, db.getVectorsAtTime(2).size());
     }
 
     /**
-     * Method: getVectors(int first, int last)
+     * Method: getVectors(int startTimestampID, int endTimestampID)
      */
     @Test
     public void testGetVectorsForFirstLast() throws Exception {
-//TODO: Test goes here... 
+        storeDay(1);
+        storeDay(2);
+        storeDay(3);
+        Assert.assertEquals(20, db.getVectors(2, 3).size());
+        Assert.assertEquals(30, db.getVectors(1, 5).size());
     }
 
     /**
@@ -226,32 +433,19 @@ public class DatabasePerstTest {
      */
     @Test
     public void testStatus() throws Exception {
-//TODO: Test goes here... 
-    }
-
-    /**
-     * Method: store(int data, int locID, Date date)
-     */
-    @Test
-    public void testStoreForDataLocIDDate() throws Exception {
-//TODO: Test goes here... 
+        db.status();
     }
 
     /**
-     * Method: store(int id, int R, int C)
+     * Method: getTimeSeries(int row, int col, int t0, int t1)
      */
     @Test
-    public void testStoreForIdRC() throws Exception {
-//TODO: Test goes here... 
-    }
+    public void testGetTimeSeries() throws Exception {
+        for (int day = 1; day <= 5; day++) storeDay(day);
 
-    /**
-     * Method: toString()
-     */
-    @Test
-    public void testToString() throws Exception {
-//TODO: Test goes here... 
+        TimeSeries s = db.getTimeSeries(2, 1, 2, 4);
+        Assert.assertArrayEquals(new int[] {2, 3, 4}, s.timestampIDs());
+        Assert.assertArrayEquals(new int[] {221, 321, 421}, s.values());
+        Assert.assertEquals(0, db.getTimeSeries(1, 3, 1, 5).size());
     }
-
-
 } 
@@ -1,9 +1,14 @@
 package test.helper_classes;
 
+import java.util.ArrayList;
+
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.Before;
 import org.junit.After;
 
+import helper_classes.*;
+
 /**
  * DatabaseRamSchema Tester.
  *
@@ -13,12 +18,26 @@ import org.junit.After;
  */
 public class DatabaseRamSchemaTest {
 
+    DatabaseRamSchema db;
+    GriddedLocation[][] locs;
+
     @Before
     public void before() throws Exception {
+        db = new DatabaseRamSchema("", "RAMTEST");
+        Assert.assertTrue(db.connect());
+        locs = TestGrid.store(db);
     }
 
     @After
     public void after() throws Exception {
+        db.disconnect();
+    }
+
+    /*
+     * Store one day's grid, with a couple of holes in it (see TestGrid).
+     */
+    private int storeDay(int value) {
+        return TestGrid.storeDay(db, locs, value);
     }
 
     /**
@@ -202,15 +221,38 @@ public class DatabaseRamSchemaTest {
      */
     @Test
     public void testGetVectorsAtTime() throws Exception {
-//TODO: Test goes here... 
+        int first = storeDay(1);
+        int second = storeDay(2);
+
+        ArrayList<GriddedVector> list = db.getVectorsAtTime(second);
+        Assert.assertEquals(10, list.size());
+        for (GriddedVector v : list) {
+            Assert.assertEquals(second, v.timestampID());
+            Assert.assertEquals(200 + v.row() * 10 + v.col(), v.data());
+        }
+
+        Assert.assertEquals(10, db.getVectorsAtTime(first).size());
+        Assert.assertEquals(0, db.getVectorsAtTime(second + 1).size());
+        Assert.assertEquals(20, db.numberOfVectors());
     }
 
     /**
-     * Method: getVectorsAtTimeIndex(int index)
+     * Method: getVectorsAtLocation(int locationID)
      */
     @Test
-    public void testGetVectorsAtTimeIndex() throws Exception {
-//TODO: Test goes here... 
+    public void testGetVectorsAtLocation() throws Exception {
+        storeDay(1);
+        storeDay(2);
+
+        // By location: every day's value at row 2, col 3.
+        ArrayList<GriddedVector> list = db.getVectorsAtLocation(locs[2][3].id());
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals(123, list.get(0).data());
+        Assert.assertEquals(223, list.get(1).data());
+        Assert.assertEquals(2, list.get(1).timestampID());
+
+        // Nothing stored at row 1, col 3.
+        Assert.assertEquals(0, db.getVectorsAtLocation(locs[1][3].id()).size());
     }
 
     /**
@@ -218,7 +260,20 @@ public class DatabaseRamSchemaTest {
      */
     @Test
     public void testGetVectorsForFirstLast() throws Exception {
-//TODO: Test goes here... 
+        storeDay(1);
+        int second = storeDay(2);
+        int third = storeDay(3);
+
+        Assert.assertEquals(20, db.getVectors(second, third).size());
+        Assert.assertEquals(30, db.getVectors().size());
+
+        // A box of rows and columns, and values.
+        ArrayList<GriddedVector> list = db.getVectors(null, new Range(2), new Range(1, 2), new Range(0, 299));
+        Assert.assertEquals(4, list.size());
+        for (GriddedVector v : list) {
+            Assert.assertEquals(2, v.row());
+            Assert.assertTrue(v.data() < 300);
+        }
     }
 
     /**
@@ -0,0 +1,158 @@
+package test.helper_classes;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import helper_classes.*;
+
+/**
+ * DatabaseTileSchema Tester.
+ */
+public class DatabaseTileSchemaTest {
+
+    String path;
+    DatabaseTileSchema db;
+    GriddedLocation[][] locs;
+
+    @Before
+    public void before() throws Exception {
+        path = System.getProperty("java.io.tmpdir") + File.separator;
+        db = new DatabaseTileSchema(path, "TILETEST");
+        Assert.assertTrue(db.connect());
+        locs = TestGrid.store(db);
+    }
+
+    @After
+    public void after() throws Exception {
+        db.disconnect();
+        String[] suffixes = {"_metadata.db", "_locations.db", "_timestamps.db", "_tiles.db", "_tiles.idx"};
+        for (String suffix : suffixes) {
+            new File(path + "TILETEST" + suffix).delete();
+        }
+    }
+
+    /*
+     * Store one day's grid, with a couple of holes in it (see TestGrid).
+     */
+    private int storeDay(int value) {
+        return TestGrid.storeDay(db, locs, value);
+    }
+
+    /**
+     * Method: getVectors(Range time, Range rows, Range cols, Range values)
+     */
+    @Test
+    public void testGetVectorsInRanges() throws Exception {
+        storeDay(1);
+        int second = storeDay(2);
+        int third = storeDay(3);
+        db.disconnect();
+
+        Assert.assertTrue(db.connectReadOnly());
+        db.getMetadata();
+
+        Assert.assertEquals(20, db.getVectors(new Range(second, third), null, null, null).size());
+
+        ArrayList<GriddedVector> list = db.getVectors(null, new Range(1, 2), new Range(1), null);
+        Assert.assertEquals(6, list.size());
+        for (GriddedVector v : list) {
+            Assert.assertEquals(1, v.col());
+            Assert.assertEquals(v.timestampID() * 100 + v.row() * 10 + 1, v.data());
+        }
+
+        list = db.getVectors(new Range(third), new Range(2), null, new Range(322, 400));
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals(322, list.get(0).data());
+        Assert.assertEquals(323, list.get(1).data());
+
+        Assert.assertEquals(0, db.getVectors(null, new Range(3, 9), null, null).size());
+    }
+
+    /**
+     * Method: cursor(Range time, Range rows, Range cols, Range values)
+     */
+    @Test
+    public void testCursor() throws Exception {
+        storeDay(1);
+        storeDay(2);
+        storeDay(3);
+        db.disconnect();
+
+        Assert.assertTrue(db.connectReadOnly());
+        db.getMetadata();
+
+        // One day at a time, in order.
+        int n = 0;
+        int lastTime = 0;
+        try (VectorCursor cursor = db.cursor(null, new Range(0, 1), null, null)) {
+            while (cursor.hasNext()) {
+                GriddedVector v = cursor.next();
+                Assert.assertTrue(v.row() <= 1);
+                Assert.assertTrue(v.timestampID() >= lastTime);
+                lastTime = v.timestampID();
+                n++;
+            }
+        }
+        Assert.assertEquals(18, n);
+        Assert.assertEquals(3, lastTime);
+    }
+
+    /**
+     * Method: getVectorsAtTime(int timeID)
+     */
+    @Test
+    public void testGetVectorsAtTime() throws Exception {
+        int first = storeDay(1);
+        int second = storeDay(2);
+        db.disconnect();
+
+        Assert.assertTrue(db.connectReadOnly());
+        Metadata m = db.getMetadata();
+        Assert.assertEquals(3, m.rows());
+        Assert.assertEquals(4, m.cols());
+        Assert.assertEquals(2, db.numberOfTimestamps());
+        Assert.assertEquals(20, db.numberOfVectors());
+        Assert.assertEquals(12, db.getLocations().size());
+
+        Assert.assertEquals(10, db.getVectorsAtTime(first).size());
+
+        ArrayList<GriddedVector> list = db.getVectorsAtTime(second);
+        Assert.assertEquals(10, list.size());
+        Assert.assertEquals(1, list.get(0).locationID());
+        Assert.assertEquals(-70.0, list.get(0).lat(), 0.0);
+
+        int[][] grid = GriddedVector.createArrayFromVectorList(3, 4, list);
+        Assert.assertEquals(200, grid[0][0]);
+        Assert.assertEquals(211, grid[1][1]);
+        Assert.assertEquals(223, grid[2][3]);
+        Assert.assertEquals(0, grid[1][2]);
+
+        Assert.assertEquals(0, db.getVectorsAtTime(99).size());
+        Assert.assertEquals(20, db.getVectors(first, second).size());
+    }
+
+    /**
+     * Method: storeVector(GriddedVector v)
+     */
+    @Test
+    public void testStoreVector() throws Exception {
+        int id = db.storeTimestamp(new Timestamp(2000, 1, 1));
+        db.storeVector(new GriddedVector(GeoObject.NODATA, locs[0][1], id));
+        db.storeVector(new GriddedVector(-5, locs[2][3], id));
+        db.disconnect();
+
+        Assert.assertTrue(db.connectReadOnly());
+        ArrayList<GriddedVector> list = db.getVectorsAtTime(id);
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals(GeoObject.NODATA, list.get(0).data());
+        Assert.assertEquals(1, list.get(0).col());
+        Assert.assertEquals(-5, list.get(1).data());
+        Assert.assertEquals(2, list.get(1).row());
+        Assert.assertEquals(3, list.get(1).col());
+    }
+}
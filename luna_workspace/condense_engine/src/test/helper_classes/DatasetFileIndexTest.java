@@ -0,0 +1,109 @@
+package test.helper_classes;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import helper_classes.*;
+
+/**
+ * DatasetFileIndex Tester.
+ */
+public class DatasetFileIndexTest {
+
+    File dir;
+    String path;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("DatasetFileIndexTest").toFile();
+        path = dir.getPath() + "/";
+
+        touch("tb_f11_19950101_v4_s19h.bin");
+        touch("tb_f11_19950101_v4_s19v.bin");
+        touch("tb_f11_19950102_v4_s19h.bin");
+        touch("nt_19950103_f11_v01_s.nc");
+    }
+
+    @After
+    public void after() throws Exception {
+        DatasetFileIndex.invalidate(path);
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    private void touch(String name) throws Exception {
+        new File(dir, name).createNewFile();
+    }
+
+    /**
+     * Method: find(String date, String channel)
+     */
+    @Test
+    public void testFindDate() throws Exception {
+        DatasetFileIndex index = DatasetFileIndex.forDirectory(path);
+
+        Assert.assertEquals(4, index.size());
+        Assert.assertEquals(new File(dir, "tb_f11_19950101_v4_s19v.bin").getPath(),
+                index.find("19950101", "19v"));
+        Assert.assertEquals(new File(dir, "tb_f11_19950102_v4_s19h.bin").getPath(),
+                index.find("19950102", "19h"));
+        Assert.assertNull(index.find("19950102", "19v"));
+        Assert.assertNull(index.find("19950104", ""));
+        Assert.assertNotNull(index.find("19950103", ""));
+    }
+
+    /**
+     * Method: find(String searchString)
+     */
+    @Test
+    public void testFindString() throws Exception {
+        DatasetFileIndex index = DatasetFileIndex.forDirectory(path);
+
+        Assert.assertEquals(new File(dir, "nt_19950103_f11_v01_s.nc").getPath(), index.find("_s.nc"));
+        Assert.assertNull(index.find("19950104"));
+        Assert.assertNull(index.find("19950104"));
+    }
+
+    /**
+     * Method: invalidate(String path)
+     */
+    @Test
+    public void testInvalidate() throws Exception {
+        Assert.assertNull(Tools.findFile(path, "19950105"));
+
+        touch("tb_f11_19950105_v4_s19h.bin");
+
+        // Still the old listing...
+        Assert.assertNull(Tools.findFile(path, "19950105"));
+
+        // ...until it's invalidated.
+        DatasetFileIndex.invalidate(path);
+        Assert.assertNotNull(Tools.findFile(path, "19950105"));
+        Assert.assertNotNull(DatasetSSMI.getFileName(path, 1995, 1, 5, false, "19", "h"));
+    }
+
+    /**
+     * Method: dateString(int year, int month, int day)
+     */
+    @Test
+    public void testDateString() throws Exception {
+        Assert.assertEquals("19950105", DatasetFileIndex.dateString(1995, 1, 5));
+        Assert.assertEquals("20141231", DatasetFileIndex.dateString(2014, 12, 31));
+    }
+
+    /**
+     * Method: forDirectory(String path)
+     */
+    @Test
+    public void testMissingDirectory() throws Exception {
+        DatasetFileIndex index = DatasetFileIndex.forDirectory(path + "nothing/");
+
+        Assert.assertEquals(0, index.size());
+        Assert.assertNull(index.find("19950101", ""));
+    }
+}
@@ -1,9 +1,15 @@
 package test.helper_classes;
 
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.Before;
 import org.junit.After;
 
+import helper_classes.*;
+
 /**
  * DatasetSSMI Tester.
  *
@@ -85,5 +91,48 @@ public class DatasetSSMITest {
 //TODO: Test goes here... 
     }
 
+    /**
+     * Method: sameGrid(String channel1, String channel2)
+     */
+    @Test
+    public void testSameGrid() throws Exception {
+        Assert.assertTrue(DatasetSSMI.sameGrid("19h", "37v"));
+        Assert.assertTrue(DatasetSSMI.sameGrid("85h", "85v"));
+        Assert.assertFalse(DatasetSSMI.sameGrid("19h", "85h"));
+        Assert.assertFalse(DatasetSSMI.sameGrid("85v", "22v"));
+    }
+
+    /**
+     * Method: readFrame(String filename, LocationTable locations, int timestampID)
+     */
+    @Test
+    public void testReadFrameOtherGrid() throws Exception {
+        File dir = Files.createTempDirectory("DatasetSSMITest").toFile();
+        File low = new File(dir, "tb_f13_20000101_v4_s19h.bin");
+        File high = new File(dir, "tb_f13_20000101_v4_s85h.bin");
+
+        try {
+            // Southern hemisphere: 332 x 316 for 19 GHz, 664 x 632 for 85 GHz.
+            Files.write(low.toPath(), new byte[209824]);
+            Files.write(high.toPath(), new byte[839296]);
+
+            DatasetSSMI dataset = new DatasetSSMI(low.getPath(), dir.getPath() + "/");
+            LocationTable table = new LocationTable(dataset.rows(), dataset.cols());
+            Assert.assertEquals(332 * 316, dataset.readFrame(low.getPath(), table, 1).size());
+
+            // The other grid's file isn't read as this one.
+            try {
+                dataset.readFrame(high.getPath(), table, 1);
+                Assert.fail("read an 85 GHz file on the 19 GHz grid");
+            } catch (Exception e) {
+                Assert.assertTrue(e.getMessage().contains("332 x 316"));
+            }
+        } finally {
+            low.delete();
+            high.delete();
+            dir.delete();
+        }
+    }
+
 
 } 
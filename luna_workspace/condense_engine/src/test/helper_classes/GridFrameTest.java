@@ -0,0 +1,67 @@
+package test.helper_classes;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import helper_classes.*;
+
+/**
+ * GridFrame Tester.
+ */
+public class GridFrameTest {
+
+    LocationTable table;
+    GridFrame frame;
+
+    @Before
+    public void before() throws Exception {
+        GriddedLocation[][] locs = new GriddedLocation[2][3];
+        for (int r = 0; r < 2; r++) {
+            for (int c = 0; c < 3; c++) {
+                locs[r][c] = new GriddedLocation(r, c, 60.0 + r, 10.0 * c);
+            }
+        }
+        table = new LocationTable(locs);
+        frame = new GridFrame(new int[] {1, GeoObject.NODATA, 3, 4, 5, GeoObject.NODATA}, table, 7);
+    }
+
+    @After
+    public void after() throws Exception {
+    }
+
+    /**
+     * Method: value(int r, int c)
+     */
+    @Test
+    public void testValue() throws Exception {
+        Assert.assertEquals(2, frame.rows());
+        Assert.assertEquals(3, frame.cols());
+        Assert.assertEquals(3, frame.value(0, 2));
+        Assert.assertEquals(4, frame.value(1, 0));
+        Assert.assertEquals(20.0, frame.location(5).lon(), 0.0);
+        Assert.assertSame(table.get(1, 1), frame.location(4));
+    }
+
+    /**
+     * Method: count()
+     */
+    @Test
+    public void testCount() throws Exception {
+        Assert.assertEquals(4, frame.count());
+    }
+
+    /**
+     * Method: toVectorArray()
+     */
+    @Test
+    public void testToVectorArray() throws Exception {
+        GriddedVector[][] v = frame.toVectorArray();
+        Assert.assertNull(v[0][1]);
+        Assert.assertNull(v[1][2]);
+        Assert.assertEquals(5, v[1][1].data());
+        Assert.assertEquals(1, v[1][1].row());
+        Assert.assertEquals(61.0, v[1][1].lat(), 0.0);
+    }
+}
@@ -0,0 +1,129 @@
+package test.helper_classes;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import helper_classes.*;
+
+/**
+ * Reconstruction Tester.
+ */
+public class ReconstructionTest {
+
+    File dir;
+    DatabaseRamSchema db;
+    GriddedLocation[][] locs;
+    int jan1, jan2, feb1;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("ReconstructionTest").toFile();
+
+        // A 2x3 grid. February has no climatology for the first cell.
+        writeGrid("19h-mean-jan.bin", new double[] {100, 101, 102, 103, 104, 105});
+        writeGrid("19h-sd-jan.bin", new double[] {1, 1, 1, 1, 1, 1});
+        writeGrid("19h-mean-feb.bin", new double[] {Double.NaN, 201.4, 202.6, 203, 204, 205});
+        writeGrid("19h-sd-feb.bin", new double[] {1, 1, 1, 1, 1, 1});
+
+        db = new DatabaseRamSchema("RECONSTRUCTIONTEST");
+        db.connect();
+        db.storeMetadata(new Metadata(2, 3, 0, 0, 0));
+
+        locs = new GriddedLocation[2][3];
+        for (int r = 0; r < 2; r++) {
+            for (int c = 0; c < 3; c++) {
+                locs[r][c] = new GriddedLocation(r, c, -70.0 + r, 10.0 * c);
+            }
+        }
+        db.storeLocationArray(locs);
+
+        jan1 = db.storeTimestamp(new Timestamp(2004, 1, 1));
+        jan2 = db.storeTimestamp(new Timestamp(2004, 1, 2));
+        feb1 = db.storeTimestamp(new Timestamp(2004, 2, 1));
+
+        // The anomalies that were kept.
+        db.storeVector(new GriddedVector(150, locs[0][1], jan1));
+        db.storeVector(new GriddedVector(999, locs[1][2], jan2));
+        db.storeVector(new GriddedVector(50, locs[1][0], jan2));
+    }
+
+    @After
+    public void after() throws Exception {
+        db.disconnect();
+        DatasetFileIndex.invalidate(dir.getPath() + "/");
+        for (File f : dir.listFiles()) f.delete();
+        dir.delete();
+    }
+
+    private void writeGrid(String name, double[] values) throws Exception {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(dir, name)));
+        for (double v : values) out.writeDouble(v);
+        out.close();
+    }
+
+    /**
+     * Method: grid(int timestampID)
+     */
+    @Test
+    public void testGrid() throws Exception {
+        ClimatologyStore climatology = new ClimatologyStore(dir.getPath(), "19h", 2, 3);
+        Reconstruction reconstruction = new Reconstruction(db, climatology, false);
+
+        Assert.assertArrayEquals(new int[] {100, 150, 102, 103, 104, 105}, reconstruction.grid(jan1));
+        Assert.assertArrayEquals(new int[] {100, 101, 102, 50, 104, 999}, reconstruction.grid(jan2));
+
+        // The mean is rounded; a cell without a mean is NODATA.
+        Assert.assertArrayEquals(new int[] {GeoObject.NODATA, 201, 203, 203, 204, 205},
+                reconstruction.grid(feb1));
+
+        Assert.assertNull(reconstruction.grid(feb1 + 1));
+    }
+
+    /**
+     * Method: frame(int timestampID, LocationTable locations)
+     */
+    @Test
+    public void testFrame() throws Exception {
+        ClimatologyStore climatology = new ClimatologyStore(dir.getPath(), "19h", 2, 3);
+        Reconstruction reconstruction = new Reconstruction(db, climatology, false);
+
+        GridFrame frame = reconstruction.frame(jan2, new LocationTable(locs));
+        Assert.assertEquals(jan2, frame.timestampID());
+        Assert.assertEquals(999, frame.value(1, 2));
+        Assert.assertEquals(101, frame.value(0, 1));
+    }
+
+    /**
+     * Method: ClimatologyStore(String path, String channel, int rows, int cols, int capacity)
+     */
+    @Test
+    public void testClimatologyCache() throws Exception {
+        ClimatologyStore climatology = new ClimatologyStore(dir.getPath(), "19h", 2, 3, 1);
+        Reconstruction reconstruction = new Reconstruction(db, climatology, false);
+
+        // Consecutive days share the month's grid.
+        reconstruction.grid(jan1);
+        int[] mean = climatology.get("jan").meanValues();
+        reconstruction.grid(jan2);
+        Assert.assertSame(mean, climatology.get("jan").meanValues());
+        Assert.assertArrayEquals(new String[] {"jan"}, climatology.cached());
+
+        // Only one month is kept.
+        reconstruction.grid(feb1);
+        Assert.assertArrayEquals(new String[] {"feb"}, climatology.cached());
+
+        // The least recently used goes first.
+        climatology = new ClimatologyStore(dir.getPath(), "19h", 2, 3, 2);
+        climatology.get("jan");
+        climatology.get("feb");
+        climatology.get("jan");
+        Assert.assertArrayEquals(new String[] {"feb", "jan"}, climatology.cached());
+    }
+}
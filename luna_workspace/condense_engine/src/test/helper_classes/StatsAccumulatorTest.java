@@ -0,0 +1,125 @@
+package test.helper_classes;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import helper_classes.*;
+
+/**
+ * StatsAccumulator Tester.
+ */
+public class StatsAccumulatorTest {
+
+    static final int rows = 4;
+    static final int cols = 5;
+    static final int days = 60;
+
+    int[][] data;
+
+    @Before
+    public void before() throws Exception {
+        Random random = new Random(7);
+        data = new int[days][rows * cols];
+
+        for (int d = 0; d < days; d++) {
+            for (int i = 0; i < rows * cols; i++) {
+                data[d][i] = 2500 + (int) (random.nextGaussian() * 300);
+
+                // Some missing and bad data
+                if (random.nextInt(10) == 0) data[d][i] = GeoObject.NODATA;
+                if (random.nextInt(20) == 0) data[d][i] = 5;
+            }
+        }
+
+        // One cell with no data at all, one with a single value.
+        for (int d = 0; d < days; d++) {
+            data[d][0] = GeoObject.NODATA;
+            data[d][1] = (d == 3) ? 2000 : GeoObject.NODATA;
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+    }
+
+    /**
+     * The two-pass calculation Climatology used to do.
+     */
+    private double[][][] twoPass() {
+        double[][] sum = new double[rows][cols];
+        int[][] population = new int[rows][cols];
+
+        for (int d = 0; d < days; d++) {
+            for (int i = 0; i < rows * cols; i++) {
+                int v = data[d][i];
+                if (v == GeoObject.NODATA || v < 50 || v > 4000) continue;
+                sum[i / cols][i % cols] += v;
+                population[i / cols][i % cols]++;
+            }
+        }
+        double[][] mean = Stats.meanNoBadData2d(sum, population, GeoObject.NODATA);
+
+        double[][] squares = new double[rows][cols];
+        for (int d = 0; d < days; d++) {
+            for (int i = 0; i < rows * cols; i++) {
+                int v = data[d][i];
+                if (v == GeoObject.NODATA || v < 50 || v > 4000) continue;
+                squares[i / cols][i % cols] += Math.pow(v - mean[i / cols][i % cols], 2);
+            }
+        }
+        double[][] sd = Stats.standardDeviationNoBadData2d(squares, population, GeoObject.NODATA, 1);
+
+        return new double[][][] {mean, sd};
+    }
+
+    /**
+     * Method: add(int[] values, int minValue, int maxValue)
+     */
+    @Test
+    public void testAdd() throws Exception {
+        StatsAccumulator stats = new StatsAccumulator(rows, cols);
+        for (int d = 0; d < days; d++) stats.add(data[d], 50, 4000);
+
+        double[][][] expected = twoPass();
+        double[][] mean = stats.mean2d();
+        double[][] sd = stats.standardDeviation2d(1);
+
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                Assert.assertEquals(expected[0][r][c], mean[r][c], 1e-9);
+                Assert.assertEquals(expected[1][r][c], sd[r][c], 1e-9);
+            }
+        }
+
+        Assert.assertEquals(0, stats.count(0, 0));
+        Assert.assertEquals(GeoObject.NODATA, mean[0][0], 0.0);
+        Assert.assertEquals(2000.0, mean[0][1], 0.0);
+        Assert.assertEquals(GeoObject.NODATA, sd[0][1], 0.0);
+    }
+
+    /**
+     * Method: merge(StatsAccumulator other)
+     */
+    @Test
+    public void testMerge() throws Exception {
+        StatsAccumulator all = new StatsAccumulator(rows, cols);
+        StatsAccumulator first = new StatsAccumulator(rows, cols);
+        StatsAccumulator second = new StatsAccumulator(rows, cols);
+
+        for (int d = 0; d < days; d++) {
+            all.add(data[d], 50, 4000);
+            if (d < 25) first.add(data[d], 50, 4000);
+            else second.add(data[d], 50, 4000);
+        }
+
+        first.merge(second);
+
+        Assert.assertArrayEquals(all.mean(), first.mean(), 1e-9);
+        Assert.assertArrayEquals(all.standardDeviation(1), first.standardDeviation(1), 1e-9);
+        Assert.assertEquals(all.count(2, 3), first.count(2, 3));
+    }
+}
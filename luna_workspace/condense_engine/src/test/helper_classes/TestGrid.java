@@ -0,0 +1,88 @@
+package test.helper_classes;
+
+import helper_classes.*;
+
+/**
+ * The small grid the database tests share: 3 rows by 4 columns, the cell at
+ * row r, column c at latitude -70 + r and longitude 10c. A day's value there
+ * is day * 100 + r * 10 + c, and a day "with holes" has no data at row 1,
+ * columns 2 and 3, so it has 10 of the 12 cells.
+ */
+public class TestGrid {
+
+    public static final int ROWS = 3;
+    public static final int COLS = 4;
+
+    /*
+     * A new set of the grid's locations, without IDs.
+     */
+    public static GriddedLocation[][] locations() {
+        GriddedLocation[][] locs = new GriddedLocation[ROWS][COLS];
+        for (int r = 0; r < ROWS; r++) {
+            for (int c = 0; c < COLS; c++) {
+                locs[r][c] = new GriddedLocation(r, c, -70.0 + r, 10.0 * c);
+            }
+        }
+        return locs;
+    }
+
+    /*
+     * Store the grid's metadata and locations in an empty database, and
+     * return the locations, with the IDs they were given.
+     */
+    public static GriddedLocation[][] store(Database db) {
+        db.storeMetadata(new Metadata(ROWS, COLS, 0, 0, 0));
+        GriddedLocation[][] locs = locations();
+        db.storeLocationArray(locs);
+        return locs;
+    }
+
+    public static int value(int day, int r, int c) {
+        return day * 100 + r * 10 + c;
+    }
+
+    public static boolean hole(int r, int c) {
+        return r == 1 && c > 1;
+    }
+
+    /*
+     * A day's vectors with holes, null where there's no data.
+     */
+    public static GriddedVector[][] vectors(int day, GriddedLocation[][] locs, int timestampID) {
+        GriddedVector[][] v = new GriddedVector[ROWS][COLS];
+        for (int r = 0; r < ROWS; r++) {
+            for (int c = 0; c < COLS; c++) {
+                if (hole(r, c)) continue;
+                v[r][c] = new GriddedVector(value(day, r, c), locs[r][c], timestampID);
+            }
+        }
+        return v;
+    }
+
+    /*
+     * A day with holes as a frame, NODATA where there's no data. Without
+     * holes, every cell has a value.
+     */
+    public static GridFrame frame(int day, LocationTable table, int timestampID, boolean holes) {
+        GridFrame frame = new GridFrame(table, timestampID);
+        for (int i = 0; i < frame.size(); i++) {
+            int r = i / COLS, c = i % COLS;
+            frame.values()[i] = (holes && hole(r, c)) ? GeoObject.NODATA : value(day, r, c);
+        }
+        return frame;
+    }
+
+    /*
+     * Store a day with holes, timestamped that day of January 2000, as a
+     * vector array. Returns the timestamp ID.
+     */
+    public static int storeDay(Database db, GriddedLocation[][] locs, int day) {
+        return storeDay(db, locs, new Timestamp(2000, 1, day), day);
+    }
+
+    public static int storeDay(Database db, GriddedLocation[][] locs, Timestamp t, int day) {
+        int id = db.storeTimestamp(t);
+        db.storeVectorArray(vectors(day, locs, id), locs);
+        return id;
+    }
+}
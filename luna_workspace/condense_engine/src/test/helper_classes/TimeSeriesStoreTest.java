@@ -0,0 +1,222 @@
+package test.helper_classes;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import helper_classes.*;
+
+/**
+ * TimeSeriesStore Tester.
+ */
+public class TimeSeriesStoreTest {
+
+    DatabaseOffHeapSchema db;
+    LocationTable table;
+    File file;
+
+    @Before
+    public void before() throws Exception {
+        db = new DatabaseOffHeapSchema("", "TIMESERIESTEST");
+        Assert.assertTrue(db.connect());
+        table = new LocationTable(TestGrid.store(db));
+
+        for (int day = 1; day <= 7; day++) storeDay(day);
+
+        file = File.createTempFile("timeseries", ".dat");
+    }
+
+    @After
+    public void after() throws Exception {
+        db.disconnect();
+        file.delete();
+    }
+
+    /*
+     * Store a day's grid (see TestGrid), without its holes: instead, cell
+     * (1,2) only has data on odd days.
+     */
+    private int storeDay(int day) {
+        int id = db.storeTimestamp(new Timestamp(2000, 1, day));
+
+        GridFrame frame = TestGrid.frame(day, table, id, false);
+        if (day % 2 == 0) frame.values()[1 * TestGrid.COLS + 2] = GeoObject.NODATA;
+        db.storeFrame(frame);
+
+        return id;
+    }
+
+    /**
+     * Method: transpose(Database db, String filename, long memory)
+     */
+    @Test
+    public void testTranspose() throws Exception {
+        // Room for two days at a time: the days are done in four blocks.
+        TimeSeriesStore store = TimeSeriesStore.transpose(db, file.getPath(), 2 * 12 * 2);
+
+        Assert.assertEquals(3, store.rows());
+        Assert.assertEquals(4, store.cols());
+        Assert.assertEquals(7, store.timestamps());
+
+        TimeSeries s = store.get(2, 3, 1, 7);
+        Assert.assertEquals(7, s.size());
+        for (int i = 0; i < 7; i++) {
+            Assert.assertEquals(i + 1, s.timestampID(i));
+            Assert.assertEquals((i + 1) * 100 + 23, s.value(i));
+        }
+
+        // Days without data are left out.
+        s = store.get(1, 2, 2, 6);
+        Assert.assertArrayEquals(new int[] {3, 5}, s.timestampIDs());
+        Assert.assertArrayEquals(new int[] {312, 512}, s.values());
+
+        // Out of range.
+        Assert.assertEquals(0, store.get(3, 0, 1, 7).size());
+        Assert.assertEquals(0, store.get(0, 0, 8, 9).size());
+        Assert.assertEquals(2, store.get(0, 0, -5, 2).size());
+
+        store.close();
+
+        // Opening it again reads the same.
+        store = new TimeSeriesStore(file.getPath());
+        Assert.assertEquals(7, store.timestamps());
+        Assert.assertArrayEquals(new int[] {301, 401}, store.get(0, 1, 3, 4).values());
+        store.close();
+    }
+
+    /**
+     * Method: getTimeSeries(int row, int col, int t0, int t1)
+     */
+    @Test
+    public void testGetTimeSeries() throws Exception {
+        TimeSeries fromDatabase = db.getTimeSeries(1, 2, 1, 7);
+        Assert.assertArrayEquals(new int[] {1, 3, 5, 7}, fromDatabase.timestampIDs());
+
+        TimeSeriesStore store = TimeSeriesStore.transpose(db, file.getPath(), 1 << 20);
+        db.useTimeSeriesStore(store);
+
+        TimeSeries fromStore = db.getTimeSeries(1, 2, 1, 7);
+        Assert.assertArrayEquals(fromDatabase.timestampIDs(), fromStore.timestampIDs());
+        Assert.assertArrayEquals(fromDatabase.values(), fromStore.values());
+
+        // Days stored after the store was made come from the database.
+        storeDay(8);
+        storeDay(9);
+
+        TimeSeries s = db.getTimeSeries(0, 3, 6, 9);
+        Assert.assertArrayEquals(new int[] {6, 7, 8, 9}, s.timestampIDs());
+        Assert.assertArrayEquals(new int[] {603, 703, 803, 903}, s.values());
+
+        db.useTimeSeriesStore(null);
+        store.close();
+    }
+
+    /**
+     * Method: getTimeSeries(int row, int col, int t0, int t1), RAM database
+     */
+    @Test
+    public void testGetTimeSeriesRam() throws Exception {
+        DatabaseRamSchema ram = new DatabaseRamSchema("TIMESERIESRAM");
+        ram.connect();
+        GriddedLocation[][] locs = TestGrid.store(ram);
+
+        for (int day = 1; day <= 4; day++) {
+            int id = ram.storeTimestamp(new Timestamp(2000, 1, day));
+            ram.storeVector(new GriddedVector(day * 10, locs[2][1], id));
+        }
+
+        TimeSeries s = ram.getTimeSeries(2, 1, 2, 3);
+        Assert.assertArrayEquals(new int[] {2, 3}, s.timestampIDs());
+        Assert.assertArrayEquals(new int[] {20, 30}, s.values());
+        Assert.assertEquals(0, ram.getTimeSeries(0, 0, 1, 4).size());
+
+        ram.disconnect();
+    }
+
+    /**
+     * Method: channelID(), getTimeSeries(int row, int col, int t0, int t1) with channels
+     */
+    @Test
+    public void testChannels() throws Exception {
+        DatabaseH2 h2 = new DatabaseH2("jdbc:h2:mem:", "TIMESERIESCHANNELS");
+        Assert.assertTrue(h2.connect());
+        GriddedLocation[][] locs = TestGrid.store(h2);
+
+        int ch19 = h2.storeChannel("19h");
+        int ch37 = h2.storeChannel("37v");
+
+        // The 37v values are the 19h ones plus 5000.
+        for (int day = 1; day <= 3; day++) {
+            int id = h2.storeTimestamp(new Timestamp(2000, 1, day));
+            GriddedVector[][] v = new GriddedVector[3][4];
+            for (int ch : new int[] {ch19, ch37}) {
+                h2.useChannel(ch);
+                for (int r = 0; r < 3; r++) {
+                    for (int c = 0; c < 4; c++) {
+                        v[r][c] = new GriddedVector((ch == ch37 ? 5000 : 0) + day * 100 + r * 10 + c,
+                                locs[r][c], id);
+                    }
+                }
+                h2.storeVectorArray(v, locs);
+            }
+        }
+        h2.flush();
+
+        File other = File.createTempFile("timeseries", ".dat");
+
+        try {
+            h2.useChannel(ch19);
+            TimeSeriesStore store19 = TimeSeriesStore.transpose(h2, file.getPath(), 1 << 20);
+            h2.useChannel(ch37);
+            TimeSeriesStore store37 = TimeSeriesStore.transpose(h2, other.getPath(), 1 << 20);
+
+            // Each store knows the channel it was made from.
+            Assert.assertEquals(ch19, store19.channelID());
+            Assert.assertEquals(ch37, store37.channelID());
+
+            h2.useTimeSeriesStore(store19);
+            h2.useTimeSeriesStore(store37);
+
+            // The store used is the one for the channel in use.
+            h2.useChannel(ch19);
+            Assert.assertSame(store19, h2.timeSeriesStore());
+            Assert.assertArrayEquals(new int[] {112, 212, 312}, h2.getTimeSeries(1, 2, 1, 3).values());
+
+            h2.useChannel(ch37);
+            Assert.assertSame(store37, h2.timeSeriesStore());
+            Assert.assertArrayEquals(new int[] {5112, 5212, 5312}, h2.getTimeSeries(1, 2, 1, 3).values());
+
+            // Letting go of one leaves the other.
+            h2.useTimeSeriesStore(null);
+            Assert.assertNull(h2.timeSeriesStore());
+            Assert.assertArrayEquals(new int[] {5112, 5212, 5312}, h2.getTimeSeries(1, 2, 1, 3).values());
+            h2.useChannel(ch19);
+            Assert.assertSame(store19, h2.timeSeriesStore());
+
+            store19.close();
+            store37.close();
+
+            // Opening it again reads the channel back.
+            store37 = new TimeSeriesStore(other.getPath());
+            Assert.assertEquals(ch37, store37.channelID());
+            store37.close();
+        } finally {
+            h2.disconnect();
+            other.delete();
+        }
+    }
+
+    /**
+     * Method: toNumberArray()
+     */
+    @Test
+    public void testToNumberArray() throws Exception {
+        Number[][] n = db.getTimeSeries(0, 0, 1, 2).toNumberArray();
+        Assert.assertEquals(2, n.length);
+        Assert.assertEquals(2, n[1][0].intValue());
+        Assert.assertEquals(200, n[1][1].intValue());
+    }
+}